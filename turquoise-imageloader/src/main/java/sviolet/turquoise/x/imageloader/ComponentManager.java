@@ -20,12 +20,17 @@
 package sviolet.turquoise.x.imageloader;
 
 import android.content.Context;
+import android.os.SystemClock;
 
 import java.lang.ref.WeakReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import sviolet.turquoise.x.common.tlogger.TLogger;
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.entity.ServerSettings;
+import sviolet.turquoise.x.imageloader.handler.DecodeHandler;
+import sviolet.turquoise.x.imageloader.handler.MetricsListener;
+import sviolet.turquoise.x.imageloader.node.Task;
 import sviolet.turquoise.x.imageloader.node.NodeFactory;
 import sviolet.turquoise.x.imageloader.node.NodeFactoryImpl;
 import sviolet.turquoise.x.imageloader.node.NodeManager;
@@ -202,6 +207,53 @@ public class ComponentManager {
         }
     }
 
+    /**
+     * notify event to MetricsListener (if set), see {@link ServerSettings.Builder#setMetricsListener(MetricsListener)}
+     * @param event event type
+     * @param taskInfo task info
+     * @param bytes bytes count, {@value MetricsListener#UNKNOWN} if not available
+     */
+    public void notifyMetrics(MetricsListener.Event event, Task.Info taskInfo, long bytes){
+        ServerSettings settings = serverSettings;
+        if (settings == null || taskInfo == null){
+            return;
+        }
+        MetricsListener listener = settings.getMetricsListener();
+        if (listener == null){
+            return;
+        }
+        try {
+            listener.onEvent(event, taskInfo, SystemClock.uptimeMillis(), bytes);
+        } catch (Throwable t) {
+            getLogger().e("[ComponentManager]exception in MetricsListener", t);
+        }
+    }
+
+    /**
+     * decode by DecodeHandler, and notify metrics events (DECODE_START/DECODE_END)
+     */
+    public ImageResource decode(DecodeHandler decodeHandler, Task task, DecodeHandler.DecodeType decodeType, Object data){
+        ServerSettings settings = serverSettings;
+        final boolean metricsEnabled = settings != null && settings.getMetricsListener() != null;
+        if (metricsEnabled){
+            notifyMetrics(MetricsListener.Event.DECODE_START, task.getTaskInfo(), MetricsListener.UNKNOWN);
+        }
+        ImageResource imageResource = null;
+        try {
+            imageResource = decodeHandler.decode(getApplicationContextImage(), getContextImage(), task, decodeType, data, getLogger());
+            return imageResource;
+        } finally {
+            if (metricsEnabled){
+                boolean valid = settings.getImageResourceHandler().isValid(imageResource);
+                notifyMetrics(MetricsListener.Event.DECODE_END, task.getTaskInfo(),
+                        valid ? settings.getImageResourceHandler().byteCountOf(imageResource) : MetricsListener.UNKNOWN);
+                if (!valid){
+                    notifyMetrics(MetricsListener.Event.DECODE_FAILED, task.getTaskInfo(), MetricsListener.UNKNOWN);
+                }
+            }
+        }
+    }
+
     /**
      * initialize process
      */
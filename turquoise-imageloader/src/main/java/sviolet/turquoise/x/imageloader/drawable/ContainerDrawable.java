@@ -55,6 +55,10 @@ public class ContainerDrawable extends TransitionDrawable {
 
     @Override
     public void draw(Canvas canvas) {
+        final Stub stub = getStub();
+        if (stub != null){
+            stub.onDraw();
+        }
         launch();
         try {
             super.draw(canvas);
@@ -88,17 +88,32 @@ public class LowNetworkSpeedStrategy {
     public static final int THRESHOLD_SPEED_INDISPENSABLE = 256;//256byte/s
 
     private Map<Type, Configure> configures;
+    private final Configure networkConfigure = new NetworkConfigure(this);
+    private volatile NetStateUtils.NetworkMonitor networkMonitor;
 
     private LowNetworkSpeedStrategy(Map<Type, Configure> configures){
         this.configures = configures;
     }
 
+    /**
+     * @return configure of indispensable task, or configure follows the current network type (cached by
+     * {@link NetStateUtils.NetworkMonitor}). The later is re-evaluated by {@link Configure#current()} on every
+     * speed check, so the in-flight tasks will be re-tuned when network type changed (e.g. WIFI -> 2G).
+     */
     @SuppressLint("MissingPermission")
     public Configure getConfigure(Context context, IndispensableState indispensableState){
         if (indispensableState.isIndispensable()){
             return configures.get(Type.INDISPENSABLE_TASK);
         }
-        NetStateUtils.NetworkType type = NetStateUtils.getNetworkType(context);
+        if (networkMonitor == null && context != null){
+            networkMonitor = NetStateUtils.getNetworkMonitor(context);
+        }
+        return networkConfigure;
+    }
+
+    private Configure getCurrentNetworkConfigure(){
+        NetStateUtils.NetworkMonitor monitor = networkMonitor;
+        NetStateUtils.NetworkType type = monitor != null ? monitor.getNetworkType() : NetStateUtils.NetworkType.UNKNOWN;
         switch (type){
             case MOBILE_2G:
                 return configures.get(Type.LOW_SPEED_MOBILE_NETWORK);
@@ -130,6 +145,9 @@ public class LowNetworkSpeedStrategy {
         private long deadline;//ms
         private int thresholdSpeed;//bytes/s
 
+        private Configure(){
+        }
+
         private Configure(Type type, long windowPeriod, long deadline, int thresholdSpeed){
             this.type = type;
             this.windowPeriod = windowPeriod;
@@ -152,6 +170,51 @@ public class LowNetworkSpeedStrategy {
         public int getThresholdSpeed() {
             return thresholdSpeed;
         }
+
+        /**
+         * @return the configure in effect now, read all values of one check from it, otherwise the values
+         * may come from different network types
+         */
+        public Configure current() {
+            return this;
+        }
+    }
+
+    /**
+     * configure follows the current network type
+     */
+    private static class NetworkConfigure extends Configure{
+
+        private final LowNetworkSpeedStrategy strategy;
+
+        private NetworkConfigure(LowNetworkSpeedStrategy strategy){
+            this.strategy = strategy;
+        }
+
+        @Override
+        public Type getType() {
+            return current().getType();
+        }
+
+        @Override
+        public long getWindowPeriod() {
+            return current().getWindowPeriod();
+        }
+
+        @Override
+        public long getDeadline() {
+            return current().getDeadline();
+        }
+
+        @Override
+        public int getThresholdSpeed() {
+            return current().getThresholdSpeed();
+        }
+
+        @Override
+        public Configure current() {
+            return strategy.getCurrentNetworkConfigure();
+        }
     }
 
     public static class Builder{
@@ -46,6 +46,8 @@ public class NodeSettings implements Destroyable {
         private long networkConnectTimeout = DEFAULT_NETWORK_CONNECT_TIMEOUT;
         private long networkReadTimeout = DEFAULT_NETWORK_READ_TIMEOUT;
         private int imageAppearDuration = DEFAULT_IMAGE_APPEAR_DURATION;
+        private boolean lockFreeQueueEnabled = DEFAULT_LOCK_FREE_QUEUE_ENABLED;
+        private int preloadQueueSize = DEFAULT_PRELOAD_QUEUE_SIZE;
 
         //handler////////////////////////////////////////////////////////////////////////////
 
@@ -195,6 +197,38 @@ public class NodeSettings implements Destroyable {
             return this;
         }
 
+        /**
+         * <p>[Senior Setting]Use lock-free (CAS based) request/response queues in this node.</p>
+         *
+         * <p>By default, request queues of node are guarded by lock, which causes contention between UI thread
+         * and engine dispatch threads when a lot of images are loading at the same time (e.g. fling ListView
+         * with hundreds of thumbnails). Lock-free queues have the same behavior, earliest task will still be
+         * discarded (and callback to cancel) when the queue is full.</p>
+         *
+         * @param enabled true: use lock-free queues, {@value DEFAULT_LOCK_FREE_QUEUE_ENABLED} by default
+         */
+        public Builder setLockFreeQueueEnabled(boolean enabled){
+            values.lockFreeQueueEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * <p>[Senior Setting]Size of preload queues (memory/disk/net), see {@link sviolet.turquoise.x.imageloader.node.Node#preload}.</p>
+         *
+         * <p>Preload tasks are kept in separate lossy queues, they will be executed only when there is no
+         * normal task, and the earliest preload task will be discarded when the queue is full (usually
+         * scrolled away).</p>
+         *
+         * @param preloadQueueSize {@value DEFAULT_PRELOAD_QUEUE_SIZE} by default
+         */
+        public Builder setPreloadQueueSize(int preloadQueueSize){
+            if (preloadQueueSize < 1){
+                throw new RuntimeException("[NodeSettings]preloadQueueSize must >= 1");
+            }
+            values.preloadQueueSize = preloadQueueSize;
+            return this;
+        }
+
         //handler////////////////////////////////////////////////////////////////////////////
 
         /**
@@ -348,6 +382,8 @@ public class NodeSettings implements Destroyable {
     private static final int DEFAULT_NET_QUEUE_SIZE = 12;
     private static final int DEFAULT_RELOAD_TIMES = -1;
     private static final int DEFAULT_IMAGE_APPEAR_DURATION = 400;
+    private static final boolean DEFAULT_LOCK_FREE_QUEUE_ENABLED = false;
+    private static final int DEFAULT_PRELOAD_QUEUE_SIZE = 10;
     public static final long DEFAULT_NETWORK_CONNECT_TIMEOUT = -1;//ms
     public static final long DEFAULT_NETWORK_READ_TIMEOUT = -1;//ms
 
@@ -430,6 +466,14 @@ public class NodeSettings implements Destroyable {
         return values.imageAppearDuration;
     }
 
+    public boolean isLockFreeQueueEnabled() {
+        return values.lockFreeQueueEnabled;
+    }
+
+    public int getPreloadQueueSize() {
+        return values.preloadQueueSize;
+    }
+
     //handler////////////////////////////////////////////////////////////////////////////
 
     public NetworkLoadHandler getNetworkLoadHandler(){
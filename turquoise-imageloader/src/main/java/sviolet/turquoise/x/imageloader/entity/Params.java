@@ -92,6 +92,9 @@ public class Params {
 
         private Map<String, Object> extras;
 
+        //cached key suffix, reset when sourceType/reqSize/decodeInterceptor changed
+        private String keySuffix;
+
         /**
          * you must implement cloning method, including all values.
          * TILoader will get copy by this method before loading.
@@ -119,6 +122,7 @@ public class Params {
 
             //reference copy
             newValues.extras = extras;
+            newValues.keySuffix = keySuffix;
             return newValues;
         }
     }
@@ -177,6 +181,7 @@ public class Params {
                 throw new RuntimeException("[Params]sourceType is null");
             }
             values.sourceType = sourceType;
+            values.keySuffix = null;
             return this;
         }
 
@@ -209,6 +214,7 @@ public class Params {
         public Builder setReqSize(int reqWidth, int reqHeight){
             values.reqWidth = reqWidth;
             values.reqHeight = reqHeight;
+            values.keySuffix = null;
             setSizeMatchView(false);
             return this;
         }
@@ -303,6 +309,7 @@ public class Params {
          */
         public Builder setDecodeInterceptor(DecodeHandler.Interceptor interceptor){
             values.decodeInterceptor = interceptor;
+            values.keySuffix = null;
             return this;
         }
 
@@ -563,15 +570,30 @@ public class Params {
             int width = view.getWidth();
             int height = view.getHeight();
             if (width > 1 && height > 1){
-                values.reqWidth = width;
-                values.reqHeight = height;
+                if (values.reqWidth != width || values.reqHeight != height) {
+                    values.reqWidth = width;
+                    values.reqHeight = height;
+                    values.keySuffix = null;
+                }
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * @return key suffix of loading task, cached until sourceType/reqSize/decodeInterceptor changed
+     */
     public String getKeySuffix(){
+        String keySuffix = values.keySuffix;
+        if (keySuffix == null){
+            keySuffix = buildKeySuffix();
+            values.keySuffix = keySuffix;
+        }
+        return keySuffix;
+    }
+
+    private String buildKeySuffix(){
         StringBuilder builder = new StringBuilder("@");
         builder.append(getReqWidth());
         builder.append("x");
@@ -36,14 +36,17 @@ import sviolet.turquoise.x.imageloader.drawable.common.CommonFailedDrawableFacto
 import sviolet.turquoise.x.imageloader.drawable.common.CommonLoadingDrawableFactory;
 import sviolet.turquoise.x.imageloader.handler.DecodeHandler;
 import sviolet.turquoise.x.imageloader.handler.ExceptionHandler;
+import sviolet.turquoise.x.imageloader.handler.MetricsListener;
 import sviolet.turquoise.x.imageloader.handler.ImageResourceHandler;
 import sviolet.turquoise.x.imageloader.handler.NetworkLoadHandler;
 import sviolet.turquoise.x.imageloader.handler.common.CommonDecodeHandler;
 import sviolet.turquoise.x.imageloader.handler.common.CommonExceptionHandler;
+import sviolet.turquoise.x.imageloader.handler.common.CommonMetricsAggregator;
 import sviolet.turquoise.x.imageloader.handler.common.CommonImageResourceHandler;
 import sviolet.turquoise.x.imageloader.handler.common.CommonNetworkLoadHandler;
 import sviolet.turquoise.x.imageloader.node.TaskFactory;
 import sviolet.turquoise.x.imageloader.node.TaskFactoryImpl;
+import sviolet.turquoise.x.imageloader.server.mem.BitmapPool;
 import sviolet.turquoise.x.imageloader.server.mem.MemoryCacheServer;
 import sviolet.turquoise.x.imageloader.stub.StubFactory;
 import sviolet.turquoise.x.imageloader.stub.support.StubFactoryImpl;
@@ -62,17 +65,26 @@ public class ServerSettings implements ComponentManager.Component{
         private boolean logEnabled = DEFAULT_LOG_ENABLED;
         private boolean wipeDiskCacheWhenUpdate = DEFAULT_WIPE_DISK_CACHE_WHEN_UPDATE;
         private int memoryCacheSize = DEFAULT_MEMORY_CACHE_SIZE;
+        private int bitmapPoolSize = DEFAULT_BITMAP_POOL_SIZE;
         private int diskCacheSize = DEFAULT_DISK_CACHE_SIZE;
         private int memoryLoadMaxThread = DEFAULT_MEMORY_LOAD_MAX_THREAD;
         private int diskLoadMaxThread = DEFAULT_DISK_LOAD_MAX_THREAD;
         private int networkLoadMaxThread = DEFAULT_NETWORK_LOAD_MAX_THREAD;
+        private int diskLoadMinThread = -1;
+        private int networkLoadMinThread = -1;
         private long networkConnectTimeout = DEFAULT_NETWORK_CONNECT_TIMEOUT;
         private long networkReadTimeout = DEFAULT_NETWORK_READ_TIMEOUT;
         private int reloadTimes = DEFAULT_RELOAD_TIMES;
         private File diskCachePath = null;
+        private boolean diskCacheIndexResident = DEFAULT_DISK_CACHE_INDEX_RESIDENT;
+        private boolean priorityScheduleEnabled = DEFAULT_PRIORITY_SCHEDULE_ENABLED;
 
         private int urlLengthLimit = DEFAULT_URL_LENGTH_LIMIT;
         private long imageDataLengthLimit = DEFAULT_IMAGE_DATA_LENGTH_LIMIT;
+        private int streamThroughDecodeLimit = DEFAULT_STREAM_THROUGH_DECODE_LIMIT;
+        private long progressiveDisplayInterval = DEFAULT_PROGRESSIVE_DISPLAY_INTERVAL;
+        private int progressiveDisplayBufferLimit = DEFAULT_PROGRESSIVE_DISPLAY_BUFFER_LIMIT;
+        private long frameBatchedCallbackBudget = DEFAULT_FRAME_BATCHED_CALLBACK_BUDGET;
         private LowNetworkSpeedStrategy lowNetworkSpeedStrategy = new LowNetworkSpeedStrategy.Builder().build();
 
         //handler////////////////////////////////////////////////////////////////////////////
@@ -84,6 +96,7 @@ public class ServerSettings implements ComponentManager.Component{
 
         private NetworkLoadHandler networkLoadHandler = new CommonNetworkLoadHandler();
         private ExceptionHandler exceptionHandler = new CommonExceptionHandler();
+        private MetricsListener metricsListener;
 
         //configurable factory////////////////////////////////////////////////////////////////////////////
 
@@ -151,6 +164,34 @@ public class ServerSettings implements ComponentManager.Component{
             return this;
         }
 
+        /**
+         * <p>[Senior Setting]Set the bitmap reuse pool size by percent of app's MemoryClass (API 19+).</p>
+         *
+         * <p>By default, bitmaps evicted from memory cache are recycled immediately, and decoding always allocates
+         * new bitmaps, a scrolling grid churns through large allocations and triggers GC. If the pool is enabled,
+         * evicted bitmaps will be kept in pool, and reused by decoding (BitmapFactory.Options.inBitmap). The
+         * hit/miss count of pool can be found in memory report (TILoaderUtils.getMemoryReport()).</p>
+         *
+         * @param context context
+         * @param percent percent of app's MemoryClass (0f-0.25f), 0 means disabled, default:disabled
+         */
+        public Builder setBitmapPoolPercent(Context context, float percent){
+            if (context == null){
+                throw new RuntimeException("[ServerSettings]setBitmapPoolPercent:　context is null!");
+            }
+            //控制上下限
+            if (percent < 0){
+                percent = 0;
+            }else if (percent > 0.25f){
+                percent = 0.25f;
+            }
+            //应用可用内存级别
+            final int memoryClass = DeviceUtils.getMemoryClass(context);
+            //计算复用池大小
+            values.bitmapPoolSize = (int) (1024 * 1024 * memoryClass * percent);
+            return this;
+        }
+
         /**
          * Set the disk cache size, 50MB by default
          * @param sizeMb MB, > 0
@@ -173,6 +214,29 @@ public class ServerSettings implements ComponentManager.Component{
                 throw new RuntimeException("[ServerSettings]networkLoadMaxThread must >= 1");
             }
             values.networkLoadMaxThread = maxThread;
+            values.networkLoadMinThread = -1;
+            return this;
+        }
+
+        /**
+         * <p>[Senior Setting]Enable adaptive concurrency of network loading engine.</p>
+         *
+         * <p>The concurrency will be adjusted in [minThread, maxThread] by measured throughput (bytes loaded per second)
+         * and completion latency (network loading and decoding): increase when all threads are busy and no latency
+         * inflation, decrease when latency inflated without throughput gain. It overrides {@link #setNetworkLoadMaxThread(int)}.</p>
+         *
+         * @param minThread min thread num, >=1
+         * @param maxThread max thread num, >=minThread, adaptive disabled if equals to minThread
+         */
+        public Builder setNetworkLoadAdaptiveThread(int minThread, int maxThread){
+            if (minThread < 1){
+                throw new RuntimeException("[ServerSettings]networkLoadMinThread must >= 1");
+            }
+            if (maxThread < minThread){
+                throw new RuntimeException("[ServerSettings]networkLoadMaxThread must >= networkLoadMinThread");
+            }
+            values.networkLoadMinThread = minThread;
+            values.networkLoadMaxThread = maxThread;
             return this;
         }
 
@@ -218,6 +282,22 @@ public class ServerSettings implements ComponentManager.Component{
             return this;
         }
 
+        /**
+         * <p>[Senior Setting]Keep disk cache index resident in memory.</p>
+         *
+         * <p>By default, the disk cache will close after a period of inactivity, and re-open on the next access,
+         * the journal of disk cache will be replayed while re-opening. In resident mode, the disk cache is opened
+         * (warmed up) asynchronously on startup and never closed while idle. A compact index (key -> size/timestamp)
+         * is kept in memory, disk cache misses are answered by the index without touching the file system. The index
+         * is persisted as a binary snapshot in the cache directory, to avoid rebuilding it on the next startup.</p>
+         *
+         * @param resident true: keep disk cache index resident, {@value DEFAULT_DISK_CACHE_INDEX_RESIDENT} by default
+         */
+        public Builder setDiskCacheIndexResident(boolean resident){
+            values.diskCacheIndexResident = resident;
+            return this;
+        }
+
         /**
          * Set reload times
          * @param reloadTimes reload times (reload when load failed), {@value DEFAULT_RELOAD_TIMES} by default
@@ -230,6 +310,22 @@ public class ServerSettings implements ComponentManager.Component{
             return this;
         }
 
+        /**
+         * <p>[Senior Setting]Enable priority schedule mode.</p>
+         *
+         * <p>By default, engines pull tasks from nodes in turn, regardless of whether the image is on screen.
+         * In priority schedule mode, each task has a priority evaluated by the View's position (visible >
+         * near viewport > offscreen, see {@link sviolet.turquoise.x.imageloader.stub.Stub.Priority}), and
+         * MemoryEngine/DiskEngine/NetworkEngine always execute the task with highest priority across all
+         * nodes. It will reduce the time to display visible images while scrolling fast.</p>
+         *
+         * @param enabled true: enable priority schedule, {@value DEFAULT_PRIORITY_SCHEDULE_ENABLED} by default
+         */
+        public Builder setPriorityScheduleEnabled(boolean enabled){
+            values.priorityScheduleEnabled = enabled;
+            return this;
+        }
+
         /**
          * [Senior Setting]Set the max thread of memory loading engine
          * @param maxThread max thread num, >=1, {@value DEFAULT_MEMORY_LOAD_MAX_THREAD} by default
@@ -251,6 +347,29 @@ public class ServerSettings implements ComponentManager.Component{
                 throw new RuntimeException("[ServerSettings]diskLoadMaxThread must >= 1");
             }
             values.diskLoadMaxThread = maxThread;
+            values.diskLoadMinThread = -1;
+            return this;
+        }
+
+        /**
+         * <p>[Senior Setting]Enable adaptive concurrency of disk loading engine.</p>
+         *
+         * <p>The concurrency will be adjusted in [minThread, maxThread] by measured throughput (tasks per second)
+         * and completion latency (disk reading and decoding), avoid too many concurrent decodes on weak devices.
+         * It overrides {@link #setDiskLoadMaxThread(int)}.</p>
+         *
+         * @param minThread min thread num, >=1
+         * @param maxThread max thread num, >=minThread, adaptive disabled if equals to minThread
+         */
+        public Builder setDiskLoadAdaptiveThread(int minThread, int maxThread){
+            if (minThread < 1){
+                throw new RuntimeException("[ServerSettings]diskLoadMinThread must >= 1");
+            }
+            if (maxThread < minThread){
+                throw new RuntimeException("[ServerSettings]diskLoadMaxThread must >= diskLoadMinThread");
+            }
+            values.diskLoadMinThread = minThread;
+            values.diskLoadMaxThread = maxThread;
             return this;
         }
 
@@ -295,6 +414,72 @@ public class ServerSettings implements ComponentManager.Component{
             return this;
         }
 
+        /**
+         * <p>[Senior Setting]Set the data length limit of stream-through decoding.</p>
+         *
+         * <p>By default, image data loaded from network is written into disk cache, then read from disk cache
+         * and decoded. If this limit is set, the network stream will be written into disk cache and memory
+         * buffer simultaneously, image whose data length is not greater than the limit will be decoded from
+         * memory directly after loading, without reading from disk again. Larger images and images loaded by
+         * RandomAccessFile (multi-thread loading) are still decoded from disk cache.</p>
+         *
+         * @param limitBytes data length limit (bytes), each network loading thread may hold a buffer of this size,
+         *                   0 means disabled, default:disabled
+         */
+        public Builder setStreamThroughDecodeLimit(int limitBytes){
+            if (limitBytes < 0){
+                limitBytes = 0;
+            }
+            values.streamThroughDecodeLimit = limitBytes;
+            return this;
+        }
+
+        /**
+         * <p>[Senior Setting]Enable progressive display for slow network loading.</p>
+         *
+         * <p>While loading from network, the downloaded data (prefix) will be decoded periodically at a reduced
+         * sample size, and displayed by view as a preview (e.g. scans of progressive JPEG, or upper part of
+         * baseline image), the preview will be replaced when the full decode completes. Previews are decoded in a
+         * separate thread, only the latest data is decoded, and the bitmaps of replaced previews are put into bitmap
+         * pool (or recycled) after views stop displaying them. Only the first bufferLimit
+         * bytes are kept in memory for previewing, the preview stops updating when data is out of the limit.
+         * Images loaded by RandomAccessFile (multi-thread loading) have no preview.</p>
+         *
+         * @param intervalMillis interval of preview decoding (ms), the first preview will be decoded after the interval,
+         *                       so the images loaded fast have no preview, 0 means disabled, default:disabled
+         * @param bufferLimitBytes data length limit of preview buffer (bytes), default:{@value DEFAULT_PROGRESSIVE_DISPLAY_BUFFER_LIMIT}
+         */
+        public Builder setProgressiveDisplay(long intervalMillis, int bufferLimitBytes){
+            if (intervalMillis < 0){
+                intervalMillis = 0;
+            }
+            if (bufferLimitBytes <= 0){
+                bufferLimitBytes = DEFAULT_PROGRESSIVE_DISPLAY_BUFFER_LIMIT;
+            }
+            values.progressiveDisplayInterval = intervalMillis;
+            values.progressiveDisplayBufferLimit = bufferLimitBytes;
+            return this;
+        }
+
+        /**
+         * <p>[Senior Setting]Enable frame-batched callback.</p>
+         *
+         * <p>By default, each finished task is delivered to its stub by a separate main-thread message. When a lot of
+         * tasks finish nearly simultaneously (e.g. a grid of thumbnails hit in memory cache), it causes many separate
+         * main-loop messages and relayouts. In frame-batched mode, finished tasks are coalesced and delivered once per
+         * frame (Choreographer, API 16+, or one main-thread message below API 16), the delivery stops when the frame
+         * budget is exhausted, and remaining tasks are delivered in the next frame.</p>
+         *
+         * @param frameBudgetMillis time budget of delivering per frame (ms), e.g. 8, 0 means disabled, default:disabled
+         */
+        public Builder setFrameBatchedCallback(long frameBudgetMillis){
+            if (frameBudgetMillis < 0){
+                frameBudgetMillis = 0;
+            }
+            values.frameBatchedCallbackBudget = frameBudgetMillis;
+            return this;
+        }
+
         /**
          * <p>[Senior Setting]</p>
          *
@@ -352,6 +537,20 @@ public class ServerSettings implements ComponentManager.Component{
             return this;
         }
 
+        /**
+         * <p>[Senior Setting]Set listener to receive structured events of each task (queued, cache hit/miss,
+         * network, decode, delivered...), used to measure where time goes in loading, and to tune cache sizes
+         * and thread counts.</p>
+         *
+         * <p>Built-in aggregator (percentiles and hit ratios per node): {@link CommonMetricsAggregator}</p>
+         *
+         * @param metricsListener listener, must be thread-safe and fast, null by default (disabled)
+         */
+        public Builder setMetricsListener(MetricsListener metricsListener){
+            values.metricsListener = metricsListener;
+            return this;
+        }
+
         //configurable factory////////////////////////////////////////////////////////////////////////////
 
         /**
@@ -447,6 +646,7 @@ public class ServerSettings implements ComponentManager.Component{
     public static final boolean DEFAULT_LOG_ENABLED = true;
     public static final boolean DEFAULT_WIPE_DISK_CACHE_WHEN_UPDATE = false;
     public static final int DEFAULT_MEMORY_CACHE_SIZE = 0;
+    public static final int DEFAULT_BITMAP_POOL_SIZE = 0;
     public static final int DEFAULT_DISK_CACHE_SIZE = 100 * 1024 * 1024;
     public static final int DEFAULT_MEMORY_LOAD_MAX_THREAD = 1;
     public static final int DEFAULT_DISK_LOAD_MAX_THREAD = 2;
@@ -454,14 +654,20 @@ public class ServerSettings implements ComponentManager.Component{
     public static final long DEFAULT_NETWORK_CONNECT_TIMEOUT = 3000;//ms
     public static final long DEFAULT_NETWORK_READ_TIMEOUT = 5000;//ms
     private static final int DEFAULT_RELOAD_TIMES = 1;
+    public static final boolean DEFAULT_PRIORITY_SCHEDULE_ENABLED = false;
 
     public static final int DEFAULT_URL_LENGTH_LIMIT = 8 * 1024;
     private static final long DEFAULT_IMAGE_DATA_LENGTH_LIMIT = -1;
     private static final long MIN_IMAGE_DATA_LENGTH_LIMIT = 1024 * 1024;
     private static final float DEFAULT_IMAGE_DATA_LENGTH_LIMIT_PERCENT = 0.2f;
+    public static final int DEFAULT_STREAM_THROUGH_DECODE_LIMIT = 0;
+    public static final long DEFAULT_PROGRESSIVE_DISPLAY_INTERVAL = 0;
+    public static final int DEFAULT_PROGRESSIVE_DISPLAY_BUFFER_LIMIT = 1024 * 1024;
+    public static final long DEFAULT_FRAME_BATCHED_CALLBACK_BUDGET = 0;
 
     public static final DiskCachePath DEFAULT_DISK_CACHE_PATH = DiskCachePath.INNER_STORAGE;
     public static final String DEFAULT_DISK_CACHE_SUB_PATH = "tiloader-cache";
+    public static final boolean DEFAULT_DISK_CACHE_INDEX_RESIDENT = false;
 
     //Var/////////////////////////////////////////////////////////////////////////////////
 
@@ -479,7 +685,9 @@ public class ServerSettings implements ComponentManager.Component{
 
         //instance
         values.imageResourceHandler = new CommonImageResourceHandler();
-        values.decodeHandler = new CommonDecodeHandler();
+        //reuse bitmaps of pool while decoding, if pool enabled
+        values.decodeHandler = new CommonDecodeHandler(values.bitmapPoolSize > 0 && BitmapPool.isSupported() ?
+                manager.getMemoryCacheServer().getInBitmapProvider() : null);
 
         if (values.loadingDrawableFactory == null) {
             values.loadingDrawableFactory = new CommonLoadingDrawableFactory();
@@ -506,6 +714,10 @@ public class ServerSettings implements ComponentManager.Component{
         return values.memoryCacheSize;
     }
 
+    public int getBitmapPoolSize(){
+        return values.bitmapPoolSize;
+    }
+
     public int getDiskCacheSize(){
         return values.diskCacheSize;
     }
@@ -522,6 +734,20 @@ public class ServerSettings implements ComponentManager.Component{
         return values.diskLoadMaxThread;
     }
 
+    /**
+     * @return min thread num of disk loading engine, equals to max thread if adaptive concurrency is disabled
+     */
+    public int getDiskLoadMinThread(){
+        return values.diskLoadMinThread > 0 ? values.diskLoadMinThread : values.diskLoadMaxThread;
+    }
+
+    /**
+     * @return min thread num of network loading engine, equals to max thread if adaptive concurrency is disabled
+     */
+    public int getNetworkLoadMinThread(){
+        return values.networkLoadMinThread > 0 ? values.networkLoadMinThread : values.networkLoadMaxThread;
+    }
+
     /**
      * @return milli second
      */
@@ -543,14 +769,50 @@ public class ServerSettings implements ComponentManager.Component{
         return values.diskCachePath;
     }
 
+    public boolean isDiskCacheIndexResident(){
+        return values.diskCacheIndexResident;
+    }
+
     public int getReloadTimes(){
         return values.reloadTimes;
     }
 
+    public boolean isPriorityScheduleEnabled(){
+        return values.priorityScheduleEnabled;
+    }
+
     public int getUrlLengthLimit(){
         return values.urlLengthLimit;
     }
 
+    /**
+     * @return data length limit of stream-through decoding, 0 means disabled
+     */
+    public int getStreamThroughDecodeLimit(){
+        return values.streamThroughDecodeLimit;
+    }
+
+    /**
+     * @return interval of progressive display (preview decoding), 0 means disabled
+     */
+    public long getProgressiveDisplayInterval(){
+        return values.progressiveDisplayInterval;
+    }
+
+    /**
+     * @return data length limit of progressive display buffer
+     */
+    public int getProgressiveDisplayBufferLimit(){
+        return values.progressiveDisplayBufferLimit;
+    }
+
+    /**
+     * @return time budget of frame-batched callback per frame (ms), 0 means disabled
+     */
+    public long getFrameBatchedCallbackBudget(){
+        return values.frameBatchedCallbackBudget;
+    }
+
     public long getImageDataLengthLimit(){
         if (values.imageDataLengthLimit > 0){
             return values.imageDataLengthLimit;
@@ -591,6 +853,13 @@ public class ServerSettings implements ComponentManager.Component{
         return values.exceptionHandler;
     }
 
+    /**
+     * @return metrics listener, nullable
+     */
+    public MetricsListener getMetricsListener(){
+        return values.metricsListener;
+    }
+
     //configurable factory////////////////////////////////////////////////////////////////////////////
 
     public StubFactory getStubFactory(){
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.handler;
+
+import sviolet.turquoise.x.imageloader.node.Task;
+
+/**
+ * <p>Instrumentation of TILoader pipeline, receives structured events of each {@link Task}.</p>
+ *
+ * <p>CAUTION: Events are callback synchronously in engine threads / UI thread, the implementation must be
+ * thread-safe and fast, do not block.</p>
+ *
+ * <p>Built-in implementation: {@link sviolet.turquoise.x.imageloader.handler.common.CommonMetricsAggregator}</p>
+ *
+ * @author S.Violet
+ */
+public interface MetricsListener {
+
+    long UNKNOWN = -1;
+
+    /**
+     * @param event event type
+     * @param taskInfo task info, it's identical in the life of a task
+     * @param timestamp uptime millis (SystemClock.uptimeMillis())
+     * @param bytes bytes count of the event, {@value UNKNOWN} if not available
+     */
+    void onEvent(Event event, Task.Info taskInfo, long timestamp, long bytes);
+
+    enum Event {
+        /**
+         * new task created and queued
+         */
+        QUEUED,
+        /**
+         * image found in memory cache
+         */
+        MEMORY_HIT,
+        /**
+         * image not found in memory cache
+         */
+        MEMORY_MISS,
+        /**
+         * image found in disk cache of TILoader
+         */
+        DISK_HIT,
+        /**
+         * image not found in disk cache of TILoader
+         */
+        DISK_MISS,
+        /**
+         * start connecting to network
+         */
+        NETWORK_CONNECT,
+        /**
+         * first byte received from network
+         */
+        NETWORK_FIRST_BYTE,
+        /**
+         * network loading finished (succeed), bytes: loaded data length
+         */
+        NETWORK_DONE,
+        /**
+         * start decoding
+         */
+        DECODE_START,
+        /**
+         * decoding finished, bytes: byte count of decoded image, {@value UNKNOWN} if failed
+         */
+        DECODE_END,
+        /**
+         * decoding failed (exception or invalid result), notified after DECODE_END
+         */
+        DECODE_FAILED,
+        /**
+         * image delivered to stubs (view / listener)
+         */
+        DELIVERED,
+        /**
+         * task finished with failure
+         */
+        FAILED,
+        /**
+         * task canceled
+         */
+        CANCELED,
+        /**
+         * task dropped by request queue (excessive tasks) or canceled preload task
+         */
+        DROPPED
+    }
+
+}
@@ -324,6 +324,8 @@ public abstract class AbstractNetworkLoadHandler implements NetworkLoadHandler {
                 }
                 //write disk
                 bufferedOutputStream.write(buffer, 0, readLength);
+                //progressive display
+                writerProvider.notifyProgress(bufferedOutputStream);
                 loopCount++;
             }
 
@@ -372,9 +374,11 @@ public abstract class AbstractNetworkLoadHandler implements NetworkLoadHandler {
         final long loadedData = taskInfo.getLoadProgress().loaded();
         final long totalData = taskInfo.getLoadProgress().total();
 
-        final long deadline = lowNetworkSpeedConfig.getDeadline();
-        final long windowPeriod = lowNetworkSpeedConfig.getWindowPeriod();
-        final int thresholdSpeed = lowNetworkSpeedConfig.getThresholdSpeed();
+        //resolve once, all values of this check come from the same configure
+        final LowNetworkSpeedStrategy.Configure configure = lowNetworkSpeedConfig.current();
+        final long deadline = configure.getDeadline();
+        final long windowPeriod = configure.getWindowPeriod();
+        final int thresholdSpeed = configure.getThresholdSpeed();
 
         //dead line
         if (elapseTime > deadline){
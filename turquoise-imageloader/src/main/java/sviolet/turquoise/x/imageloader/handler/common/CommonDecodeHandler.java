@@ -55,6 +55,22 @@ public class CommonDecodeHandler extends DecodeHandler {
 
     private int zxingReferenceState = 0;
 
+    private BitmapUtils.InBitmapProvider inBitmapProvider;
+
+    //cache of generated qr-code matrix, keyed by contents/size/margin/charset/correction level
+    private static final int QR_CODE_CACHE_SIZE = 10;
+    private volatile ZxingUtils.BitMatrixCache qrCodeCache;
+
+    public CommonDecodeHandler() {
+    }
+
+    /**
+     * @param inBitmapProvider provide bitmaps for reusing while decoding (BitmapFactory.Options.inBitmap), nullable
+     */
+    public CommonDecodeHandler(BitmapUtils.InBitmapProvider inBitmapProvider) {
+        this.inBitmapProvider = inBitmapProvider;
+    }
+
     //decode//////////////////////////////////////////////////////////////////////////
 
     @Override
@@ -171,13 +187,13 @@ public class CommonDecodeHandler extends DecodeHandler {
     private Bitmap decodeBitmap(Context applicationContext, Task.Info taskInfo, DecodeType decodeType, Object data, TLogger logger, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, BitmapUtils.InSampleQuality quality){
         switch (decodeType) {
             case IMAGE_BYTES:
-                return BitmapUtils.decodeFromByteArray((byte[]) data, reqWidth, reqHeight, bitmapConfig, quality);
+                return BitmapUtils.decodeFromByteArray((byte[]) data, reqWidth, reqHeight, bitmapConfig, quality, inBitmapProvider);
             case IMAGE_FILE:
-                return BitmapUtils.decodeFromFile(((File) data).getAbsolutePath(), reqWidth, reqHeight, bitmapConfig, quality);
+                return BitmapUtils.decodeFromFile(((File) data).getAbsolutePath(), reqWidth, reqHeight, bitmapConfig, quality, inBitmapProvider);
             case IMAGE_RES:
                 return BitmapUtils.decodeFromResource(applicationContext.getResources(), (int) data, reqWidth, reqHeight, bitmapConfig, quality);
             case IMAGE_ASSETS:
-                return BitmapUtils.decodeFromAssets(applicationContext.getAssets(), (String) data, reqWidth, reqHeight, bitmapConfig, quality);
+                return BitmapUtils.decodeFromAssets(applicationContext.getAssets(), (String) data, reqWidth, reqHeight, bitmapConfig, quality, inBitmapProvider);
             case QR_CODE:
                 return generateQrCode(applicationContext, taskInfo, (String)data, logger, reqWidth, reqHeight, bitmapConfig, quality);
             default:
@@ -206,12 +222,27 @@ public class CommonDecodeHandler extends DecodeHandler {
                     margin,
                     bitmapConfig,
                     charset,
-                    (ZxingUtils.CorrectionLevel) correctionLevel);
+                    (ZxingUtils.CorrectionLevel) correctionLevel,
+                    getQrCodeCache());
         } catch (ZxingUtils.QrCodeGenerateException e) {
             throw new RuntimeException("Error while generating qr-code bitmap from url, url:" + String.valueOf(data), e);
         }
     }
 
+    /**
+     * created lazily, zxing may not be referenced
+     */
+    private ZxingUtils.BitMatrixCache getQrCodeCache(){
+        if (qrCodeCache == null){
+            synchronized (this) {
+                if (qrCodeCache == null) {
+                    qrCodeCache = new ZxingUtils.BitMatrixCache(QR_CODE_CACHE_SIZE);
+                }
+            }
+        }
+        return qrCodeCache;
+    }
+
     //decode gif//////////////////////////////////////////////////////////////////////////////////
 
     private ImageResource handleGif(Context applicationContext, Context context, Task.Info taskInfo, DecodeType decodeType, Object data, TLogger logger, int reqWidth, int reqHeight) {
@@ -0,0 +1,478 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.handler.common;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import sviolet.turquoise.x.imageloader.handler.MetricsListener;
+import sviolet.turquoise.x.imageloader.node.Task;
+
+/**
+ * <p>Built-in MetricsListener, aggregates events to percentiles (p50/p95/p99) of stages and hit ratios of caches,
+ * per node and in total.</p>
+ *
+ * <pre>{@code
+ *      CommonMetricsAggregator aggregator = new CommonMetricsAggregator();
+ *      TILoader.setting(new ServerSettings.Builder()
+ *          .setMetricsListener(aggregator)
+ *          .build());
+ *      //report
+ *      CommonMetricsAggregator.Snapshot snapshot = aggregator.getSnapshot();
+ *      long p95 = snapshot.getP95(CommonMetricsAggregator.Stage.TOTAL);
+ *      float memoryHitRatio = snapshot.getMemoryHitRatio();
+ * }</pre>
+ *
+ * <p>Latencies are recorded in histogram with fixed buckets (ms), so the percentiles are upper bounds of buckets.</p>
+ *
+ * @author S.Violet
+ */
+public class CommonMetricsAggregator implements MetricsListener {
+
+    private static final int MAX_NODE_NUM = 32;
+    private static final int MAX_TRACE_NUM = 1024;
+
+    //upper bounds of histogram buckets (ms), the last bucket is unbounded
+    private static final long[] BUCKET_BOUNDS = {
+            1, 2, 3, 4, 5, 6, 8, 10, 12, 15, 20, 25, 30, 40, 50, 60, 80, 100, 120, 150, 200, 250, 300, 400, 500,
+            600, 800, 1000, 1200, 1500, 2000, 2500, 3000, 4000, 5000, 6000, 8000, 10000, 12000, 15000, 20000, 30000, 60000
+    };
+
+    //traces of running tasks
+    private final Map<Task.Info, Trace> traces = new ConcurrentHashMap<>();
+
+    private final Metrics totalMetrics = new Metrics();
+    //nodes are created by Activities, the least recently used one is evicted when exceeding MAX_NODE_NUM
+    private final ConcurrentHashMap<String, Metrics> nodeMetricsMap = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEvent(Event event, Task.Info taskInfo, long timestamp, long bytes) {
+        Metrics nodeMetrics = getNodeMetrics(taskInfo.getNodeId(), timestamp);
+        Trace trace;
+        switch (event) {
+            case QUEUED:
+                if (traces.size() >= MAX_TRACE_NUM) {
+                    //tasks abandoned without finishing (e.g. node destroyed)
+                    evictOldestTraces();
+                }
+                traces.put(taskInfo, new Trace(timestamp));
+                increase(nodeMetrics, Counter.QUEUED, 1);
+                break;
+            case MEMORY_HIT:
+                increase(nodeMetrics, Counter.MEMORY_HIT, 1);
+                break;
+            case MEMORY_MISS:
+                increase(nodeMetrics, Counter.MEMORY_MISS, 1);
+                break;
+            case DISK_HIT:
+                increase(nodeMetrics, Counter.DISK_HIT, 1);
+                break;
+            case DISK_MISS:
+                increase(nodeMetrics, Counter.DISK_MISS, 1);
+                break;
+            case NETWORK_CONNECT:
+                trace = traces.get(taskInfo);
+                if (trace != null) {
+                    trace.connectTime = timestamp;
+                }
+                break;
+            case NETWORK_FIRST_BYTE:
+                trace = traces.get(taskInfo);
+                if (trace != null && trace.connectTime > 0) {
+                    record(nodeMetrics, Stage.FIRST_BYTE, timestamp - trace.connectTime);
+                }
+                break;
+            case NETWORK_DONE:
+                trace = traces.get(taskInfo);
+                if (trace != null && trace.connectTime > 0) {
+                    record(nodeMetrics, Stage.DOWNLOAD, timestamp - trace.connectTime);
+                }
+                if (bytes > 0) {
+                    increase(nodeMetrics, Counter.DOWNLOADED_BYTES, bytes);
+                }
+                break;
+            case DECODE_START:
+                trace = traces.get(taskInfo);
+                if (trace != null) {
+                    trace.decodeStartTime = timestamp;
+                }
+                break;
+            case DECODE_END:
+                trace = traces.get(taskInfo);
+                if (trace != null && trace.decodeStartTime > 0) {
+                    record(nodeMetrics, Stage.DECODE, timestamp - trace.decodeStartTime);
+                    trace.decodeStartTime = 0;
+                }
+                break;
+            case DECODE_FAILED:
+                increase(nodeMetrics, Counter.DECODE_FAILED, 1);
+                break;
+            case DELIVERED:
+                trace = traces.remove(taskInfo);
+                if (trace != null) {
+                    record(nodeMetrics, Stage.TOTAL, timestamp - trace.queuedTime);
+                }
+                increase(nodeMetrics, Counter.DELIVERED, 1);
+                break;
+            case FAILED:
+                traces.remove(taskInfo);
+                increase(nodeMetrics, Counter.FAILED, 1);
+                break;
+            case CANCELED:
+                traces.remove(taskInfo);
+                increase(nodeMetrics, Counter.CANCELED, 1);
+                break;
+            case DROPPED:
+                traces.remove(taskInfo);
+                increase(nodeMetrics, Counter.DROPPED, 1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return snapshot of all nodes
+     */
+    public Snapshot getSnapshot() {
+        return totalMetrics.snapshot();
+    }
+
+    /**
+     * @param nodeId node id, see {@link Task.Info#getNodeId()}
+     * @return snapshot of the node, null if not found (only the recent {@value MAX_NODE_NUM} nodes are kept)
+     */
+    public Snapshot getSnapshot(String nodeId) {
+        Metrics metrics = nodeId != null ? nodeMetricsMap.get(nodeId) : null;
+        return metrics != null ? metrics.snapshot() : null;
+    }
+
+    /**
+     * @return id of recent nodes
+     */
+    public Set<String> getNodeIds() {
+        return new HashSet<>(nodeMetricsMap.keySet());
+    }
+
+    /**
+     * clear all metrics
+     */
+    public void reset() {
+        nodeMetricsMap.clear();
+        totalMetrics.reset();
+        traces.clear();
+    }
+
+    private Metrics getNodeMetrics(String nodeId, long now) {
+        if (nodeId == null) {
+            return null;
+        }
+        Metrics metrics = nodeMetricsMap.get(nodeId);
+        if (metrics == null) {
+            Metrics newMetrics = new Metrics();
+            metrics = nodeMetricsMap.putIfAbsent(nodeId, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+                metrics.lastAccessTime = now;
+                if (nodeMetricsMap.size() > MAX_NODE_NUM) {
+                    evictEldestNode(nodeId);
+                }
+                return metrics;
+            }
+        }
+        metrics.lastAccessTime = now;
+        return metrics;
+    }
+
+    /**
+     * evict the least recently used node, only happens when a new node is added
+     */
+    private void evictEldestNode(String excludedNodeId) {
+        while (nodeMetricsMap.size() > MAX_NODE_NUM) {
+            Map.Entry<String, Metrics> eldest = null;
+            for (Map.Entry<String, Metrics> entry : nodeMetricsMap.entrySet()) {
+                if (excludedNodeId.equals(entry.getKey())) {
+                    continue;
+                }
+                if (eldest == null || entry.getValue().lastAccessTime < eldest.getValue().lastAccessTime) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            nodeMetricsMap.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * evict the oldest quarter of traces, keeps the traces of tasks still running
+     */
+    private void evictOldestTraces() {
+        long[] queuedTimes = new long[MAX_TRACE_NUM * 2];
+        int count = 0;
+        for (Trace trace : traces.values()) {
+            if (count >= queuedTimes.length) {
+                break;
+            }
+            queuedTimes[count++] = trace.queuedTime;
+        }
+        if (count <= 0) {
+            return;
+        }
+        Arrays.sort(queuedTimes, 0, count);
+        long threshold = queuedTimes[(count - 1) / 4];
+        Iterator<Trace> iterator = traces.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().queuedTime <= threshold) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void increase(Metrics nodeMetrics, Counter counter, long delta) {
+        totalMetrics.counters.addAndGet(counter.ordinal(), delta);
+        if (nodeMetrics != null) {
+            nodeMetrics.counters.addAndGet(counter.ordinal(), delta);
+        }
+    }
+
+    private void record(Metrics nodeMetrics, Stage stage, long elapse) {
+        if (elapse < 0) {
+            return;
+        }
+        int bucket = bucketOf(elapse);
+        totalMetrics.histograms[stage.ordinal()].incrementAndGet(bucket);
+        if (nodeMetrics != null) {
+            nodeMetrics.histograms[stage.ordinal()].incrementAndGet(bucket);
+        }
+    }
+
+    private static int bucketOf(long elapse) {
+        int index = Arrays.binarySearch(BUCKET_BOUNDS, elapse);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /************************************************************************************
+     * inner class
+     */
+
+    /**
+     * latency stages
+     */
+    public enum Stage {
+        /**
+         * queued -> delivered to stub
+         */
+        TOTAL,
+        /**
+         * network connect -> first byte received
+         */
+        FIRST_BYTE,
+        /**
+         * network connect -> loading finished
+         */
+        DOWNLOAD,
+        /**
+         * decode start -> decode end
+         */
+        DECODE
+    }
+
+    /**
+     * counters
+     */
+    public enum Counter {
+        QUEUED,
+        MEMORY_HIT,
+        MEMORY_MISS,
+        DISK_HIT,
+        DISK_MISS,
+        DECODE_FAILED,
+        DOWNLOADED_BYTES,
+        DELIVERED,
+        FAILED,
+        CANCELED,
+        DROPPED
+    }
+
+    private static class Trace {
+
+        private final long queuedTime;
+        private volatile long connectTime;
+        private volatile long decodeStartTime;
+
+        private Trace(long queuedTime) {
+            this.queuedTime = queuedTime;
+        }
+
+    }
+
+    private static class Metrics {
+
+        private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+        private final AtomicLongArray[] histograms = new AtomicLongArray[Stage.values().length];
+        //for LRU eviction of nodes, no need to be exact
+        private volatile long lastAccessTime;
+
+        private Metrics() {
+            for (int i = 0 ; i < histograms.length ; i++) {
+                histograms[i] = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+            }
+        }
+
+        private Snapshot snapshot() {
+            long[] counterValues = new long[counters.length()];
+            for (int i = 0 ; i < counterValues.length ; i++) {
+                counterValues[i] = counters.get(i);
+            }
+            long[][] histogramValues = new long[histograms.length][];
+            for (int i = 0 ; i < histogramValues.length ; i++) {
+                histogramValues[i] = new long[histograms[i].length()];
+                for (int j = 0 ; j < histogramValues[i].length ; j++) {
+                    histogramValues[i][j] = histograms[i].get(j);
+                }
+            }
+            return new Snapshot(counterValues, histogramValues);
+        }
+
+        private void reset() {
+            for (int i = 0 ; i < counters.length() ; i++) {
+                counters.set(i, 0);
+            }
+            for (AtomicLongArray histogram : histograms) {
+                for (int j = 0 ; j < histogram.length() ; j++) {
+                    histogram.set(j, 0);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Immutable snapshot of metrics
+     */
+    public static class Snapshot {
+
+        private final long[] counters;
+        private final long[][] histograms;
+
+        private Snapshot(long[] counters, long[][] histograms) {
+            this.counters = counters;
+            this.histograms = histograms;
+        }
+
+        public long getCount(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        /**
+         * @return hit ratio of memory cache [0, 1], -1 if no sample
+         */
+        public float getMemoryHitRatio() {
+            return ratio(getCount(Counter.MEMORY_HIT), getCount(Counter.MEMORY_MISS));
+        }
+
+        /**
+         * @return hit ratio of disk cache [0, 1], -1 if no sample
+         */
+        public float getDiskHitRatio() {
+            return ratio(getCount(Counter.DISK_HIT), getCount(Counter.DISK_MISS));
+        }
+
+        /**
+         * @return sample count of stage
+         */
+        public long getSampleCount(Stage stage) {
+            long count = 0;
+            for (long bucketCount : histograms[stage.ordinal()]) {
+                count += bucketCount;
+            }
+            return count;
+        }
+
+        /**
+         * @param stage stage
+         * @param percent (0, 1], e.g. 0.95f
+         * @return latency (ms, upper bound of bucket), -1 if no sample, {@link Long#MAX_VALUE} if out of the max bucket
+         */
+        public long getPercentile(Stage stage, float percent) {
+            long count = getSampleCount(stage);
+            if (count <= 0) {
+                return -1;
+            }
+            long target = (long) Math.ceil((double) count * (double) percent);
+            if (target < 1) {
+                target = 1;
+            }
+            long[] histogram = histograms[stage.ordinal()];
+            long cumulative = 0;
+            for (int i = 0 ; i < histogram.length ; i++) {
+                cumulative += histogram[i];
+                if (cumulative >= target) {
+                    return i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : Long.MAX_VALUE;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public long getP50(Stage stage) {
+            return getPercentile(stage, 0.5f);
+        }
+
+        public long getP95(Stage stage) {
+            return getPercentile(stage, 0.95f);
+        }
+
+        public long getP99(Stage stage) {
+            return getPercentile(stage, 0.99f);
+        }
+
+        private static float ratio(long hit, long miss) {
+            long total = hit + miss;
+            return total > 0 ? (float) hit / (float) total : -1f;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("[Metrics]");
+            builder.append("memoryHitRatio:").append(getMemoryHitRatio());
+            builder.append(", diskHitRatio:").append(getDiskHitRatio());
+            for (Counter counter : Counter.values()) {
+                builder.append(", ").append(counter).append(':').append(getCount(counter));
+            }
+            for (Stage stage : Stage.values()) {
+                builder.append(", ").append(stage).append("<n:").append(getSampleCount(stage))
+                        .append(" p50:").append(getP50(stage))
+                        .append(" p95:").append(getP95(stage))
+                        .append(" p99:").append(getP99(stage))
+                        .append('>');
+            }
+            return builder.toString();
+        }
+
+    }
+
+}
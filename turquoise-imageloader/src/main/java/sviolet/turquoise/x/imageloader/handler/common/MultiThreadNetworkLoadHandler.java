@@ -2,9 +2,12 @@ package sviolet.turquoise.x.imageloader.handler.common;
 
 import android.content.Context;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -12,6 +15,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -46,12 +50,14 @@ import sviolet.turquoise.x.imageloader.server.disk.DiskCacheServer;
 public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
 
     private static final int MAXIMUM_REDIRECT_TIMES = 5;
-    private static final int READ_BUFF_LENGTH = 8 * 1024;
+    private static final int CHUNK_BUFF_LENGTH = 32 * 1024;
+    private static final int CHUNK_BUFF_POOL_SIZE = 16;
     private static final long SPLIT_THRESHOLD = 16L * 1024L;
 
     private Map<String, OkHttpClient> okHttpClients = new ConcurrentHashMap<>(2);
     private ExecutorService workThreadPool = ThreadPoolExecutorUtils.createCached(0, Integer.MAX_VALUE, 60L, "sva-til-mtnlh-worker-%d");
     private NetworkSpeedRecorder networkSpeedRecorder;
+    private ChunkBufferPool chunkBufferPool = new ChunkBufferPool(CHUNK_BUFF_POOL_SIZE);
 
     private Map<String, String> headers;
 
@@ -174,6 +180,7 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
         Response response = null;
         List<Response> responseList = new ArrayList<>(maxBlockNum);
         List<long[]> offsetList = new ArrayList<>(maxBlockNum);
+        RandomAccessFile randomAccessFile = null;
 
         try {
 
@@ -311,10 +318,10 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
                 }
             }
 
-            //set file size
-            RandomAccessFile randomAccessFile = writerProvider.newRandomAccessFileForWrite();
+            //set file size, the file channel is shared by all read threads (positional write)
+            randomAccessFile = writerProvider.newRandomAccessFileForWrite();
             randomAccessFile.setLength(contentRange.totalSize);
-            randomAccessFile.close();
+            FileChannel fileChannel = randomAccessFile.getChannel();
 
             //refresh ui
             taskInfo.getLoadProgress().setTotal(contentRange.totalSize);
@@ -327,13 +334,11 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
             AtomicInteger finishSignal = new AtomicInteger(0);
             AtomicReference<Throwable> exceptionSignal = new AtomicReference<>(null);
 
-            //dead line, fallback
-            long deadLine = System.currentTimeMillis() + lowNetworkSpeedConfig.getDeadline() * 2;
             long readStartTime = System.currentTimeMillis();
 
             //start reading
             for (int i = 0 ; i < responseList.size() ; i++) {
-                read(responseList.get(i), offsetList.get(i), stopSignal, finishSignal, exceptionSignal, writerProvider, taskInfo);
+                read(responseList.get(i), offsetList.get(i), stopSignal, finishSignal, exceptionSignal, fileChannel, writerProvider, taskInfo);
             }
 
             //watcher thread
@@ -361,8 +366,8 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
                     networkSpeedRecorder.record(host, 0);
                     return HandleResult.CANCELED;
                 }
-                //deadline
-                if (System.currentTimeMillis() > deadLine) {
+                //dead line, fallback, follows the current configure (network type may change)
+                if (System.currentTimeMillis() > readStartTime + lowNetworkSpeedConfig.current().getDeadline() * 2) {
                     stopSignal.set(true);
                     if (logger.checkEnable(TLogger.ERROR)) {
                         logger.e("[MultiThreadNetworkLoadHandler]Watcher thread reach dead line, force stop all connections");
@@ -392,6 +397,8 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
             for (Response responseItem : responseList) {
                 close(responseItem);
             }
+            //read threads will stop by stopSignal or ClosedChannelException
+            close(randomAccessFile);
         }
 
         return HandleResult.FAILED;
@@ -548,25 +555,26 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
         return new ContentRange(false, true, totalSize, startPosition, endPosition);
     }
 
-    private void read(final Response response, final long[] offset, final AtomicBoolean stopSignal, final AtomicInteger finishSignal, final AtomicReference<Throwable> exceptionSignal, final DiskCacheServer.WriterProvider writerProvider, final Task.Info taskInfo){
+    private void read(final Response response, final long[] offset, final AtomicBoolean stopSignal, final AtomicInteger finishSignal, final AtomicReference<Throwable> exceptionSignal, final FileChannel fileChannel, final DiskCacheServer.WriterProvider writerProvider, final Task.Info taskInfo){
         workThreadPool.execute(new Runnable() {
             @Override
             public void run() {
-                RandomAccessFile randomAccessFile = null;
+                ChunkBuffer chunkBuffer = null;
                 try {
                     InputStream inputStream = response.body().byteStream();
-                    randomAccessFile = writerProvider.newRandomAccessFileForWrite();
+                    chunkBuffer = chunkBufferPool.obtain();
+                    byte[] buff = chunkBuffer.array;
 
                     long start = offset[0];
                     long end = offset[1];
+                    int filled = 0;
                     int readLength;
-                    byte[] buff = new byte[READ_BUFF_LENGTH];
 
-                    while (!stopSignal.get() && start <= end) {
+                    while (!stopSignal.get() && start + filled <= end) {
 
-                        //read from inputStream
+                        //read from inputStream, never read beyond the block
                         try {
-                            readLength = inputStream.read(buff);
+                            readLength = inputStream.read(buff, filled, (int) Math.min(buff.length - filled, end - start - filled + 1));
                         } catch (Exception e) {
                             throw new NetworkException(e);
                         }
@@ -577,19 +585,22 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
                             continue;
                         }
 
-                        //calculate write length
-                        int writeLength = readLength;
-                        if (writeLength > end - start + 1){
-                            writeLength = (int) (end - start + 1);
-                        }
-
                         //record progress
-                        taskInfo.getLoadProgress().increaseLoaded(writeLength);
+                        taskInfo.getLoadProgress().increaseLoaded(readLength);
+                        filled += readLength;
+                        writerProvider.notifyProgress(null);
+
+                        //write to disk when chunk is full or block is finished
+                        if (filled >= buff.length || start + filled > end) {
+                            write(fileChannel, chunkBuffer, filled, start);
+                            start += filled;
+                            filled = 0;
+                        }
+                    }
 
-                        //write to disk
-                        randomAccessFile.seek(start);
-                        randomAccessFile.write(buff, 0, writeLength);
-                        start += writeLength;
+                    //write the rest
+                    if (filled > 0 && !stopSignal.get()) {
+                        write(fileChannel, chunkBuffer, filled, start);
                     }
 
                     //finish
@@ -605,12 +616,24 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
                     }
                 } finally {
                     close(response);
-                    close(randomAccessFile);
+                    chunkBufferPool.recycle(chunkBuffer);
                 }
             }
         });
     }
 
+    /**
+     * positional write, thread safe, no seek
+     */
+    private void write(FileChannel fileChannel, ChunkBuffer chunkBuffer, int length, long position) throws IOException {
+        ByteBuffer byteBuffer = chunkBuffer.buffer;
+        byteBuffer.clear();
+        byteBuffer.limit(length);
+        while (byteBuffer.hasRemaining()) {
+            position += fileChannel.write(byteBuffer, position);
+        }
+    }
+
     /**
      * Check network speed by LowNetworkSpeedStrategy
      */
@@ -627,9 +650,11 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
         final long loadedData = taskInfo.getLoadProgress().loaded();
         final long totalData = taskInfo.getLoadProgress().total();
 
-        final long deadline = lowNetworkSpeedConfig.getDeadline();
-        final long windowPeriod = lowNetworkSpeedConfig.getWindowPeriod();
-        final int thresholdSpeed = lowNetworkSpeedConfig.getThresholdSpeed();
+        //resolve once, all values of this check come from the same configure
+        final LowNetworkSpeedStrategy.Configure configure = lowNetworkSpeedConfig.current();
+        final long deadline = configure.getDeadline();
+        final long windowPeriod = configure.getWindowPeriod();
+        final int thresholdSpeed = configure.getThresholdSpeed();
 
         //dead line
         if (elapseTime > deadline){
@@ -711,6 +736,57 @@ public class MultiThreadNetworkLoadHandler implements NetworkLoadHandler {
         }
     };
 
+    /**
+     * Pool of chunk buffers, reused by read threads
+     */
+    private static class ChunkBufferPool {
+
+        private final ConcurrentLinkedQueue<ChunkBuffer> pool = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger(0);
+        private final int maxSize;
+
+        private ChunkBufferPool(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        private ChunkBuffer obtain() {
+            ChunkBuffer chunkBuffer = pool.poll();
+            if (chunkBuffer != null) {
+                size.decrementAndGet();
+                return chunkBuffer;
+            }
+            return new ChunkBuffer(CHUNK_BUFF_LENGTH);
+        }
+
+        private void recycle(ChunkBuffer chunkBuffer) {
+            if (chunkBuffer == null) {
+                return;
+            }
+            if (size.incrementAndGet() > maxSize) {
+                //discard
+                size.decrementAndGet();
+                return;
+            }
+            pool.offer(chunkBuffer);
+        }
+
+    }
+
+    /**
+     * byte array for reading from InputStream, and its ByteBuffer wrapper for writing to FileChannel
+     */
+    private static class ChunkBuffer {
+
+        private final byte[] array;
+        private final ByteBuffer buffer;
+
+        private ChunkBuffer(int length) {
+            this.array = new byte[length];
+            this.buffer = ByteBuffer.wrap(array);
+        }
+
+    }
+
     private static class ContentRange {
         private boolean parseError = false;
         private boolean acceptRanges = false;
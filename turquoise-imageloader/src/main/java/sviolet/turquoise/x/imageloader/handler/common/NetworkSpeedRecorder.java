@@ -1,13 +1,16 @@
 package sviolet.turquoise.x.imageloader.handler.common;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import sviolet.turquoise.util.droid.NetStateUtils;
+
 /**
- * Record network speed of servers
+ * Record network speed of servers, per network type (cached by {@link NetStateUtils.NetworkMonitor})
  */
 class NetworkSpeedRecorder {
 
@@ -18,13 +21,16 @@ class NetworkSpeedRecorder {
     private volatile boolean initialized = false;
 
     private SharedPreferences sharedPreferences;
+    private NetStateUtils.NetworkMonitor networkMonitor;
 
+    @SuppressLint("MissingPermission")
     public NetworkSpeedRecorder(Context context) {
         if (context == null) {
             throw new IllegalArgumentException("context is null");
         }
 
         sharedPreferences = context.getSharedPreferences(SHARED_PREF_NAME, Context.MODE_PRIVATE);
+        networkMonitor = NetStateUtils.getNetworkMonitor(context);
     }
 
     private void init(){
@@ -66,7 +72,8 @@ class NetworkSpeedRecorder {
         if (host == null){
             return;
         }
-        Record record = getRecord(host, speed);
+        String key = recordKey(host);
+        Record record = getRecord(key, host, speed);
         try {
             synchronized (record) {
                 record.current = record.current * 0.8d + speed * 0.2d;
@@ -74,7 +81,7 @@ class NetworkSpeedRecorder {
                     Because the number of concurrent is less, We use a simple implementation for the time being.
                  */
                 sharedPreferences.edit()
-                        .putString(host, String.valueOf(speed))
+                        .putString(key, String.valueOf(speed))
                         .apply();
             }
         } catch (Throwable ignore){
@@ -87,18 +94,30 @@ class NetworkSpeedRecorder {
         if (host == null){
             return defaultValue;
         }
-        double speed = getRecord(host, defaultValue).current;
+        double speed = getRecord(recordKey(host), host, defaultValue).current;
         return speed >= 1d ? speed : 1d;
     }
 
-    private Record getRecord(String host, double speed) {
-        Record record = recordMap.get(host);
+    /**
+     * speeds of different network types are recorded separately
+     */
+    private String recordKey(String host) {
+        return networkMonitor.getNetworkType().name() + "@" + host;
+    }
+
+    /**
+     * @param key key with network type
+     * @param host host, records of old version are keyed by host only, they are used as initial value of new keys
+     */
+    private Record getRecord(String key, String host, double speed) {
+        Record record = recordMap.get(key);
         if (record == null) {
             synchronized (recordMap) {
-                record = recordMap.get(host);
+                record = recordMap.get(key);
                 if (record == null) {
-                    record = new Record(speed);
-                    recordMap.put(host, record);
+                    Record legacyRecord = recordMap.get(host);
+                    record = new Record(legacyRecord != null ? legacyRecord.current : speed);
+                    recordMap.put(key, record);
                 }
             }
         }
@@ -26,9 +26,11 @@ import android.view.View;
 import sviolet.turquoise.x.common.lifecycle.LifeCycleUtils;
 import sviolet.turquoise.x.imageloader.ComponentManager;
 import sviolet.turquoise.x.imageloader.server.Engine;
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.entity.Params;
 import sviolet.turquoise.x.imageloader.entity.NodeSettings;
 import sviolet.turquoise.x.imageloader.stub.Stub;
+import sviolet.turquoise.x.imageloader.stub.StubRemoter;
 
 /**
  * <p>Node for loading</p>
@@ -93,6 +95,32 @@ public class LoadNode extends Node {
         }
     }
 
+    @Override
+    public StubRemoter preload(String url, Params params) {
+        return preload(url, params, false);
+    }
+
+    @Override
+    public StubRemoter preloadToDisk(String url, Params params) {
+        return preload(url, params, true);
+    }
+
+    private StubRemoter preload(String url, Params params, boolean toDisk) {
+        manager.waitingForInitialized();
+        controller.waitingForInitialized();
+        try {
+            Stub stub = manager.getServerSettings().getStubFactory().newPreloadStub(url, params, toDisk);
+            stub.initialize(controller);
+            return stub.getStubRemoter();
+        } catch (Exception e){
+            //avoid exceptions when controller has been destroyed
+            if (!getController().isDestroyed()) {
+                getManager().getLogger().e("[LoadNode]error while creating or initializing PreloadStub, url:" + url, e);
+            }
+        }
+        return StubRemoter.NULL_STUB_REMOTER;
+    }
+
     /********************************************
      * public
      */
@@ -116,11 +144,26 @@ public class LoadNode extends Node {
         return controller.pullTask(type);
     }
 
+    @Override
+    boolean isExecutable() {
+        return controller.isExecutable();
+    }
+
+    @Override
+    void returnTask(Task task) {
+        controller.returnTask(task);
+    }
+
     @Override
     void response(Task task) {
         controller.response(task);
     }
 
+    @Override
+    void responsePreview(Task task, ImageResource preview) {
+        controller.responsePreview(task, preview);
+    }
+
     @Override
     protected void attachLifeCycle(Context context) {
         if (context instanceof Activity){
@@ -150,4 +193,12 @@ public class LoadNode extends Node {
         return controller.newNodeRemoter();
     }
 
+    /**
+     * @see ScrollPreloader
+     */
+    @Override
+    public ScrollPreloader newScrollPreloader(ScrollPreloader.UrlProvider urlProvider) {
+        return new ScrollPreloader(this, urlProvider);
+    }
+
 }
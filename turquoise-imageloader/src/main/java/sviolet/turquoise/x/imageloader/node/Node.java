@@ -22,10 +22,12 @@ package sviolet.turquoise.x.imageloader.node;
 import android.content.Context;
 import android.view.View;
 
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.entity.NodeSettings;
 import sviolet.turquoise.x.imageloader.entity.Params;
 import sviolet.turquoise.x.imageloader.server.Server;
 import sviolet.turquoise.x.imageloader.stub.Stub;
+import sviolet.turquoise.x.imageloader.stub.StubRemoter;
 import sviolet.turquoise.x.imageloader.server.Engine;
 
 /**
@@ -114,6 +116,40 @@ public abstract class Node {
      */
     public abstract void loadBackground(String url, View view, Params params);
 
+    /**
+     * [Initialize TILoader]this method will initialize TILoader<br/>
+     * [Initialize Node]this method will initialize Node<br/>
+     *
+     * <p>preload image into memory cache, without view.</p>
+     *
+     * <p>Preload task has low priority, it will be executed only when there is no normal loading task in this Node.
+     * Preload tasks are kept in separate queues, the earliest preload task will be discarded when the queue is full,
+     * see {@link NodeSettings.Builder#setPreloadQueueSize(int)}. Invoke {@link StubRemoter#cancel()} to cancel it when
+     * the target is scrolled away, or using {@link ScrollPreloader}.</p>
+     *
+     * <p>Memory cache is matched by url and params (reqSize/sourceType/decodeInterceptor), the reqSize of view loading
+     * follows the view's size by default, so you should set the same reqSize in params ({@link Params.Builder#setReqSize(int, int)}).</p>
+     *
+     * @param url URL
+     * @param params loading params
+     * @return StubRemoter, used to cancel preload, return {@link StubRemoter#NULL_STUB_REMOTER} if failed
+     */
+    public abstract StubRemoter preload(String url, Params params);
+
+    /**
+     * [Initialize TILoader]this method will initialize TILoader<br/>
+     * [Initialize Node]this method will initialize Node<br/>
+     *
+     * <p>preload image into disk cache (only for {@link Params.SourceType#HTTP_GET}), without decoding.</p>
+     *
+     * <p>Preload task has low priority, see {@link #preload(String, Params)}.</p>
+     *
+     * @param url URL
+     * @param params loading params
+     * @return StubRemoter, used to cancel preload, return {@link StubRemoter#NULL_STUB_REMOTER} if failed
+     */
+    public abstract StubRemoter preloadToDisk(String url, Params params);
+
     /**
      * Node Setting, you should setting before Node initialized (invoke TILoader.node().load() will initialize Node)<br/>
      * e.g setting in Activity.onCreate()<br/>
@@ -136,11 +172,27 @@ public abstract class Node {
      */
     abstract Task pullTask(Server.Type type);
 
+    /**
+     * @return false if the Node is paused / frozen / destroyed, Engine should not execute its tasks
+     */
+    abstract boolean isExecutable();
+
+    /**
+     * @param task pulled Task which will not be executed for now (Node paused), put it back to the queue
+     */
+    abstract void returnTask(Task task);
+
     /**
      * @param task response when Task executed by Engine
      */
     abstract void response(Task task);
 
+    /**
+     * @param task running Task
+     * @param preview preview of loading image (progressive display)
+     */
+    abstract void responsePreview(Task task, ImageResource preview);
+
     protected abstract void attachLifeCycle(Context context);
 
     /***************************************************
@@ -151,4 +203,9 @@ public abstract class Node {
      * @see NodeRemoter
      */
     public abstract NodeRemoter newNodeRemoter();
+
+    /**
+     * @see ScrollPreloader
+     */
+    public abstract ScrollPreloader newScrollPreloader(ScrollPreloader.UrlProvider urlProvider);
 }
@@ -28,6 +28,7 @@ import sviolet.turquoise.x.common.tlogger.TLogger;
 import sviolet.turquoise.x.imageloader.drawable.BackgroundDrawableFactory;
 import sviolet.turquoise.x.imageloader.drawable.FailedDrawableFactory;
 import sviolet.turquoise.x.imageloader.drawable.LoadingDrawableFactory;
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.entity.NodeSettings;
 import sviolet.turquoise.x.imageloader.entity.ServerSettings;
 import sviolet.turquoise.x.imageloader.server.Engine;
@@ -82,17 +83,63 @@ public abstract class NodeController implements LifeCycle {
      */
     public abstract void execute(Stub stub);
 
+    /**
+     * mark the ImageResource is displaying by view, it will not be recycled while evicting from memory cache,
+     * must be invoked before drawing
+     * @param key task key
+     * @param resource displaying ImageResource
+     * @return false if the ImageResource can't be displayed (bitmap reused)
+     */
+    public abstract boolean acquireImageResource(String key, ImageResource resource);
+
+    /**
+     * mark the ImageResource is no longer displaying by view
+     * @param key task key
+     * @param resource ImageResource
+     */
+    public abstract void releaseImageResource(String key, ImageResource resource);
+
+    /**
+     * mark the preview (progressive display) is displaying by view, it will not be disposed until released,
+     * must be invoked before drawing
+     * @param preview displaying preview
+     * @return false if the preview can't be displayed (disposed)
+     */
+    public abstract boolean acquirePreview(ImageResource preview);
+
+    /**
+     * mark the preview (progressive display) is no longer displaying by view
+     * @param preview preview
+     */
+    public abstract void releasePreview(ImageResource preview);
+
     /***********************************************************
      * control
      */
 
     abstract Task pullTask(Engine.Type type);
 
+    /**
+     * @return false if the Node is paused / frozen / destroyed, Engine should not execute its tasks
+     */
+    abstract boolean isExecutable();
+
+    /**
+     * @param task pulled Task which will not be executed for now (Node paused), put it back to the queue
+     */
+    abstract void returnTask(Task task);
+
     /**
      * @param task response when Task executed by Engine
      */
     abstract void response(Task task);
 
+    /**
+     * @param task running Task
+     * @param preview preview of loading image (progressive display)
+     */
+    abstract void responsePreview(Task task, ImageResource preview);
+
     abstract boolean settingNode(NodeSettings settings);
 
     /**
@@ -19,18 +19,28 @@
 
 package sviolet.turquoise.x.imageloader.node;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.view.Choreographer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import sviolet.thistle.util.concurrent.ThreadPoolExecutorUtils;
 import sviolet.turquoise.enhance.async.WeakHandler;
+import sviolet.turquoise.util.droid.DeviceUtils;
 import sviolet.turquoise.x.common.tlogger.TLogger;
 import sviolet.turquoise.x.imageloader.ComponentManager;
 import sviolet.turquoise.x.imageloader.TILoaderUtils;
@@ -40,8 +50,12 @@ import sviolet.turquoise.x.imageloader.drawable.LoadingDrawableFactory;
 import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.entity.NodeSettings;
 import sviolet.turquoise.x.imageloader.entity.ServerSettings;
+import sviolet.turquoise.x.imageloader.handler.MetricsListener;
 import sviolet.turquoise.x.imageloader.node.queue.InfiniteRequestQueue;
 import sviolet.turquoise.x.imageloader.node.queue.InfiniteResponseQueue;
+import sviolet.turquoise.x.imageloader.node.queue.LockFreeInfiniteRequestQueue;
+import sviolet.turquoise.x.imageloader.node.queue.LockFreeLossyRequestQueue;
+import sviolet.turquoise.x.imageloader.node.queue.LockFreeResponseQueue;
 import sviolet.turquoise.x.imageloader.node.queue.LossyRequestQueue;
 import sviolet.turquoise.x.imageloader.node.queue.RequestQueue;
 import sviolet.turquoise.x.imageloader.node.queue.ResponseQueue;
@@ -90,9 +104,22 @@ public class NodeControllerImpl extends NodeController {
     private RequestQueue memoryRequestQueue;
     private RequestQueue diskRequestQueue;
     private RequestQueue networkRequestQueue;
-    private ResponseQueue responseQueue = new InfiniteResponseQueue();
+    private RequestQueue memoryPreloadQueue;
+    private RequestQueue diskPreloadQueue;
+    private RequestQueue networkPreloadQueue;
+    private ResponseQueue responseQueue;
+
+    //a non-preload stub joined a group whose task may be waiting in preload queue, move it to request queue when pulling
+    private final AtomicBoolean memoryPreloadPromoted = new AtomicBoolean(false);
+    private final AtomicBoolean diskPreloadPromoted = new AtomicBoolean(false);
+    private final AtomicBoolean networkPreloadPromoted = new AtomicBoolean(false);
 
     private Map<String, StubGroup> stubPool = new ConcurrentHashMap<>();
+
+    //frame-batched callback, finished tasks waiting for delivering
+    private final Queue<Task> batchedCallbackQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean batchedCallbackScheduled = new AtomicBoolean(false);
+    private Object frameCallback;//Choreographer.FrameCallback, API 16+
     private final ReentrantLock stubPoolLock = new ReentrantLock();
 
     private final ReentrantLock initializeLock = new ReentrantLock();
@@ -136,14 +163,34 @@ public class NodeControllerImpl extends NodeController {
         if (settings == null){
             settings = new NodeSettings.Builder().build();
         }
-        if (infiniteRequestQueue){
-            memoryRequestQueue = new InfiniteRequestQueue();
-            diskRequestQueue = new InfiniteRequestQueue();
-            networkRequestQueue = new InfiniteRequestQueue();
-        }else {
-            memoryRequestQueue = new LossyRequestQueue(settings.getMemoryQueueSize(), manager.getLogger());
-            diskRequestQueue = new LossyRequestQueue(settings.getDiskQueueSize(), manager.getLogger());
-            networkRequestQueue = new LossyRequestQueue(settings.getNetQueueSize(), manager.getLogger());
+        if (settings.isLockFreeQueueEnabled()){
+            if (infiniteRequestQueue){
+                memoryRequestQueue = new LockFreeInfiniteRequestQueue();
+                diskRequestQueue = new LockFreeInfiniteRequestQueue();
+                networkRequestQueue = new LockFreeInfiniteRequestQueue();
+            }else {
+                memoryRequestQueue = new LockFreeLossyRequestQueue(settings.getMemoryQueueSize(), manager.getLogger());
+                diskRequestQueue = new LockFreeLossyRequestQueue(settings.getDiskQueueSize(), manager.getLogger());
+                networkRequestQueue = new LockFreeLossyRequestQueue(settings.getNetQueueSize(), manager.getLogger());
+            }
+            memoryPreloadQueue = new LockFreeLossyRequestQueue(settings.getPreloadQueueSize(), manager.getLogger());
+            diskPreloadQueue = new LockFreeLossyRequestQueue(settings.getPreloadQueueSize(), manager.getLogger());
+            networkPreloadQueue = new LockFreeLossyRequestQueue(settings.getPreloadQueueSize(), manager.getLogger());
+            responseQueue = new LockFreeResponseQueue();
+        } else {
+            if (infiniteRequestQueue){
+                memoryRequestQueue = new InfiniteRequestQueue();
+                diskRequestQueue = new InfiniteRequestQueue();
+                networkRequestQueue = new InfiniteRequestQueue();
+            }else {
+                memoryRequestQueue = new LossyRequestQueue(settings.getMemoryQueueSize(), manager.getLogger());
+                diskRequestQueue = new LossyRequestQueue(settings.getDiskQueueSize(), manager.getLogger());
+                networkRequestQueue = new LossyRequestQueue(settings.getNetQueueSize(), manager.getLogger());
+            }
+            memoryPreloadQueue = new LossyRequestQueue(settings.getPreloadQueueSize(), manager.getLogger());
+            diskPreloadQueue = new LossyRequestQueue(settings.getPreloadQueueSize(), manager.getLogger());
+            networkPreloadQueue = new LossyRequestQueue(settings.getPreloadQueueSize(), manager.getLogger());
+            responseQueue = new InfiniteResponseQueue();
         }
     }
 
@@ -162,6 +209,7 @@ public class NodeControllerImpl extends NodeController {
         String key = stub.getKey();
         //get stubGroup
         boolean newStubGroup = false;
+        boolean preloadGroup = false;
         StubGroup stubGroup = null;
         try {
             stubPoolLock.lock();
@@ -170,6 +218,8 @@ public class NodeControllerImpl extends NodeController {
                 stubGroup = new StubGroup();
                 stubPool.put(key, stubGroup);
                 newStubGroup = true;
+            } else {
+                preloadGroup = stubGroup.isPreload();
             }
         } finally {
             stubPoolLock.unlock();
@@ -177,28 +227,69 @@ public class NodeControllerImpl extends NodeController {
         //add into group
         stubGroup.add(stub);
 
+        //the task of group is no longer preload, it should not wait for normal tasks
+        if (preloadGroup && !stub.getType().isPreload()){
+            memoryPreloadPromoted.set(true);
+            diskPreloadPromoted.set(true);
+            networkPreloadPromoted.set(true);
+        }
+
         //execute if new
         if (newStubGroup) {
             Task task = manager.getServerSettings().getTaskFactory().newTask(this, stub, stubGroup);
             task.setNodeSettings(settings);
+            manager.notifyMetrics(MetricsListener.Event.QUEUED, task.getTaskInfo(), MetricsListener.UNKNOWN);
             executeTask(task);
         }
     }
 
+    @Override
+    public boolean acquireImageResource(String key, ImageResource resource) {
+        if (key == null || resource == null){
+            return false;
+        }
+        return manager.getMemoryCacheServer().acquire(key, resource);
+    }
+
+    @Override
+    public void releaseImageResource(String key, ImageResource resource) {
+        if (key == null || resource == null){
+            return;
+        }
+        manager.getMemoryCacheServer().release(key, resource);
+    }
+
+    @Override
+    public boolean acquirePreview(ImageResource preview) {
+        if (preview == null){
+            return false;
+        }
+        return manager.getMemoryCacheServer().acquirePreview(preview);
+    }
+
+    @Override
+    public void releasePreview(ImageResource preview) {
+        if (preview == null){
+            return;
+        }
+        manager.getMemoryCacheServer().releasePreview(preview);
+    }
+
     @Override
     Task pullTask(Server.Type type) {
-        if (nodePauseCount.get() > 0 || status.get() < NORMAL){
+        if (!isExecutable()){
 //            getLogger().d("[NodeControllerImpl]pause/destroyed/initial/frozen, skip pullTask");
             return null;
         }
 
+        boolean byPriority = manager.getServerSettings().isPriorityScheduleEnabled();
         switch (type){
             case MEMORY_ENGINE:
-                return memoryRequestQueue.get();
+                return pullTask(memoryRequestQueue, memoryPreloadQueue, memoryPreloadPromoted, byPriority);
             case DISK_ENGINE:
-                return diskRequestQueue.get();
+                return pullTask(diskRequestQueue, diskPreloadQueue, diskPreloadPromoted, byPriority);
             case NETWORK_ENGINE:
-                return networkRequestQueue.get();
+                return pullTask(networkRequestQueue, networkPreloadQueue, networkPreloadPromoted, byPriority);
             default:
                 manager.getLogger().e("NodeControllerImpl:pullTask illegal Server.Type:<" + type.toString() + ">");
                 break;
@@ -206,6 +297,75 @@ public class NodeControllerImpl extends NodeController {
         return null;
     }
 
+    @Override
+    boolean isExecutable() {
+        return nodePauseCount.get() <= 0 && status.get() >= NORMAL;
+    }
+
+    @Override
+    void returnTask(Task task) {
+        if (status.get() <= INITIAL){
+//            getLogger().d("[NodeControllerImpl]destroyed/initial, skip returnTask");
+            return;
+        }
+        //engines will be ignited when node resumed
+        switch (task.getServerType()){
+            case MEMORY_ENGINE:
+                callbackToObsolete(putTask(task, memoryRequestQueue, memoryPreloadQueue));
+                break;
+            case DISK_ENGINE:
+                callbackToObsolete(putTask(task, diskRequestQueue, diskPreloadQueue));
+                break;
+            case NETWORK_ENGINE:
+                callbackToObsolete(putTask(task, networkRequestQueue, networkPreloadQueue));
+                break;
+            default:
+                manager.getLogger().e("NodeControllerImpl:returnTask illegal Server.Type:<" + task.getServerType() + ">");
+                break;
+        }
+    }
+
+    /**
+     * preload tasks will be executed only when there is no normal task,
+     * canceled preload tasks will be dropped (callback to cancel)
+     */
+    private Task pullTask(RequestQueue requestQueue, RequestQueue preloadQueue, AtomicBoolean preloadPromoted, boolean byPriority){
+        if (preloadPromoted.compareAndSet(true, false)){
+            promotePreloadTasks(requestQueue, preloadQueue);
+        }
+        Task task = byPriority ? requestQueue.getByPriority() : requestQueue.get();
+        if (task != null){
+            return task;
+        }
+        while ((task = byPriority ? preloadQueue.getByPriority() : preloadQueue.get()) != null){
+            if (!task.isCanceled()){
+                return task;
+            }
+            callbackToObsolete(task);
+        }
+        return null;
+    }
+
+    /**
+     * move the tasks which are no longer preload (non-preload stub joined) from preload queue to request queue,
+     * the others will be put back in the original order
+     */
+    private void promotePreloadTasks(RequestQueue requestQueue, RequestQueue preloadQueue){
+        List<Task> preloadTasks = new ArrayList<>();
+        Task task;
+        //getByPriority skips empty slots, latest first if priorities are equal
+        while ((task = preloadQueue.getByPriority()) != null){
+            if (task.isPreload()){
+                preloadTasks.add(task);
+            } else {
+                callbackToObsolete(requestQueue.put(task));
+            }
+        }
+        for (int i = preloadTasks.size() - 1 ; i >= 0 ; i--){
+            callbackToObsolete(preloadQueue.put(preloadTasks.get(i)));
+        }
+    }
+
     @Override
     void response(Task task) {
         if (status.get() <= INITIAL){
@@ -217,6 +377,18 @@ public class NodeControllerImpl extends NodeController {
         postDispatch();
     }
 
+    @Override
+    void responsePreview(Task task, ImageResource preview) {
+        if (nodePauseCount.get() > 0 || status.get() < NORMAL){
+            //skip callback to stub
+            return;
+        }
+
+        Message msg = myHandler.obtainMessage(MyHandler.HANDLER_PREVIEW);
+        msg.obj = new PreviewResponse(task, preview);
+        msg.sendToTarget();
+    }
+
     /****************************************************
      * private
      */
@@ -253,7 +425,7 @@ public class NodeControllerImpl extends NodeController {
 
     private void executeTaskToMemory(Task task){
         if (task.getState() == Task.State.STAND_BY) {
-            Task obsoleteTask = memoryRequestQueue.put(task);
+            Task obsoleteTask = putTask(task, memoryRequestQueue, memoryPreloadQueue);
             manager.getMemoryEngine().ignite();
             callbackToObsolete(obsoleteTask);
         }else{
@@ -265,7 +437,7 @@ public class NodeControllerImpl extends NodeController {
 
     private void executeTaskToDisk(Task task){
         if (task.getState() == Task.State.STAND_BY){
-            Task obsoleteTask = diskRequestQueue.put(task);
+            Task obsoleteTask = putTask(task, diskRequestQueue, diskPreloadQueue);
             manager.getDiskEngine().ignite();
             callbackToObsolete(obsoleteTask);
         }else{
@@ -277,7 +449,7 @@ public class NodeControllerImpl extends NodeController {
 
     private void executeTaskToNet(Task task){
         if (task.getState() == Task.State.STAND_BY){
-            Task obsoleteTask = networkRequestQueue.put(task);
+            Task obsoleteTask = putTask(task, networkRequestQueue, networkPreloadQueue);
             manager.getNetworkEngine().ignite();
             callbackToObsolete(obsoleteTask);
         }else{
@@ -286,6 +458,21 @@ public class NodeControllerImpl extends NodeController {
         }
     }
 
+    /**
+     * @return obsolete task
+     */
+    private Task putTask(Task task, RequestQueue requestQueue, RequestQueue preloadQueue){
+        if (!task.isPreload()){
+            return requestQueue.put(task);
+        }
+        Task obsoleteTask = preloadQueue.put(task);
+        //non-preload stub joined after the task queued, it should not be dropped as a preload task
+        if (obsoleteTask != null && !obsoleteTask.isPreload()){
+            obsoleteTask = requestQueue.put(obsoleteTask);
+        }
+        return obsoleteTask;
+    }
+
     private void callback(Task task){
         if (task == null){
             return;
@@ -293,6 +480,14 @@ public class NodeControllerImpl extends NodeController {
         if (manager.getLogger().checkEnable(TLogger.DEBUG)) {
             manager.getLogger().d("[NodeControllerImpl]task finish, callback to stub, task:" + task.getTaskInfo());
         }
+        if (manager.getServerSettings().getFrameBatchedCallbackBudget() > 0){
+            //coalesce, deliver once per frame
+            batchedCallbackQueue.offer(task);
+            if (batchedCallbackScheduled.compareAndSet(false, true)){
+                myHandler.sendEmptyMessage(MyHandler.HANDLER_BATCHED_CALLBACK);
+            }
+            return;
+        }
         Message msg = myHandler.obtainMessage(MyHandler.HANDLER_CALLBACK);
         msg.obj = task;
         msg.sendToTarget();
@@ -302,6 +497,8 @@ public class NodeControllerImpl extends NodeController {
         if (obsoleteTask == null) {
             return;
         }
+        //DROPPED will be notified instead of CANCELED when callback
+        obsoleteTask.setDropped();
         obsoleteTask.setState(Task.State.CANCELED);
         callback(obsoleteTask);
     }
@@ -319,6 +516,12 @@ public class NodeControllerImpl extends NodeController {
 
         switch (task.getState()){
             case SUCCEED:
+                if (task.getType() == Stub.Type.PRELOAD_DISK){
+                    //preloaded into disk cache, no resource in memory
+                    stubGroup.onLoadSucceed(null);
+                    manager.notifyMetrics(MetricsListener.Event.DELIVERED, task.getTaskInfo(), MetricsListener.UNKNOWN);
+                    break;
+                }
                 ImageResource resource;
                 if (task.getType() == Stub.Type.EXTRACT){
                     //image will remove from memory cache
@@ -327,22 +530,93 @@ public class NodeControllerImpl extends NodeController {
                     resource = manager.getMemoryCacheServer().get(task.getKey());
                 }
                 if (TILoaderUtils.isImageResourceValid(resource)){
+                    //count before callback, extracted resource may be recycled by user
+                    long byteCount = manager.getServerSettings().getMetricsListener() != null ?
+                            manager.getServerSettings().getImageResourceHandler().byteCountOf(resource) : MetricsListener.UNKNOWN;
                     stubGroup.onLoadSucceed(resource);
+                    manager.notifyMetrics(MetricsListener.Event.DELIVERED, task.getTaskInfo(), byteCount);
                 }else{
                     stubGroup.onLoadFailed();
+                    manager.notifyMetrics(MetricsListener.Event.FAILED, task.getTaskInfo(), MetricsListener.UNKNOWN);
                 }
                 break;
             case FAILED:
                 stubGroup.onLoadFailed();
+                manager.notifyMetrics(MetricsListener.Event.FAILED, task.getTaskInfo(), MetricsListener.UNKNOWN);
                 break;
             case CANCELED:
                 stubGroup.onLoadCanceled();
+                //exactly one terminal event per task
+                manager.notifyMetrics(task.isDropped() ? MetricsListener.Event.DROPPED : MetricsListener.Event.CANCELED, task.getTaskInfo(), MetricsListener.UNKNOWN);
                 break;
             default:
                 throw new RuntimeException("[NodeControllerImpl] can't callback(callbackInUiThread) when Task.state = " + task.getState());
         }
     }
 
+    /**
+     * schedule frame-batched callback in ui thread, deliver in next frame (API 16+), or in next message loop
+     */
+    private void scheduleBatchedCallbackInUiThread(){
+        if (DeviceUtils.getVersionSDK() >= Build.VERSION_CODES.JELLY_BEAN){
+            postFrameCallback();
+        } else {
+            //post instead of calling directly, otherwise the remaining tasks will be delivered recursively without yielding
+            myHandler.sendEmptyMessage(MyHandler.HANDLER_BATCHED_CALLBACK_DELIVER);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback(){
+        if (frameCallback == null){
+            frameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    batchedCallbackInUiThread();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+    }
+
+    /**
+     * deliver finished tasks until the frame budget is exhausted, the rest will be delivered in next frame
+     */
+    private void batchedCallbackInUiThread(){
+        long deadline = SystemClock.uptimeMillis() + manager.getServerSettings().getFrameBatchedCallbackBudget();
+        int count = 0;
+        Task task;
+        while ((task = batchedCallbackQueue.poll()) != null){
+            callbackInUiThread(task);
+            count++;
+            if (SystemClock.uptimeMillis() >= deadline){
+                break;
+            }
+        }
+        if (manager.getLogger().checkEnable(TLogger.DEBUG)) {
+            manager.getLogger().d("[NodeControllerImpl]batched callback, delivered:" + count + ", remain:" + !batchedCallbackQueue.isEmpty());
+        }
+        if (!batchedCallbackQueue.isEmpty()){
+            //budget exhausted
+            scheduleBatchedCallbackInUiThread();
+            return;
+        }
+        batchedCallbackScheduled.set(false);
+        //tasks offered after polling, before the flag reset
+        if (!batchedCallbackQueue.isEmpty() && batchedCallbackScheduled.compareAndSet(false, true)){
+            scheduleBatchedCallbackInUiThread();
+        }
+    }
+
+    private void previewInUiThread(PreviewResponse response){
+        //stubGroup will be removed when task finished
+        StubGroup stubGroup = stubPool.get(response.task.getKey());
+        if (stubGroup == null){
+            return;
+        }
+        stubGroup.onLoadPreview(response.preview);
+    }
+
     /****************************************************
      * settings
      */
@@ -556,7 +830,19 @@ public class NodeControllerImpl extends NodeController {
             if (memoryRequestQueue != null) {
                 memoryRequestQueue.clear();
             }
-            responseQueue.clear();
+            if (networkPreloadQueue != null) {
+                networkPreloadQueue.clear();
+            }
+            if (diskPreloadQueue != null) {
+                diskPreloadQueue.clear();
+            }
+            if (memoryPreloadQueue != null) {
+                memoryPreloadQueue.clear();
+            }
+            if (responseQueue != null) {
+                responseQueue.clear();
+            }
+            batchedCallbackQueue.clear();
             //clear stubs
             try {
                 for (Map.Entry<String, StubGroup> entry : stubPool.entrySet()) {
@@ -588,6 +874,9 @@ public class NodeControllerImpl extends NodeController {
     private static class MyHandler extends WeakHandler<NodeControllerImpl>{
 
         private static final int HANDLER_CALLBACK = 1;
+        private static final int HANDLER_PREVIEW = 2;
+        private static final int HANDLER_BATCHED_CALLBACK = 3;
+        private static final int HANDLER_BATCHED_CALLBACK_DELIVER = 4;
 
         public MyHandler(Looper looper, NodeControllerImpl host) {
             super(looper, host);
@@ -599,10 +888,31 @@ public class NodeControllerImpl extends NodeController {
                 case HANDLER_CALLBACK:
                     host.callbackInUiThread((Task) msg.obj);
                     break;
+                case HANDLER_PREVIEW:
+                    host.previewInUiThread((PreviewResponse) msg.obj);
+                    break;
+                case HANDLER_BATCHED_CALLBACK:
+                    host.scheduleBatchedCallbackInUiThread();
+                    break;
+                case HANDLER_BATCHED_CALLBACK_DELIVER:
+                    host.batchedCallbackInUiThread();
+                    break;
                 default:
                     break;
             }
         }
     }
 
+    private static class PreviewResponse {
+
+        private final Task task;
+        private final ImageResource preview;
+
+        private PreviewResponse(Task task, ImageResource preview) {
+            this.task = task;
+            this.preview = preview;
+        }
+
+    }
+
 }
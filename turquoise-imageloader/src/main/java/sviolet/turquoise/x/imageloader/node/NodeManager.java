@@ -22,12 +22,14 @@ package sviolet.turquoise.x.imageloader.node;
 import android.content.Context;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 import sviolet.turquoise.x.imageloader.ComponentManager;
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.server.Server;
 
 /**
@@ -132,6 +134,36 @@ public class NodeManager {
         return taskList;
     }
 
+    /**
+     * pull one Task from each Node which has no candidate in the map (priority schedule mode),
+     * candidates of destroyed Node will be dropped, candidates of paused / frozen Node will be put back to the Node
+     * @param type server type
+     * @param candidates nodeId -> candidate task, pulled tasks will be put into the map
+     */
+    public void pullTasks(Server.Type type, Map<String, Task> candidates){
+        Iterator<Map.Entry<String, Task>> iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()){
+            Map.Entry<String, Task> entry = iterator.next();
+            //destroyed Node has been scrapped
+            Node node = nodes.get(entry.getKey());
+            if (node == null){
+                iterator.remove();
+            } else if (!node.isExecutable()){
+                iterator.remove();
+                node.returnTask(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+            if (candidates.containsKey(entry.getKey())){
+                continue;
+            }
+            Task task = entry.getValue().pullTask(type);
+            if (task != null) {
+                candidates.put(entry.getKey(), task);
+            }
+        }
+    }
+
     public void response(Task task){
         String nodeId = task.getNodeId();
         Node node = nodes.get(nodeId);
@@ -141,6 +173,14 @@ public class NodeManager {
         }
     }
 
+    public void responsePreview(Task task, ImageResource preview){
+        Node node = nodes.get(task.getNodeId());
+
+        if (node != null){
+            node.responsePreview(task, preview);
+        }
+    }
+
     public void scrapNode(Node node){
         if (node == null){
             return;
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.node;
+
+import android.util.SparseArray;
+import android.widget.AbsListView;
+import android.widget.GridView;
+import android.widget.ListView;
+
+import java.lang.ref.WeakReference;
+
+import sviolet.turquoise.x.imageloader.entity.Params;
+import sviolet.turquoise.x.imageloader.stub.StubRemoter;
+
+/**
+ * <p>Scroll-aware preloader, preload images of the items which are about to appear (in scrolling direction),
+ * and cancel the preload tasks which have been scrolled away. For {@link ListView} / {@link GridView} / RecyclerView.</p>
+ *
+ * <p>Preload tasks have low priority, see {@link Node#preload(String, Params)}. All methods should be invoked in UI thread.</p>
+ *
+ * <p>Example for {@link ListView} / {@link GridView}:</p>
+ *
+ * <pre>{@code
+ *      ScrollPreloader preloader = TILoader.node(this).newScrollPreloader(new ScrollPreloader.UrlProvider() {
+ *          public String getUrl(int position) {
+ *              return adapter.getItem(position).getUrl();
+ *          }
+ *          public Params getParams(int position) {
+ *              //the same params as loading (reqSize should be the same as view)
+ *              return params;
+ *          }
+ *      }).setPreloadCount(6);
+ *      //combine with NodeRemoter
+ *      listView.setOnScrollListener(preloader.getPreloadOnListViewScrollListener()
+ *          .setCustomOnScrollListener(TILoader.node(this).newNodeRemoter().getPauseOnListViewScrollListener()));
+ * }</pre>
+ *
+ * <p>Example for RecyclerView:</p>
+ *
+ * <pre>{@code
+ *      recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+ *          public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+ *              LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+ *              preloader.onVisibleRangeChanged(layoutManager.findFirstVisibleItemPosition(),
+ *                      layoutManager.findLastVisibleItemPosition(), layoutManager.getItemCount());
+ *          }
+ *      });
+ * }</pre>
+ *
+ * @author S.Violet
+ */
+public class ScrollPreloader {
+
+    public static final int DEFAULT_PRELOAD_COUNT = 5;
+
+    private WeakReference<Node> node;
+    private UrlProvider urlProvider;
+
+    private int preloadCount = DEFAULT_PRELOAD_COUNT;
+    private boolean preloadToDisk = false;
+
+    private SparseArray<StubRemoter> preloading = new SparseArray<>();
+    private int lastFirstVisible = -1;
+    private int lastLastVisible = -1;
+
+    ScrollPreloader(Node node, UrlProvider urlProvider){
+        if (urlProvider == null){
+            throw new RuntimeException("[ScrollPreloader]urlProvider must not be null");
+        }
+        this.node = new WeakReference<>(node);
+        this.urlProvider = urlProvider;
+    }
+
+    /**
+     * @param preloadCount how many items will be preloaded in scrolling direction, {@value DEFAULT_PRELOAD_COUNT} by default
+     */
+    public ScrollPreloader setPreloadCount(int preloadCount){
+        if (preloadCount < 1){
+            throw new RuntimeException("[ScrollPreloader]preloadCount must >= 1");
+        }
+        this.preloadCount = preloadCount;
+        return this;
+    }
+
+    /**
+     * @param preloadToDisk true: preload into disk cache only (no decoding, less memory), false: preload into memory cache (default)
+     */
+    public ScrollPreloader setPreloadToDisk(boolean preloadToDisk){
+        this.preloadToDisk = preloadToDisk;
+        return this;
+    }
+
+    /**
+     * invoke when the visible items changed (UI thread)
+     * @param firstVisible position of first visible item
+     * @param lastVisible position of last visible item
+     * @param totalCount count of items
+     */
+    public void onVisibleRangeChanged(int firstVisible, int lastVisible, int totalCount){
+        if (firstVisible < 0 || lastVisible < firstVisible || totalCount <= 0){
+            return;
+        }
+        if (firstVisible == lastFirstVisible && lastVisible == lastLastVisible){
+            return;
+        }
+        //scrolling direction
+        boolean forward = lastFirstVisible < 0 || firstVisible >= lastFirstVisible;
+        lastFirstVisible = firstVisible;
+        lastLastVisible = lastVisible;
+
+        //preload window
+        int start;
+        int end;
+        if (forward){
+            start = lastVisible + 1;
+            end = Math.min(totalCount - 1, lastVisible + preloadCount);
+        } else {
+            start = Math.max(0, firstVisible - preloadCount);
+            end = firstVisible - 1;
+        }
+
+        //cancel the preload tasks which have been scrolled away
+        for (int i = preloading.size() - 1 ; i >= 0 ; i--){
+            int position = preloading.keyAt(i);
+            if (position >= start && position <= end){
+                continue;
+            }
+            if (position < firstVisible || position > lastVisible){
+                //the visible items are loading by views, no need to cancel
+                preloading.valueAt(i).cancel();
+            }
+            preloading.removeAt(i);
+        }
+
+        Node node = this.node.get();
+        if (node == null){
+            return;
+        }
+
+        //preload the items which are about to appear
+        for (int position = start ; position <= end ; position++){
+            if (preloading.get(position) != null){
+                continue;
+            }
+            String url = urlProvider.getUrl(position);
+            if (url == null){
+                continue;
+            }
+            Params params = urlProvider.getParams(position);
+            preloading.put(position, preloadToDisk ? node.preloadToDisk(url, params) : node.preload(url, params));
+        }
+    }
+
+    /**
+     * cancel all the preload tasks (UI thread)
+     */
+    public void cancel(){
+        for (int i = 0 ; i < preloading.size() ; i++){
+            preloading.valueAt(i).cancel();
+        }
+        preloading.clear();
+        lastFirstVisible = -1;
+        lastLastVisible = -1;
+    }
+
+    /**
+     * @return get OnScrollListener for ListView / GridView, which preload on scrolling
+     */
+    public PreloadOnListViewScrollListener getPreloadOnListViewScrollListener(){
+        return new PreloadOnListViewScrollListener(this);
+    }
+
+    /**
+     * provide url and params of items
+     */
+    public interface UrlProvider {
+
+        /**
+         * @param position position of item (adapter position, including header views of ListView)
+         * @return url of item, return null if no image
+         */
+        String getUrl(int position);
+
+        /**
+         * @param position position of item (adapter position, including header views of ListView)
+         * @return params of item, should be the same as loading (reqSize should be the same as view), nullable
+         */
+        Params getParams(int position);
+
+    }
+
+    /**
+     * Helper for ListView / GridView
+     */
+    public static class PreloadOnListViewScrollListener implements AbsListView.OnScrollListener {
+
+        private ScrollPreloader preloader;
+
+        private AbsListView.OnScrollListener customOnScrollListener;
+
+        private PreloadOnListViewScrollListener(ScrollPreloader preloader){
+            this.preloader = preloader;
+        }
+
+        @Override
+        public void onScrollStateChanged(AbsListView view, int scrollState) {
+            if (customOnScrollListener != null) {
+                customOnScrollListener.onScrollStateChanged(view, scrollState);
+            }
+        }
+
+        @Override
+        public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            if (visibleItemCount > 0) {
+                preloader.onVisibleRangeChanged(firstVisibleItem, firstVisibleItem + visibleItemCount - 1, totalItemCount);
+            }
+            if (customOnScrollListener != null){
+                customOnScrollListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+            }
+        }
+
+        public PreloadOnListViewScrollListener setCustomOnScrollListener(AbsListView.OnScrollListener customOnScrollListener){
+            this.customOnScrollListener = customOnScrollListener;
+            return this;
+        }
+
+    }
+
+}
@@ -25,6 +25,7 @@ import sviolet.turquoise.x.imageloader.entity.NodeSettings;
 import sviolet.turquoise.x.imageloader.entity.Params;
 import sviolet.turquoise.x.imageloader.server.Server;
 import sviolet.turquoise.x.imageloader.stub.Stub;
+import sviolet.turquoise.x.imageloader.stub.StubGroup;
 
 /**
  *
@@ -37,9 +38,11 @@ import sviolet.turquoise.x.imageloader.stub.Stub;
 public class Task {
 
     private Info values;
+    private StubGroup stubGroup;
 
-    Task(String nodeId, Stub.Type type, String url, Params params, String key, String resourceKey, LoadProgress loadProgress, IndispensableState indispensableState) {
+    Task(String nodeId, Stub.Type type, String url, Params params, String key, String resourceKey, LoadProgress loadProgress, IndispensableState indispensableState, StubGroup stubGroup) {
         this.values = new Info(nodeId, type, url, params, key, resourceKey, loadProgress, indispensableState);
+        this.stubGroup = stubGroup;
     }
 
     @Override
@@ -87,6 +90,20 @@ public class Task {
         values.state = state;
     }
 
+    /**
+     * @return true if the task has been dropped by request queue (excessive tasks) or canceled preload task
+     */
+    boolean isDropped(){
+        return values.dropped;
+    }
+
+    /**
+     * mark as dropped, the terminal metrics event will be DROPPED instead of CANCELED
+     */
+    void setDropped(){
+        values.dropped = true;
+    }
+
     public LoadProgress getLoadProgress(){
         return values.loadProgress;
     }
@@ -95,6 +112,30 @@ public class Task {
         return values.isIndispensable();
     }
 
+    /**
+     * @return current priority of task (evaluated by stubs), see {@link Stub.Priority}
+     */
+    public int getPriority(){
+        if (stubGroup == null){
+            return Stub.Priority.VISIBLE;
+        }
+        return stubGroup.getPriority();
+    }
+
+    /**
+     * @return true if the task is only required by preload stubs (evaluated by stubs)
+     */
+    public boolean isPreload(){
+        return stubGroup != null && stubGroup.isPreload();
+    }
+
+    /**
+     * @return true if the task is no longer required (all the preload stubs have been canceled)
+     */
+    public boolean isCanceled(){
+        return stubGroup != null && stubGroup.isCanceled();
+    }
+
     public NodeSettings getNodeSettings() {
         return values.nodeSettings;
     }
@@ -128,6 +169,7 @@ public class Task {
         private Stub.Type type;
         private Server.Type serverType = Server.Type.MEMORY_ENGINE;
         private volatile State state = State.STAND_BY;
+        private volatile boolean dropped = false;
         private LoadProgress loadProgress;
         private IndispensableState indispensableState;
         private boolean hasReturnedFromNetEngine = false;
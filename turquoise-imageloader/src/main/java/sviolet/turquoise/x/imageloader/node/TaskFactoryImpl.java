@@ -39,7 +39,7 @@ public class TaskFactoryImpl implements TaskFactory {
 
     @Override
     public Task newTask(NodeController controller, Stub stub, StubGroup stubGroup) {
-        return new Task(controller.getNodeId(), stub.getType(), stub.getUrl(), stub.getParams(), stub.getKey(), stub.getResourceKey(), stub.getLoadProgress().reset(), stubGroup.getIndispensableState());
+        return new Task(controller.getNodeId(), stub.getType(), stub.getUrl(), stub.getParams(), stub.getKey(), stub.getResourceKey(), stub.getLoadProgress().reset(), stubGroup.getIndispensableState(), stubGroup);
     }
 
 }
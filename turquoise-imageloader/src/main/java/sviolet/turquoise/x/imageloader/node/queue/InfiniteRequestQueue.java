@@ -61,6 +61,29 @@ public class InfiniteRequestQueue implements RequestQueue {
         return task;
     }
 
+    @Override
+    public Task getByPriority() {
+        Task task = null;
+        try{
+            tasksLock.lock();
+            int index = -1;
+            int priority = -1;
+            for (int i = 0 ; i < tasks.size() ; i++){
+                int tp = tasks.get(i).getPriority();
+                if (tp > priority){
+                    index = i;
+                    priority = tp;
+                }
+            }
+            if (index >= 0) {
+                task = tasks.remove(index);
+            }
+        }finally {
+            tasksLock.unlock();
+        }
+        return task;
+    }
+
     @Override
     public void setSize(int size) {
         //do nothing
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.node.queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import sviolet.turquoise.x.imageloader.node.Task;
+
+/**
+ * <p>Lock-free Infinite Request Queue</p>
+ *
+ * <p>Same semantics as {@link InfiniteRequestQueue} (first in first out, never drop task),
+ * based on CAS linked queue, get() is O(1).</p>
+ *
+ * @author S.Violet
+ */
+public class LockFreeInfiniteRequestQueue implements RequestQueue {
+
+    private final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public Task put(Task task) {
+        tasks.offer(task);
+        return null;
+    }
+
+    @Override
+    public Task get() {
+        return tasks.poll();
+    }
+
+    @Override
+    public Task getByPriority() {
+        while (true) {
+            Task task = null;
+            int priority = -1;
+            for (Task t : tasks) {
+                int tp = t.getPriority();
+                if (tp > priority) {
+                    task = t;
+                    priority = tp;
+                }
+            }
+            if (task == null) {
+                return null;
+            }
+            if (tasks.remove(task)) {
+                return task;
+            }
+            //taken by others, retry
+        }
+    }
+
+    @Override
+    public void setSize(int size) {
+        //do nothing
+    }
+
+    @Override
+    public void clear() {
+        tasks.clear();
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.node.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import sviolet.turquoise.x.common.tlogger.TLogger;
+import sviolet.turquoise.x.imageloader.node.Task;
+
+/**
+ * <p>Lock-free Lossy Request Queue</p>
+ *
+ * <p>Same semantics as {@link LossyRequestQueue}: fixed size, last in first out, the earliest task will be
+ * dropped (returned by {@link #put(Task)}) if queue is full.</p>
+ *
+ * <p>A fixed slot array updated in place, no allocation on put/get. Every put takes a ticket from a global
+ * counter, each slot holds a sequence number {@code ticket << 1} of the task in it, the lowest bit marks the
+ * slot busy while a thread is swapping its task. A slot is changed only by the thread which set the busy bit
+ * by CAS, so a task is either taken by {@link #get()} or returned as obsolete by {@link #put(Task)}, it will
+ * never be lost or taken twice. get() takes the task with the largest ticket, put() fills an empty slot, or
+ * replaces the task with the smallest ticket if queue is full.</p>
+ *
+ * <p>{@link #setSize(int)} is not atomic with put/get, invoke it before the queue is used.</p>
+ *
+ * @author S.Violet
+ */
+public class LockFreeLossyRequestQueue implements RequestQueue {
+
+    private static final long BUSY = 1L;
+
+    private volatile Ring ring;
+
+    private TLogger logger;
+
+    public LockFreeLossyRequestQueue(int size, TLogger logger){
+        setSize(size);
+        this.logger = logger;
+    }
+
+    @Override
+    public Task put(Task task) {
+        final Ring ring = this.ring;
+        final long sequence = ring.ticket.getAndIncrement() << 1;
+        final int size = ring.size;
+        //start from different slots to reduce collision
+        final int start = (int) ((sequence >>> 1) % size);
+        while (true) {
+            int emptyIndex = -1;
+            long emptySequence = 0;
+            int earliestIndex = -1;
+            long earliestSequence = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int index = start + i < size ? start + i : start + i - size;
+                long slotSequence = ring.sequences.get(index);
+                if ((slotSequence & BUSY) != 0) {
+                    continue;
+                }
+                if (ring.tasks.get(index) == null) {
+                    emptyIndex = index;
+                    emptySequence = slotSequence;
+                    break;
+                }
+                if (slotSequence < earliestSequence) {
+                    earliestIndex = index;
+                    earliestSequence = slotSequence;
+                }
+            }
+            if (emptyIndex >= 0) {
+                if (ring.acquire(emptyIndex, emptySequence)) {
+                    if (ring.tasks.get(emptyIndex) == null) {
+                        ring.tasks.set(emptyIndex, task);
+                        ring.sequences.set(emptyIndex, sequence);
+                        return null;
+                    }
+                    //filled by others
+                    ring.sequences.set(emptyIndex, emptySequence);
+                }
+                continue;
+            }
+            if (earliestIndex < 0) {
+                //all slots are busy
+                Thread.yield();
+                continue;
+            }
+            if (earliestSequence > sequence) {
+                //the new task is the earliest one (put concurrently with later tasks)
+                logger.d("[LockFreeLossyRequestQueue]put: drop task, task:" + task.getTaskInfo());
+                return task;
+            }
+            if (ring.acquire(earliestIndex, earliestSequence)) {
+                Task oldTask = ring.tasks.get(earliestIndex);
+                if (oldTask != null) {
+                    ring.tasks.set(earliestIndex, task);
+                    ring.sequences.set(earliestIndex, sequence);
+                    logger.d("[LockFreeLossyRequestQueue]put: drop task, task:" + task.getTaskInfo());
+                    return oldTask;
+                }
+                //taken by others, the slot is empty now
+                ring.sequences.set(earliestIndex, earliestSequence);
+            }
+        }
+    }
+
+    @Override
+    public Task get() {
+        final Ring ring = this.ring;
+        while (true) {
+            int index = -1;
+            long latestSequence = -1;
+            boolean busy = false;
+            for (int i = 0; i < ring.size; i++) {
+                long slotSequence = ring.sequences.get(i);
+                if ((slotSequence & BUSY) != 0) {
+                    busy = true;
+                    continue;
+                }
+                if (slotSequence > latestSequence && ring.tasks.get(i) != null) {
+                    index = i;
+                    latestSequence = slotSequence;
+                }
+            }
+            if (index < 0) {
+                if (busy) {
+                    //a task may be being put
+                    Thread.yield();
+                    continue;
+                }
+                return null;
+            }
+            Task task = ring.take(index, latestSequence);
+            if (task != null) {
+                return task;
+            }
+            //changed by others, retry
+        }
+    }
+
+    @Override
+    public Task getByPriority() {
+        final Ring ring = this.ring;
+        while (true) {
+            int index = -1;
+            long latestSequence = -1;
+            int priority = -1;
+            boolean busy = false;
+            for (int i = 0; i < ring.size; i++) {
+                long slotSequence = ring.sequences.get(i);
+                if ((slotSequence & BUSY) != 0) {
+                    busy = true;
+                    continue;
+                }
+                Task t = ring.tasks.get(i);
+                if (t == null) {
+                    continue;
+                }
+                //higher priority first, the latest one if the priorities are equal
+                int tp = t.getPriority();
+                if (tp > priority || (tp == priority && slotSequence > latestSequence)) {
+                    index = i;
+                    latestSequence = slotSequence;
+                    priority = tp;
+                }
+            }
+            if (index < 0) {
+                if (busy) {
+                    //a task may be being put
+                    Thread.yield();
+                    continue;
+                }
+                return null;
+            }
+            Task task = ring.take(index, latestSequence);
+            if (task != null) {
+                return task;
+            }
+            //changed by others, retry
+        }
+    }
+
+    @Override
+    public void clear() {
+        final Ring ring = this.ring;
+        for (int i = 0; i < ring.size; i++) {
+            while (true) {
+                long slotSequence = ring.sequences.get(i);
+                if ((slotSequence & BUSY) == 0 && ring.acquire(i, slotSequence)) {
+                    ring.tasks.set(i, null);
+                    ring.sequences.set(i, slotSequence);
+                    break;
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void setSize(int size) {
+        if (size < 1){
+            throw new RuntimeException("[LockFreeLossyRequestQueue]queue size must >= 1");
+        }
+        Ring oldRing = this.ring;
+        if (oldRing != null && oldRing.size == size){
+            return;
+        }
+        Ring newRing = new Ring(size);
+        if (oldRing != null){
+            //keep the latest tasks
+            Task[] latestTasks = new Task[size];
+            int count = 0;
+            for (; count < size ; count++){
+                Task task = get();
+                if (task == null){
+                    break;
+                }
+                latestTasks[count] = task;
+            }
+            //from earliest to latest
+            for (int i = count - 1 ; i >= 0 ; i--){
+                int index = size - 1 - i;
+                newRing.tasks.set(index, latestTasks[i]);
+                newRing.sequences.set(index, newRing.ticket.getAndIncrement() << 1);
+            }
+        }
+        this.ring = newRing;
+    }
+
+    /**
+     * fixed slots, replaced only by {@link #setSize(int)}
+     */
+    private static class Ring {
+
+        private final int size;
+        private final AtomicReferenceArray<Task> tasks;
+        private final AtomicLongArray sequences;
+        private final AtomicLong ticket = new AtomicLong(0);
+
+        private Ring(int size) {
+            this.size = size;
+            this.tasks = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+        }
+
+        /**
+         * set busy bit, the slot is owned by current thread until the sequence is set back
+         */
+        private boolean acquire(int index, long slotSequence) {
+            return sequences.compareAndSet(index, slotSequence, slotSequence | BUSY);
+        }
+
+        /**
+         * take task from slot, the sequence is kept, the slot become empty
+         * @return null if the slot is changed by others
+         */
+        private Task take(int index, long slotSequence) {
+            if (!acquire(index, slotSequence)) {
+                return null;
+            }
+            Task task = tasks.get(index);
+            tasks.set(index, null);
+            sequences.set(index, slotSequence);
+            return task;
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.node.queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sviolet.turquoise.x.imageloader.node.Task;
+
+/**
+ * <p>Lock-free Response Queue</p>
+ *
+ * <p>Same semantics as {@link InfiniteResponseQueue}, based on CAS linked queue.
+ * The size is counted separately, because {@link ConcurrentLinkedQueue#size()} is O(n).</p>
+ *
+ * @author S.Violet
+ */
+public class LockFreeResponseQueue implements ResponseQueue {
+
+    private final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    @Override
+    public void put(Task task) {
+        tasks.offer(task);
+        size.incrementAndGet();
+    }
+
+    @Override
+    public Task get() {
+        Task task = tasks.poll();
+        if (task != null){
+            size.decrementAndGet();
+        }
+        return task;
+    }
+
+    @Override
+    public int size() {
+        int size = this.size.get();
+        return size > 0 ? size : 0;
+    }
+
+    @Override
+    public void clear() {
+        while (get() != null){
+            //drain
+        }
+    }
+}
@@ -83,6 +83,38 @@ public class LossyRequestQueue implements RequestQueue {
         return task;
     }
 
+    @Override
+    public Task getByPriority() {
+        Task task = null;
+        try{
+            lock.lock();
+            int index = -1;
+            int priority = -1;
+            //from latest to earliest
+            int p = position;
+            for (int i = 0 ; i < size ; i++){
+                p = p < 1 ? size - 1 : p - 1;
+                Task t = tasks[p];
+                if (t == null){
+                    continue;
+                }
+                int tp = t.getPriority();
+                if (tp > priority){
+                    index = p;
+                    priority = tp;
+                }
+            }
+            if (index >= 0) {
+                //the slot become empty, put() will still drop the earliest task
+                task = tasks[index];
+                tasks[index] = null;
+            }
+        }finally {
+            lock.unlock();
+        }
+        return task;
+    }
+
     @Override
     public void clear(){
         try{
@@ -40,6 +40,16 @@ public interface RequestQueue {
      */
     Task get();
 
+    /**
+     * <p>get the Task with highest priority ({@link Task#getPriority()}) from the queue,
+     * if priorities are equal, the order is the same as {@link #get()}.</p>
+     *
+     * <p>Used in priority schedule mode, do not mix with {@link #get()}.</p>
+     *
+     * @return get a Task from the queue
+     */
+    Task getByPriority();
+
     /**
      * @param size set the size of waiting queue (>0)
      */
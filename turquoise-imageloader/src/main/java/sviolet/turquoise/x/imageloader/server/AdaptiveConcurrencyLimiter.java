@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.server;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Adaptive concurrency limiter of Engine (AIMD, with latency gradient)</p>
+ *
+ * <p>Completions are sampled by windows (at least {@value WINDOW_MIN_SAMPLES} samples and {@value WINDOW_MIN_MILLIS} ms).
+ * At the end of each window:</p>
+ *
+ * <p>1.If the average latency is inflated (>{@value LATENCY_TOLERANCE} times of baseline), and the throughput is not
+ * improved, the limit decreases multiplicatively (CPU/IO contention, e.g. too many concurrent decodes on weak device).</p>
+ *
+ * <p>2.Else if the engine was saturated (all slots busy) in the window, the limit increases by one (e.g. fast network
+ * with CDN, more connections bring more throughput).</p>
+ *
+ * <p>The limit is always in [minLimit, maxLimit].</p>
+ *
+ * @author S.Violet
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private static final int WINDOW_MIN_SAMPLES = 4;
+    private static final long WINDOW_MIN_MILLIS = 1000L;
+    private static final double LATENCY_TOLERANCE = 2.0d;
+    private static final double THROUGHPUT_GAIN = 1.05d;
+    private static final double DECREASE_FACTOR = 0.75d;
+    private static final double BASELINE_DRIFT = 0.05d;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private volatile int limit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    //window, guarded by lock
+    private long windowStartTime = -1;
+    private int windowSamples = 0;
+    private long windowLatencySum = 0;
+    private long windowAmountSum = 0;
+    private boolean windowSaturated = false;
+
+    //history, guarded by lock
+    private double baselineLatency = -1;
+    private double lastThroughput = -1;
+    private double lastLatency = -1;
+
+    AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+        if (minLimit < 1) {
+            minLimit = 1;
+        }
+        if (maxLimit < minLimit) {
+            maxLimit = minLimit;
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        //start from the middle
+        this.limit = (minLimit + maxLimit) >> 1;
+    }
+
+    /**
+     * @return current concurrency limit
+     */
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * record a completion
+     * @param currentTime current time (ms)
+     * @param latency time elapse of the task (ms)
+     * @param amount work done by the task (bytes or count), <= 0 to skip
+     * @param saturated true if all slots were busy while the task was executing
+     * @return true if the limit has been changed
+     */
+    boolean onComplete(long currentTime, long latency, long amount, boolean saturated) {
+        if (minLimit >= maxLimit || amount <= 0) {
+            return false;
+        }
+        try {
+            lock.lock();
+            if (windowStartTime < 0) {
+                windowStartTime = currentTime - latency;
+            }
+            windowSamples++;
+            windowLatencySum += latency;
+            windowAmountSum += amount;
+            windowSaturated |= saturated;
+
+            long elapse = currentTime - windowStartTime;
+            if (windowSamples < Math.max(WINDOW_MIN_SAMPLES, limit) || elapse < WINDOW_MIN_MILLIS) {
+                return false;
+            }
+            return adjust(elapse);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean adjust(long elapse) {
+        double throughput = (double) windowAmountSum * 1000d / (double) elapse;
+        double latency = (double) windowLatencySum / (double) windowSamples;
+        boolean saturated = windowSaturated;
+
+        //baseline follows the minimum latency, and drifts up slowly to adapt to the environment
+        if (baselineLatency < 0 || latency < baselineLatency) {
+            baselineLatency = latency;
+        } else {
+            baselineLatency += (latency - baselineLatency) * BASELINE_DRIFT;
+        }
+
+        int previous = limit;
+        int next = previous;
+        if (latency > baselineLatency * LATENCY_TOLERANCE &&
+                (lastThroughput < 0 || throughput < lastThroughput * THROUGHPUT_GAIN)) {
+            //latency inflated without throughput gain: multiplicative decrease
+            next = Math.max(minLimit, Math.min(previous - 1, (int) (previous * DECREASE_FACTOR)));
+        } else if (saturated) {
+            //no congestion signal and all slots busy: additive increase
+            next = Math.min(maxLimit, previous + 1);
+        }
+
+        limit = next;
+        lastThroughput = throughput;
+        lastLatency = latency;
+
+        //reset window
+        windowStartTime = -1;
+        windowSamples = 0;
+        windowLatencySum = 0;
+        windowAmountSum = 0;
+        windowSaturated = false;
+
+        return next != previous;
+    }
+
+    @Override
+    public String toString() {
+        return "limit:" + limit + " [" + minLimit + "," + maxLimit + "], throughput:" + (long) lastThroughput +
+                "/s, latency:" + (long) lastLatency + "ms, baseline:" + (long) baselineLatency + "ms";
+    }
+
+}
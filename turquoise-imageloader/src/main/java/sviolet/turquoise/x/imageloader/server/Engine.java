@@ -19,12 +19,18 @@
 
 package sviolet.turquoise.x.imageloader.server;
 
+import android.os.SystemClock;
+
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import sviolet.thistle.util.concurrent.ThreadPoolExecutorUtils;
+import sviolet.turquoise.x.common.tlogger.TLogger;
 import sviolet.turquoise.x.imageloader.ComponentManager;
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.handler.DecodeHandler;
 import sviolet.turquoise.x.imageloader.handler.NetworkLoadHandler;
 import sviolet.turquoise.x.imageloader.node.Node;
@@ -46,6 +52,8 @@ public abstract class Engine implements ComponentManager.Component, Server {
 
     private AtomicInteger taskCount = new AtomicInteger(0);
     private List<Task> cache;//single Thread to operate the cache!
+    private Map<String, Task> candidates = new HashMap<>();//priority schedule mode, single Thread to operate the candidates!
+    private volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
 
     /***************************************************************************
      * abstract
@@ -64,6 +72,21 @@ public abstract class Engine implements ComponentManager.Component, Server {
 
     protected abstract int getMaxThread();
 
+    /**
+     * @return min thread num, the concurrency is adaptive in [min, max] if min < max, see {@link AdaptiveConcurrencyLimiter}
+     */
+    protected int getMinThread(){
+        return getMaxThread();
+    }
+
+    /**
+     * @return work done by the task (bytes or count), used to measure throughput, <= 0 if the task should not be
+     * sampled (e.g. merged into another task)
+     */
+    protected long getTaskAmount(Task task){
+        return 1;
+    }
+
     /***************************************************************************
      * public
      */
@@ -77,6 +100,13 @@ public abstract class Engine implements ComponentManager.Component, Server {
         manager.getNodeManager().response(task);
     }
 
+    /**
+     * deliver preview of loading image (progressive display) to node, the task is still running
+     */
+    protected void responsePreview(Task task, ImageResource preview){
+        manager.getNodeManager().responsePreview(task, preview);
+    }
+
     /**
      * notify engine to work
      */
@@ -87,7 +117,7 @@ public abstract class Engine implements ComponentManager.Component, Server {
     private Runnable dispatchRunnable = new Runnable() {
         @Override
         public void run() {
-            while (taskCount.get() < getMaxThread()){
+            while (taskCount.get() < getConcurrencyLimit()){
                 Task task = getTask();
                 if (task != null){
                     executeTask(task);
@@ -102,6 +132,9 @@ public abstract class Engine implements ComponentManager.Component, Server {
      * single Thread to operate the method!
      */
     private Task getTask(){
+        if (manager.getServerSettings().isPriorityScheduleEnabled()){
+            return getTaskByPriority();
+        }
         if (cache == null || cache.size() <= 0){
             cache = manager.getNodeManager().pullTasks(getServerType());
 //            manager.getLogger().d("[Engine:" + getServerType() + "]get task from nodeManager");
@@ -114,11 +147,38 @@ public abstract class Engine implements ComponentManager.Component, Server {
         return null;
     }
 
+    /**
+     * <p>priority schedule mode, single Thread to operate the method!</p>
+     *
+     * <p>Each node provides a candidate (the highest priority task of node), the candidate with highest
+     * priority across all nodes will be executed. The priority is evaluated at the moment.</p>
+     */
+    private Task getTaskByPriority(){
+        manager.getNodeManager().pullTasks(getServerType(), candidates);
+        Map.Entry<String, Task> selected = null;
+        int priority = -1;
+        for (Map.Entry<String, Task> entry : candidates.entrySet()){
+            int p = entry.getValue().getPriority();
+            if (p > priority){
+                selected = entry;
+                priority = p;
+            }
+        }
+        if (selected == null){
+            return null;
+        }
+        Task task = selected.getValue();
+        candidates.remove(selected.getKey());
+        return task;
+    }
+
     private void executeTask(final Task task) {
         taskCount.incrementAndGet();
         taskThreadPool.execute(new Runnable() {
             @Override
             public void run() {
+                final long startTime = SystemClock.uptimeMillis();
+                final boolean saturated = taskCount.get() >= getConcurrencyLimit();
                 try {
                     if (!preCheck(task)) {
                         getComponentManager().getLogger().e("[Engine]This task can not be executed in this server, serverType:" + getServerType() + ", task:" + task);
@@ -130,12 +190,57 @@ public abstract class Engine implements ComponentManager.Component, Server {
                     executeNewTask(task);
                 } finally {
                     taskCount.decrementAndGet();
+                    onTaskComplete(task, startTime, saturated);
                     ignite();
                 }
             }
         });
     }
 
+    /***************************************************************************
+     * adaptive concurrency
+     */
+
+    private int getConcurrencyLimit(){
+        AdaptiveConcurrencyLimiter limiter = getConcurrencyLimiter();
+        return limiter != null ? limiter.getLimit() : getMaxThread();
+    }
+
+    private void onTaskComplete(Task task, long startTime, boolean saturated){
+        AdaptiveConcurrencyLimiter limiter = getConcurrencyLimiter();
+        if (limiter == null){
+            return;
+        }
+        long currentTime = SystemClock.uptimeMillis();
+        if (limiter.onComplete(currentTime, currentTime - startTime, getTaskAmount(task), saturated)){
+            if (manager.getLogger().checkEnable(TLogger.DEBUG)) {
+                manager.getLogger().d("[Engine:" + getServerType() + "]concurrency adjusted, " + limiter);
+            }
+        }
+    }
+
+    /**
+     * @return null if the concurrency is not adaptive
+     */
+    private AdaptiveConcurrencyLimiter getConcurrencyLimiter(){
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter == null){
+            int minThread = getMinThread();
+            int maxThread = getMaxThread();
+            if (minThread >= maxThread){
+                return null;
+            }
+            synchronized (this){
+                limiter = concurrencyLimiter;
+                if (limiter == null){
+                    limiter = new AdaptiveConcurrencyLimiter(minThread, maxThread);
+                    concurrencyLimiter = limiter;
+                }
+            }
+        }
+        return limiter;
+    }
+
     /***************************************************************************
      * getter setter
      */
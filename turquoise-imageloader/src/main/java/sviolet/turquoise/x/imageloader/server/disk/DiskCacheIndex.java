@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.server.disk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Resident index of disk cache (key -> size/timestamp), used to answer disk cache misses without
+ * touching the file system.</p>
+ *
+ * <p>The index is persisted as a compact binary snapshot in the cache directory. The snapshot is stamped with the
+ * length and last modified time of the journal of DiskLruCache, it will be discarded (index rebuilt by scanning
+ * the directory) if the journal has been changed since the snapshot was written.</p>
+ *
+ * @author S.Violet
+ */
+class DiskCacheIndex {
+
+    private static final String SNAPSHOT_FILE_NAME = "tiloader-index.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE_NAME = "tiloader-index.snapshot.tmp";
+    private static final String JOURNAL_FILE_NAME = "journal";
+    //clean file of DiskLruCache: key.index
+    private static final String CLEAN_FILE_SUFFIX = ".0";
+
+    private static final int SNAPSHOT_MAGIC = 0x54494458;//TIDX
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+    private volatile boolean dirty = false;
+
+    /**
+     * load index from snapshot, or rebuild it by scanning the directory if the snapshot is missing or outdated
+     * @param directory disk cache directory
+     * @return true if loaded from snapshot
+     */
+    boolean warmup(File directory) {
+        Map<String, Entry> loaded = null;
+        try {
+            loaded = load(directory);
+        } catch (Exception ignored) {
+        }
+        boolean fromSnapshot = loaded != null;
+        if (!fromSnapshot) {
+            loaded = rebuild(directory);
+            dirty = true;
+        }
+        //merge, entries might be put while warming up
+        entries.putAll(loaded);
+        ready = true;
+        return fromSnapshot;
+    }
+
+    /**
+     * @return false if the key is definitely not cached, true if the key might be cached (or index not ready)
+     */
+    boolean mightContain(String key) {
+        return !ready || entries.containsKey(key);
+    }
+
+    void put(String key, File file) {
+        Entry previous = entries.put(key, new Entry(file.length(), file.lastModified()));
+        if (previous == null || previous.size != file.length()) {
+            dirty = true;
+        }
+    }
+
+    void remove(String key) {
+        if (entries.remove(key) != null) {
+            dirty = true;
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        dirty = true;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * persist the index to snapshot, skip if not changed
+     * @param directory disk cache directory
+     */
+    void save(File directory) throws IOException {
+        if (!ready || !dirty || directory == null) {
+            return;
+        }
+        dirty = false;
+        //stamp before copying entries, changes after stamping will outdate the snapshot
+        File journal = new File(directory, JOURNAL_FILE_NAME);
+        long journalLength = journal.length();
+        long journalLastModified = journal.lastModified();
+        List<Map.Entry<String, Entry>> copy = new ArrayList<>(entries.entrySet());
+
+        File tempFile = new File(directory, SNAPSHOT_TEMP_FILE_NAME);
+        DataOutputStream outputStream = null;
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            outputStream.writeInt(SNAPSHOT_MAGIC);
+            outputStream.writeInt(SNAPSHOT_VERSION);
+            outputStream.writeLong(journalLength);
+            outputStream.writeLong(journalLastModified);
+            outputStream.writeInt(copy.size());
+            for (Map.Entry<String, Entry> entry : copy) {
+                outputStream.writeUTF(entry.getKey());
+                outputStream.writeLong(entry.getValue().size);
+                outputStream.writeLong(entry.getValue().timestamp);
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        if (!tempFile.renameTo(new File(directory, SNAPSHOT_FILE_NAME))) {
+            dirty = true;
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("[DiskCacheIndex]rename snapshot failed, directory:" + directory);
+        }
+    }
+
+    private Map<String, Entry> load(File directory) throws IOException {
+        if (directory == null) {
+            return null;
+        }
+        File snapshot = new File(directory, SNAPSHOT_FILE_NAME);
+        if (!snapshot.exists()) {
+            return null;
+        }
+        File journal = new File(directory, JOURNAL_FILE_NAME);
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+            if (inputStream.readInt() != SNAPSHOT_MAGIC || inputStream.readInt() != SNAPSHOT_VERSION) {
+                return null;
+            }
+            //outdated
+            if (inputStream.readLong() != journal.length() || inputStream.readLong() != journal.lastModified()) {
+                return null;
+            }
+            int count = inputStream.readInt();
+            Map<String, Entry> loaded = new HashMap<>(Math.max(count * 4 / 3 + 1, 16));
+            for (int i = 0 ; i < count ; i++) {
+                String key = inputStream.readUTF();
+                long size = inputStream.readLong();
+                long timestamp = inputStream.readLong();
+                loaded.put(key, new Entry(size, timestamp));
+            }
+            return loaded;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private Map<String, Entry> rebuild(File directory) {
+        Map<String, Entry> rebuilt = new HashMap<>();
+        File[] files = directory != null ? directory.listFiles() : null;
+        if (files == null) {
+            return rebuilt;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(CLEAN_FILE_SUFFIX) && file.isFile()) {
+                rebuilt.put(name.substring(0, name.length() - CLEAN_FILE_SUFFIX.length()), new Entry(file.length(), file.lastModified()));
+            }
+        }
+        return rebuilt;
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private final long timestamp;
+
+        private Entry(long size, long timestamp) {
+            this.size = size;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+}
@@ -22,6 +22,7 @@ package sviolet.turquoise.x.imageloader.server.disk;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -35,7 +36,9 @@ import sviolet.turquoise.x.imageloader.server.Server;
 /**
  * <p>disk cache</p>
  *
- * <p>disk cache will close if server is idle for a long time</p>
+ * <p>disk cache will close if server is idle for a long time, except in index resident mode
+ * (see {@link sviolet.turquoise.x.imageloader.entity.ServerSettings.Builder#setDiskCacheIndexResident(boolean)}),
+ * the disk cache will keep open, and the resident index will be persisted while idle</p>
  *
  * Created by S.Violet on 2016/3/22.
  */
@@ -57,6 +60,11 @@ public class DiskCacheModule implements ComponentManager.Component, Server {
     private ExecutorService dispatchThreadPool;
     private ReentrantLock statusLock = new ReentrantLock();
 
+    //resident index, null if index resident mode disabled
+    private DiskCacheIndex index;
+    private AtomicBoolean indexWarming = new AtomicBoolean(false);
+    private ReentrantLock indexSaveLock = new ReentrantLock();
+
     private boolean initialized = false;
 
     @Override
@@ -64,6 +72,11 @@ public class DiskCacheModule implements ComponentManager.Component, Server {
         this.manager = manager;
         this.dispatchThreadPool = ThreadPoolExecutorUtils.createLazy(60L, "sva-til-dcm-dispatch-%d");
         status = Status.PAUSE;
+        if (manager.getServerSettings().isDiskCacheIndexResident()) {
+            index = new DiskCacheIndex();
+            //open disk cache and load index asynchronously
+            warmupIndex();
+        }
     }
 
     private void initialize(){
@@ -100,6 +113,10 @@ public class DiskCacheModule implements ComponentManager.Component, Server {
                         diskLruCache = DiskLruCache.open(manager.getServerSettings().getDiskCachePath(), appVersion, 1, manager.getServerSettings().getDiskCacheSize());
                         status = Status.READY;
                         manager.getLogger().d("[DiskCacheServer]ready");
+                        //warmup failed before (e.g. disk cache disabled)
+                        if (index != null && !index.isReady()) {
+                            warmupIndex();
+                        }
                         return true;
                     } catch (IOException e) {
                         status = Status.DISABLE;
@@ -137,6 +154,11 @@ public class DiskCacheModule implements ComponentManager.Component, Server {
      * try to close disk cache, release resource
      */
     private void closeCache(){
+        if (index != null){
+            //index resident mode, keep disk cache open, persist index instead
+            saveIndex();
+            return;
+        }
         DiskLruCache diskLruCacheToClose = null;
         try{
             statusLock.lock();
@@ -166,7 +188,15 @@ public class DiskCacheModule implements ComponentManager.Component, Server {
     protected File get(Task task){
         if (openCache()){
             try{
-                return diskLruCache.getFile(task.getResourceKey(), 0);
+                File file = diskLruCache.getFile(task.getResourceKey(), 0);
+                if (index != null) {
+                    if (file != null && file.exists()) {
+                        index.put(task.getResourceKey(), file);
+                    } else {
+                        index.remove(task.getResourceKey());
+                    }
+                }
+                return file;
             } catch (IOException e) {
                 manager.getServerSettings().getExceptionHandler().onDiskCacheReadException(manager.getApplicationContextImage(), manager.getContextImage(), task.getTaskInfo(), e, manager.getLogger());
             }
@@ -185,6 +215,14 @@ public class DiskCacheModule implements ComponentManager.Component, Server {
         return null;
     }
 
+    /**
+     * @param task task
+     * @return false if the image is definitely not cached (answered by resident index), no need to open disk cache
+     */
+    protected boolean mightContain(Task task){
+        return index == null || index.mightContain(task.getResourceKey());
+    }
+
     /**
      * release holding of disk cache, might have close disk cache
      */
@@ -225,6 +263,57 @@ public class DiskCacheModule implements ComponentManager.Component, Server {
 
     public void wipe(File path) throws IOException {
         DiskLruCache.deleteContents(path);
+        if (index != null && path != null && path.getAbsoluteFile().equals(manager.getServerSettings().getDiskCachePath().getAbsoluteFile())) {
+            index.clear();
+        }
+    }
+
+    /**
+     * open disk cache (journal replaying) and load index (snapshot or directory scanning) asynchronously
+     */
+    private void warmupIndex(){
+        if (!indexWarming.compareAndSet(false, true)) {
+            return;
+        }
+        dispatchThreadPool.execute(warmupRunnable);
+    }
+
+    private Runnable warmupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                if (!openCache()) {
+                    return;
+                }
+                try {
+                    long startTime = System.currentTimeMillis();
+                    boolean fromSnapshot = index.warmup(manager.getServerSettings().getDiskCachePath());
+                    manager.getLogger().i("[DiskCacheServer]index warmed up, fromSnapshot:" + fromSnapshot + ", size:" + index.size() + ", elapse:" + (System.currentTimeMillis() - startTime) + "ms");
+                } finally {
+                    release();
+                }
+            } catch (Exception e) {
+                manager.getServerSettings().getExceptionHandler().onDiskCacheCommonException(manager.getApplicationContextImage(), manager.getContextImage(), e, manager.getLogger());
+            } finally {
+                indexWarming.set(false);
+            }
+        }
+    };
+
+    /**
+     * persist resident index to snapshot, skip if saving by another thread
+     */
+    private void saveIndex(){
+        if (!indexSaveLock.tryLock()) {
+            return;
+        }
+        try {
+            index.save(manager.getServerSettings().getDiskCachePath());
+        } catch (IOException e) {
+            manager.getServerSettings().getExceptionHandler().onDiskCacheCommonException(manager.getApplicationContextImage(), manager.getContextImage(), e, manager.getLogger());
+        } finally {
+            indexSaveLock.unlock();
+        }
     }
 
     protected ComponentManager getComponentManager(){
@@ -19,14 +19,21 @@
 
 package sviolet.turquoise.x.imageloader.server.disk;
 
+import android.os.SystemClock;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import sviolet.thistle.model.cache.DiskLruCache;
+import sviolet.turquoise.x.imageloader.ComponentManager;
 import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.handler.DecodeHandler;
+import sviolet.turquoise.x.imageloader.handler.MetricsListener;
 import sviolet.turquoise.x.imageloader.node.Task;
 
 /**
@@ -47,16 +54,22 @@ public class DiskCacheServer extends DiskCacheModule {
      * @return ImageResource, might be null
      */
     public ImageResource read(Task task, DecodeHandler decodeHandler) {
+        //answered by resident index
+        if (!mightContain(task)) {
+            notifyLookup(task, false);
+            return null;
+        }
         //fetch cache file
         try {
             File targetFile = get(task);
             if (targetFile == null || !targetFile.exists()|| targetFile.isDirectory()) {
+                notifyLookup(task, false);
                 return null;
             }
-            //decode
+            notifyLookup(task, true);
+            //decode, failure is reported as DECODE_FAILED by ComponentManager
             try {
-                return decodeHandler.decode(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(),
-                        task, DecodeHandler.DecodeType.IMAGE_FILE, targetFile, getComponentManager().getLogger());
+                return getComponentManager().decode(decodeHandler, task, DecodeHandler.DecodeType.IMAGE_FILE, targetFile);
             } catch (Throwable t) {
                 getComponentManager().getServerSettings().getExceptionHandler().onDecodeException(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), task.getTaskInfo(), t, getComponentManager().getLogger());
                 return null;
@@ -67,6 +80,35 @@ public class DiskCacheServer extends DiskCacheModule {
         }
     }
 
+    /**
+     * check if the Image has been cached in disk, without decoding
+     * @param task task
+     * @return true if the cache file exists
+     */
+    public boolean contains(Task task) {
+        //answered by resident index
+        if (!mightContain(task)) {
+            notifyLookup(task, false);
+            return false;
+        }
+        try {
+            File targetFile = get(task);
+            boolean cached = targetFile != null && targetFile.exists() && !targetFile.isDirectory();
+            notifyLookup(task, cached);
+            return cached;
+        } finally {
+            //release
+            release();
+        }
+    }
+
+    /**
+     * DISK_HIT/DISK_MISS are only notified by disk cache lookups
+     */
+    private void notifyLookup(Task task, boolean hit) {
+        getComponentManager().notifyMetrics(hit ? MetricsListener.Event.DISK_HIT : MetricsListener.Event.DISK_MISS, task.getTaskInfo(), MetricsListener.UNKNOWN);
+    }
+
     /************************************************************************
      * write
      */
@@ -77,8 +119,20 @@ public class DiskCacheServer extends DiskCacheModule {
      * @param writeProcess write logic
      */
     public WriteResult startWrite(Task task, WriteProcess writeProcess){
+        return startWrite(task, 0, writeProcess);
+    }
+
+    /**
+     * Start write process, data written by OutputStream will be kept in memory simultaneously,
+     * if data length is not greater than memoryBufferLimit, see {@link WriteResult#getBytes()}
+     * @param task task
+     * @param memoryBufferLimit data length limit of memory buffer, 0 means disabled
+     * @param writeProcess write logic
+     */
+    public WriteResult startWrite(Task task, int memoryBufferLimit, WriteProcess writeProcess){
         WriteResult result = null;
         DiskLruCache.Editor editor = null;
+        WriterProvider writerProvider = null;
 
         try {
             editor = edit(task);
@@ -86,7 +140,8 @@ public class DiskCacheServer extends DiskCacheModule {
                 //if cache file fetch failed, write data to memory buffer, skip write to disk
                 throw new Exception("[TILoader]diskLruCache.edit(cacheKey) return null, write disk cache failed");
             }
-            result = writeProcess.onWrite(task, new WriterProvider(editor));
+            writerProvider = new WriterProvider(editor, memoryBufferLimit, getComponentManager(), task.getTaskInfo());
+            result = writeProcess.onWrite(task, writerProvider);
             if (result == null || result.getType() != ResultType.SUCCEED){
                 abortEditor(editor);
             } else {
@@ -115,6 +170,9 @@ public class DiskCacheServer extends DiskCacheModule {
                             new Exception("[TILoader]Resources have been written to disk cache, but we can't find target File!!!"), getComponentManager().getLogger());
                 } else {
                     result.setTargetFile(targetFile);
+                    if (writerProvider != null) {
+                        result.setBytes(writerProvider.getMemoryBuffer());
+                    }
                 }
             } finally {
                 release();
@@ -150,6 +208,7 @@ public class DiskCacheServer extends DiskCacheModule {
 
         private ResultType type;
         private File targetFile;
+        private byte[] bytes;
 
         private WriteResult(){
         }
@@ -180,6 +239,13 @@ public class DiskCacheServer extends DiskCacheModule {
             return targetFile;
         }
 
+        /**
+         * @return data written to disk cache, only if it's kept in memory (see {@link DiskCacheServer#startWrite(Task, int, WriteProcess)}), nullable
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
         private void setType(ResultType type) {
             this.type = type;
         }
@@ -187,6 +253,10 @@ public class DiskCacheServer extends DiskCacheModule {
         private void setTargetFile(File targetFile) {
             this.targetFile = targetFile;
         }
+
+        private void setBytes(byte[] bytes) {
+            this.bytes = bytes;
+        }
     }
 
     /**
@@ -195,25 +265,210 @@ public class DiskCacheServer extends DiskCacheModule {
     public static class WriterProvider {
 
         private DiskLruCache.Editor editor;
+        private int memoryBufferLimit;
+        private MemoryTeeOutputStream memoryTee;
+
+        private ComponentManager manager;
+        private Task.Info taskInfo;
+        private final AtomicBoolean firstByteNotified = new AtomicBoolean(false);
+
+        private PreviewListener previewListener;
+        private long previewInterval;
+        private int previewBufferLimit;
+        private long nextPreviewTime;
 
-        private WriterProvider(DiskLruCache.Editor editor) {
+        private WriterProvider(DiskLruCache.Editor editor, int memoryBufferLimit, ComponentManager manager, Task.Info taskInfo) {
             this.editor = editor;
+            this.memoryBufferLimit = memoryBufferLimit;
+            this.manager = manager;
+            this.taskInfo = taskInfo;
+        }
+
+        /**
+         * Enable progressive display, the data (prefix) written by OutputStream will be kept in memory,
+         * and callback to listener periodically while {@link #notifyProgress(OutputStream)} invoked.
+         * Should be set before {@link #newOutputStream()}.
+         * @param interval interval of preview (ms)
+         * @param bufferLimit data length limit of preview buffer
+         * @param previewListener listener
+         */
+        public void setPreviewListener(long interval, int bufferLimit, PreviewListener previewListener) {
+            this.previewInterval = interval;
+            this.previewBufferLimit = bufferLimit;
+            this.previewListener = interval > 0 && bufferLimit > 0 ? previewListener : null;
         }
 
         /**
          * Open OutputStream to target file
          */
         public OutputStream newOutputStream() throws IOException {
-            return editor.newOutputStream(0);
+            OutputStream outputStream = editor.newOutputStream(0);
+            int limit = Math.max(memoryBufferLimit, previewListener != null ? previewBufferLimit : 0);
+            if (limit <= 0) {
+                return outputStream;
+            }
+            //target file is truncated, only the last stream is valid
+            memoryTee = new MemoryTeeOutputStream(outputStream, limit, previewListener != null);
+            nextPreviewTime = SystemClock.uptimeMillis() + previewInterval;
+            return memoryTee;
         }
 
         /**
          * Open RandomAccessFile to target file
          */
         public RandomAccessFile newRandomAccessFileForWrite() throws IOException {
+            //data written by RandomAccessFile can't be kept in memory
+            memoryBufferLimit = 0;
+            memoryTee = null;
+            previewListener = null;
             return editor.newRandomAccessFileForWrite(0);
         }
 
+        /**
+         * Notify the data has been written into OutputStream/RandomAccessFile (by network loading thread), used
+         * for metrics (first byte), and the data (prefix) will be callback to {@link PreviewListener} if progressive
+         * display is enabled and it's time to preview (OutputStream only).
+         * @param outputStream the stream wraps the OutputStream from {@link #newOutputStream()} (e.g. BufferedOutputStream),
+         *                     it will be flushed before preview, null if writing by RandomAccessFile
+         */
+        public void notifyProgress(OutputStream outputStream) throws IOException {
+            if (!firstByteNotified.get() && firstByteNotified.compareAndSet(false, true)) {
+                manager.notifyMetrics(MetricsListener.Event.NETWORK_FIRST_BYTE, taskInfo, taskInfo.getLoadProgress().loaded());
+            }
+            if (previewListener == null || memoryTee == null) {
+                return;
+            }
+            long currentTime = SystemClock.uptimeMillis();
+            if (currentTime < nextPreviewTime) {
+                return;
+            }
+            nextPreviewTime = currentTime + previewInterval;
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+            memoryTee.preview(previewListener);
+        }
+
+        /**
+         * @return data in memory buffer, null if disabled or out of limit
+         */
+        private byte[] getMemoryBuffer() {
+            if (memoryBufferLimit <= 0 || memoryTee == null) {
+                return null;
+            }
+            return memoryTee.toByteArray(memoryBufferLimit);
+        }
+
+    }
+
+    /**
+     * Write data to target stream and memory buffer simultaneously,
+     * memory buffer will be discarded if data length is out of limit (or keep the prefix for previewing)
+     */
+    private static class MemoryTeeOutputStream extends FilterOutputStream {
+
+        private MemoryBuffer buffer;
+        private final int limit;
+        private final boolean keepPrefix;
+        private boolean overflow = false;
+        private int previewedLength = 0;
+
+        private MemoryTeeOutputStream(OutputStream outputStream, int limit, boolean keepPrefix) {
+            super(outputStream);
+            this.limit = limit;
+            this.keepPrefix = keepPrefix;
+            this.buffer = new MemoryBuffer(Math.min(limit, 32 * 1024));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (buffer == null || overflow) {
+                return;
+            }
+            if (buffer.size() + 1 > limit) {
+                onOverflow();
+            } else {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (buffer == null || overflow) {
+                return;
+            }
+            int remain = limit - buffer.size();
+            if (len > remain) {
+                onOverflow();
+                if (buffer != null && remain > 0) {
+                    buffer.write(b, off, remain);
+                }
+            } else {
+                buffer.write(b, off, len);
+            }
+        }
+
+        private void onOverflow() {
+            overflow = true;
+            if (!keepPrefix) {
+                buffer = null;
+            }
+        }
+
+        /**
+         * callback prefix to listener if there is new data
+         */
+        private void preview(PreviewListener listener) {
+            if (buffer == null || buffer.size() <= previewedLength) {
+                return;
+            }
+            previewedLength = buffer.size();
+            listener.onPreview(buffer.getBuffer(), buffer.size());
+        }
+
+        /**
+         * @return all the data written, null if out of limit
+         */
+        private byte[] toByteArray(int limit) {
+            if (buffer == null || overflow || buffer.size() <= 0 || buffer.size() > limit) {
+                return null;
+            }
+            return buffer.toByteArray();
+        }
+
+    }
+
+    /**
+     * expose inner buffer to avoid copying while previewing
+     */
+    private static class MemoryBuffer extends ByteArrayOutputStream {
+
+        private MemoryBuffer(int size) {
+            super(size);
+        }
+
+        private byte[] getBuffer() {
+            return buf;
+        }
+
+    }
+
+    /**
+     * Listener of progressive display, see {@link WriterProvider#setPreviewListener(long, int, PreviewListener)}
+     */
+    public interface PreviewListener {
+
+        /**
+         * callback in network loading thread, do not block it (the time would be counted as loading time by
+         * low network speed checking), decode asynchronously. The valid part [0, length) of data will not be modified
+         * afterwards (a larger array is used when data grows), so it can be read by other threads without copying.
+         * @param data data (prefix) loaded, the valid part is [0, length), read only
+         * @param length valid length of data
+         */
+        void onPreview(byte[] data, int length);
+
     }
 
     /**
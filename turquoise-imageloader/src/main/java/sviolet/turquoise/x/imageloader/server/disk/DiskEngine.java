@@ -22,6 +22,7 @@ package sviolet.turquoise.x.imageloader.server.disk;
 import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.node.Task;
 import sviolet.turquoise.x.imageloader.server.Engine;
+import sviolet.turquoise.x.imageloader.stub.Stub;
 
 /**
  * <p>Disk Load Engine</p>
@@ -37,6 +38,10 @@ public class DiskEngine extends Engine {
 
     @Override
     protected void executeNewTask(Task task) {
+        if (task.getType() == Stub.Type.PRELOAD_DISK){
+            preloadToInnerDiskCache(task);
+            return;
+        }
         switch (task.getParams().getSourceType()) {
             case LOCAL_DISK:
                 loadFromLocalDisk(task);
@@ -148,11 +153,41 @@ public class DiskEngine extends Engine {
         response(task);
     }
 
+    /**
+     * Preload into disk cache of TILoader, no decoding
+     */
+    private void preloadToInnerDiskCache(Task task) {
+        switch (task.getParams().getSourceType()) {
+            case HTTP_GET:
+                break;
+            default:
+                //local resource or generated resource, no need to preload
+                task.setState(Task.State.SUCCEED);
+                response(task);
+                return;
+        }
+        boolean cached;
+        try{
+            cached = getComponentManager().getDiskCacheServer().contains(task);
+        } catch (Exception e){
+            getComponentManager().getServerSettings().getExceptionHandler().onDiskCacheCommonException(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), e, getComponentManager().getLogger());
+            cached = false;
+        }
+        //to network engine if not cached
+        task.setState(cached ? Task.State.SUCCEED : Task.State.FAILED);
+        response(task);
+    }
+
     @Override
     protected int getMaxThread() {
         return getComponentManager().getServerSettings().getDiskLoadMaxThread();
     }
 
+    @Override
+    protected int getMinThread() {
+        return getComponentManager().getServerSettings().getDiskLoadMinThread();
+    }
+
     @Override
     public Type getServerType() {
         return Type.DISK_ENGINE;
@@ -82,8 +82,7 @@ public class DiskLoadServer implements ComponentManager.Component, Server {
         }
         //decode
         try {
-            ImageResource imageResource = decodeHandler.decode(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(),
-                    task, DecodeHandler.DecodeType.IMAGE_FILE, targetFile, getComponentManager().getLogger());
+            ImageResource imageResource = getComponentManager().decode(decodeHandler, task, DecodeHandler.DecodeType.IMAGE_FILE, targetFile);
             if (imageResource == null) {
                 getComponentManager().getServerSettings().getExceptionHandler().onDecodeException(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), task.getTaskInfo(),
                         new Exception("[TILoader]Decoding failed, return null or invalid ImageResource"), getComponentManager().getLogger());
@@ -122,7 +121,7 @@ public class DiskLoadServer implements ComponentManager.Component, Server {
         }
         //decode
         try {
-            ImageResource imageResource = decodeHandler.decode(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), task, DecodeHandler.DecodeType.IMAGE_ASSETS, task.getUrl(), getComponentManager().getLogger());
+            ImageResource imageResource = getComponentManager().decode(decodeHandler, task, DecodeHandler.DecodeType.IMAGE_ASSETS, task.getUrl());
             if (imageResource == null) {
                 getComponentManager().getServerSettings().getExceptionHandler().onDecodeException(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), task.getTaskInfo(),
                         new Exception("[TILoader]Decoding failed, return null or invalid ImageResource"), getComponentManager().getLogger());
@@ -153,7 +152,7 @@ public class DiskLoadServer implements ComponentManager.Component, Server {
         }
         //decode
         try {
-            ImageResource imageResource = decodeHandler.decode(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), task, DecodeHandler.DecodeType.IMAGE_RES, resId, getComponentManager().getLogger());
+            ImageResource imageResource = getComponentManager().decode(decodeHandler, task, DecodeHandler.DecodeType.IMAGE_RES, resId);
             if (imageResource == null) {
                 getComponentManager().getServerSettings().getExceptionHandler().onDecodeException(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), task.getTaskInfo(),
                         new Exception("[TILoader]Decoding failed, return null or invalid ImageResource"), getComponentManager().getLogger());
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.server.mem;
+
+import android.graphics.Bitmap;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
+
+/**
+ * <p>Active resources of TILoader, the ImageResources which are displaying by views.</p>
+ *
+ * <p>Each displaying view (LoadStub) holds a reference of ImageResource (reference counting by task key).
+ * The active ImageResource will not be recycled (or put into bitmap pool) when it's evicted from memory cache,
+ * and it can still be got from {@link MemoryCacheServer} by key, so that repeated binds hit memory.
+ * When the reference count drops to zero, the evicted ImageResource will be returned to memory cache.</p>
+ *
+ * <p>ImageResources are held by {@link WeakReference}, if the views are collected without releasing,
+ * the ImageResource will be collected by GC.</p>
+ *
+ * <p>Deciding whether an evicted bitmap goes into {@link BitmapPool} and taking the display reference are
+ * done under the same lock, so a bitmap in pool is never displayed: if a view acquires an ImageResource
+ * whose bitmap has been put into pool, the bitmap is taken back from pool, or the acquisition fails if the
+ * bitmap has already been taken for reusing.</p>
+ *
+ * <p>Previews of progressive display are counted by identity. A preview is disposed (put into pool or recycled)
+ * when it has been superseded (by a newer preview or the loading finished) and no view is displaying it.</p>
+ *
+ * @author S.Violet
+ */
+class ActiveResources {
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    //ImageResources whose bitmap has been put into pool
+    private final Map<ImageResource, Boolean> pooled = new WeakHashMap<>();
+    //previews of progressive display, which can be displayed
+    private final Map<ImageResource, PreviewEntry> previews = new WeakHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * add reference of ImageResource, must be invoked before the ImageResource is drawn
+     * @param key task key
+     * @param resource displaying ImageResource
+     * @param bitmapPool bitmap pool, nullable
+     * @return false if the bitmap of ImageResource has been taken from pool for reusing, it can't be displayed
+     */
+    boolean acquire(String key, ImageResource resource, BitmapPool bitmapPool) {
+        if (key == null || resource == null){
+            return false;
+        }
+        try {
+            lock.lock();
+            boolean reclaimed = false;
+            if (pooled.remove(resource) != null){
+                //evicted and put into pool, take it back if not reused yet
+                if (bitmapPool == null || !bitmapPool.remove((Bitmap) resource.getResource())){
+                    return false;
+                }
+                reclaimed = true;
+            }
+            Entry entry = entries.get(key);
+            if (entry == null || entry.get() != resource){
+                //new resource of key, previous entry will be replaced
+                entry = new Entry(resource);
+                entries.put(key, entry);
+            }
+            entry.refCount++;
+            if (reclaimed){
+                //no longer in memory cache, return to memory cache when released
+                entry.evicted = true;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove reference of ImageResource
+     * @param key task key
+     * @param resource ImageResource which is no longer displaying
+     * @return the ImageResource if the reference count drops to zero and it has been evicted from memory cache,
+     * it should be returned to memory cache. otherwise return null.
+     */
+    ImageResource release(String key, ImageResource resource) {
+        if (key == null || resource == null){
+            return null;
+        }
+        try {
+            lock.lock();
+            Entry entry = entries.get(key);
+            if (entry == null || entry.get() != resource){
+                return null;
+            }
+            if (--entry.refCount > 0){
+                return null;
+            }
+            entries.remove(key);
+            return entry.evicted ? resource : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * get active ImageResource by key
+     * @param key task key
+     * @return ImageResource, null if not active
+     */
+    ImageResource get(String key) {
+        if (key == null){
+            return null;
+        }
+        try {
+            lock.lock();
+            Entry entry = entries.get(key);
+            if (entry == null){
+                return null;
+            }
+            ImageResource resource = entry.get();
+            if (resource == null){
+                //collected
+                entries.remove(key);
+            }
+            return resource;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * invoke when the ImageResource is evicted from memory cache
+     * @param key task key
+     * @param resource evicted ImageResource
+     * @return true if the ImageResource is active, it should not be recycled
+     */
+    boolean onEvicted(String key, ImageResource resource) {
+        if (key == null || resource == null){
+            return false;
+        }
+        try {
+            lock.lock();
+            Entry entry = entries.get(key);
+            if (entry == null || entry.get() != resource){
+                return false;
+            }
+            entry.evicted = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * invoke when the ImageResource is evicted from memory cache, put its bitmap into pool if it's not active
+     * @param key task key
+     * @param resource evicted ImageResource
+     * @param bitmapPool bitmap pool, nullable
+     * @return true if the ImageResource is active or its bitmap has been put into pool, it should not be recycled
+     */
+    boolean onEvicted(String key, ImageResource resource, BitmapPool bitmapPool) {
+        if (key == null || resource == null){
+            return false;
+        }
+        try {
+            lock.lock();
+            if (onEvicted(key, resource)){
+                return true;
+            }
+            if (bitmapPool != null && resource.getType() == ImageResource.Type.BITMAP &&
+                    resource.getResource() instanceof Bitmap && bitmapPool.put((Bitmap) resource.getResource())){
+                pooled.put(resource, Boolean.TRUE);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * register a preview of progressive display before delivering it to views
+     * @param preview preview
+     */
+    void registerPreview(ImageResource preview) {
+        if (preview == null){
+            return;
+        }
+        try {
+            lock.lock();
+            previews.put(preview, new PreviewEntry());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * add reference of preview, must be invoked before the preview is drawn
+     * @param preview displaying preview
+     * @return false if the preview has been disposed, it can't be displayed
+     */
+    boolean acquirePreview(ImageResource preview) {
+        if (preview == null){
+            return false;
+        }
+        try {
+            lock.lock();
+            PreviewEntry entry = previews.get(preview);
+            if (entry == null){
+                return false;
+            }
+            entry.refCount++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove reference of preview, when it's no longer displayed by view
+     * @param preview preview
+     * @return true if the preview should be disposed now
+     */
+    boolean releasePreview(ImageResource preview) {
+        if (preview == null){
+            return false;
+        }
+        try {
+            lock.lock();
+            PreviewEntry entry = previews.get(preview);
+            if (entry == null || --entry.refCount > 0 || !entry.superseded){
+                return false;
+            }
+            previews.remove(preview);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * mark the preview superseded (newer preview decoded, or loading finished), no more views will acquire it
+     * @param preview preview
+     * @return true if the preview should be disposed now (no view displaying it)
+     */
+    boolean supersedePreview(ImageResource preview) {
+        if (preview == null){
+            return false;
+        }
+        try {
+            lock.lock();
+            PreviewEntry entry = previews.get(preview);
+            if (entry == null){
+                return false;
+            }
+            entry.superseded = true;
+            if (entry.refCount > 0){
+                return false;
+            }
+            previews.remove(preview);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return quantity of active resources, collected entries will be removed
+     */
+    int quantity() {
+        try {
+            lock.lock();
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()){
+                if (iterator.next().getValue().get() == null){
+                    iterator.remove();
+                }
+            }
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class PreviewEntry {
+
+        private int refCount = 0;
+        private boolean superseded = false;
+
+    }
+
+    private static class Entry extends WeakReference<ImageResource> {
+
+        private int refCount = 0;
+        private boolean evicted = false;
+
+        private Entry(ImageResource resource) {
+            super(resource);
+        }
+
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.server.mem;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sviolet.turquoise.util.bitmap.BitmapUtils;
+import sviolet.turquoise.util.droid.DeviceUtils;
+
+/**
+ * <p>Bitmap reuse pool for TILoader (API 19+)</p>
+ *
+ * <p>Bitmaps evicted from memory cache will be kept in this pool (instead of being recycled), and reused
+ * by decoding ({@link android.graphics.BitmapFactory.Options#inBitmap}). Bitmaps are bucketed by config
+ * and allocation byte count, the smallest bitmap which is large enough will be reused. The earliest bitmap
+ * will be recycled when the pool is full.</p>
+ *
+ * <p>The content of bitmap will be overwritten when it's reused, so only the bitmaps which are no longer
+ * displayed can be put into pool. {@link ActiveResources} decides it: a bitmap is put into pool only if no
+ * view holds the display reference of its ImageResource, and a view must take the display reference before
+ * drawing it (the bitmap will be taken back by {@link #remove(Bitmap)} if it's still in pool).</p>
+ *
+ * @author S.Violet
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+public class BitmapPool implements BitmapUtils.InBitmapProvider {
+
+    //a bitmap larger than required size * multiple will not be reused, avoid wasting memory
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final int maxSize;
+    private int size = 0;
+
+    private final Map<Bitmap.Config, TreeMap<Integer, LinkedList<Bitmap>>> buckets = new HashMap<>();
+    private final LinkedHashSet<Bitmap> bitmaps = new LinkedHashSet<>();
+
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int evictionCount = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param maxSize max size of pool (bytes)
+     */
+    public BitmapPool(int maxSize) {
+        if (maxSize <= 0){
+            throw new RuntimeException("[BitmapPool]maxSize must > 0");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return true if bitmap pool is supported on this device
+     */
+    public static boolean isSupported(){
+        return DeviceUtils.getVersionSDK() >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * put bitmap into pool
+     * @param bitmap bitmap evicted from memory cache
+     * @return true: accepted by pool, false: rejected, you should recycle it by yourself
+     */
+    public boolean put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null){
+            return false;
+        }
+        int byteCount = bitmap.getAllocationByteCount();
+        if (byteCount <= 0 || byteCount > maxSize / 2){
+            return false;
+        }
+        try {
+            lock.lock();
+            if (!bitmaps.add(bitmap)){
+                return true;
+            }
+            TreeMap<Integer, LinkedList<Bitmap>> bucket = buckets.get(bitmap.getConfig());
+            if (bucket == null){
+                bucket = new TreeMap<>();
+                buckets.put(bitmap.getConfig(), bucket);
+            }
+            LinkedList<Bitmap> list = bucket.get(byteCount);
+            if (list == null){
+                list = new LinkedList<>();
+                bucket.put(byteCount, list);
+            }
+            list.addLast(bitmap);
+            size += byteCount;
+            trimToSize(maxSize);
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * get a bitmap for reusing (inBitmap), the bitmap will be removed from pool
+     */
+    @Override
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        if (width <= 0 || height <= 0){
+            return null;
+        }
+        if (config == null){
+            config = Bitmap.Config.ARGB_8888;
+        }
+        long required = (long) width * height * bytesPerPixel(config);
+        try {
+            lock.lock();
+            TreeMap<Integer, LinkedList<Bitmap>> bucket = buckets.get(config);
+            if (bucket != null && required <= Integer.MAX_VALUE) {
+                Map.Entry<Integer, LinkedList<Bitmap>> entry = bucket.ceilingEntry((int) required);
+                if (entry != null && entry.getKey() <= required * MAX_SIZE_MULTIPLE) {
+                    Bitmap bitmap = entry.getValue().removeFirst();
+                    if (entry.getValue().isEmpty()) {
+                        bucket.remove(entry.getKey());
+                    }
+                    bitmaps.remove(bitmap);
+                    size -= entry.getKey();
+                    if (!bitmap.isRecycled()) {
+                        hitCount++;
+                        return bitmap;
+                    }
+                }
+            }
+            missCount++;
+        } finally {
+            lock.unlock();
+        }
+        return null;
+    }
+
+    /**
+     * take the bitmap out of pool (without recycling), it will not be reused by decoding
+     * @param bitmap bitmap
+     * @return true if the bitmap was in pool, false if it's not in pool (might be taken for reusing)
+     */
+    public boolean remove(Bitmap bitmap) {
+        if (bitmap == null){
+            return false;
+        }
+        try {
+            lock.lock();
+            if (!bitmaps.remove(bitmap)){
+                return false;
+            }
+            int byteCount = bitmap.getAllocationByteCount();
+            TreeMap<Integer, LinkedList<Bitmap>> bucket = buckets.get(bitmap.getConfig());
+            if (bucket != null) {
+                LinkedList<Bitmap> list = bucket.get(byteCount);
+                if (list != null) {
+                    list.remove(bitmap);
+                    if (list.isEmpty()) {
+                        bucket.remove(byteCount);
+                    }
+                }
+            }
+            size -= byteCount;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * recycle all bitmaps in pool
+     */
+    public void clear() {
+        try {
+            lock.lock();
+            trimToSize(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove the earliest bitmaps until size <= maxSize, must invoke in lock
+     */
+    private void trimToSize(int maxSize) {
+        Iterator<Bitmap> iterator = bitmaps.iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            int byteCount = bitmap.getAllocationByteCount();
+            TreeMap<Integer, LinkedList<Bitmap>> bucket = buckets.get(bitmap.getConfig());
+            if (bucket != null) {
+                LinkedList<Bitmap> list = bucket.get(byteCount);
+                if (list != null) {
+                    list.remove(bitmap);
+                    if (list.isEmpty()) {
+                        bucket.remove(byteCount);
+                    }
+                }
+            }
+            size -= byteCount;
+            evictionCount++;
+            bitmap.recycle();
+        }
+        if (bitmaps.isEmpty()) {
+            buckets.clear();
+            size = 0;
+        }
+    }
+
+    public String getReport() {
+        try {
+            lock.lock();
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("[Pool]: ");
+            stringBuilder.append(size / 1024);
+            stringBuilder.append("K/");
+            stringBuilder.append(maxSize / 1024);
+            stringBuilder.append("K ");
+            stringBuilder.append(bitmaps.size());
+            stringBuilder.append("pcs hit:");
+            stringBuilder.append(hitCount);
+            stringBuilder.append(" miss:");
+            stringBuilder.append(missCount);
+            stringBuilder.append(" evict:");
+            stringBuilder.append(evictionCount);
+            stringBuilder.append(" ");
+            return stringBuilder.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+                return 4;
+            default:
+                //RGBA_F16 (API 26) or others
+                return 8;
+        }
+    }
+
+}
@@ -36,6 +36,8 @@ import sviolet.turquoise.x.imageloader.handler.ImageResourceHandler;
 public class ImageResourceCacheModule extends CompatLruCache<String, ImageResource> {
 
     private ImageResourceHandler imageResourceHandler;
+    private BitmapPool bitmapPool;
+    private ActiveResources activeResources;
     private TLogger logger;
 
     /**
@@ -43,8 +45,24 @@ public class ImageResourceCacheModule extends CompatLruCache<String, ImageResour
      * @param logger logger
      */
     public ImageResourceCacheModule(int cacheSize, ImageResourceHandler imageResourceHandler, TLogger logger) {
+        this(cacheSize, imageResourceHandler, null, null, logger);
+    }
+
+    /**
+     * @param cacheSize cache size
+     * @param bitmapPool evicted bitmaps will be put into pool instead of being recycled, nullable
+     * @param activeResources evicted ImageResources which are active (displaying) will not be recycled, nullable
+     * @param logger logger
+     */
+    ImageResourceCacheModule(int cacheSize, ImageResourceHandler imageResourceHandler, BitmapPool bitmapPool, ActiveResources activeResources, TLogger logger) {
         super(cacheSize);
+        if (bitmapPool != null && activeResources == null){
+            //bitmaps still displaying must not be reused
+            throw new RuntimeException("[ImageResourceCacheModule]bitmapPool requires activeResources");
+        }
         this.imageResourceHandler = imageResourceHandler;
+        this.bitmapPool = bitmapPool;
+        this.activeResources = activeResources;
         this.logger = logger;
     }
 
@@ -96,7 +114,7 @@ public class ImageResourceCacheModule extends CompatLruCache<String, ImageResour
         }
         ImageResource imageResource = super.remove(key);
         //recycle
-        imageResourceHandler.recycle(imageResource);
+        recycle(key, imageResource);
         //return null
         return null;
     }
@@ -104,9 +122,12 @@ public class ImageResourceCacheModule extends CompatLruCache<String, ImageResour
     public void removeAll() {
         int counter = 0;
 
-        //recycle all
+        //recycle all, except active ImageResources
         for (Map.Entry<String, ImageResource> entry : getMap().entrySet()) {
             ImageResource imageResource = entry.getValue();
+            if (activeResources != null && activeResources.onEvicted(entry.getKey(), imageResource)) {
+                continue;
+            }
             if (imageResourceHandler.recycle(imageResource)) {
                 counter++;
             }
@@ -115,6 +136,9 @@ public class ImageResourceCacheModule extends CompatLruCache<String, ImageResour
         //clean
         getMap().clear();
         setSize(0);
+        if (bitmapPool != null) {
+            bitmapPool.clear();
+        }
 
         //打印日志
         logger.d("[ImageResourceCacheModule]removeAll recycled:" + counter);
@@ -131,6 +155,14 @@ public class ImageResourceCacheModule extends CompatLruCache<String, ImageResour
         stringBuilder.append("K ");
         stringBuilder.append(quantity());
         stringBuilder.append("pcs ");
+        if (activeResources != null) {
+            stringBuilder.append("[Active]: ");
+            stringBuilder.append(activeResources.quantity());
+            stringBuilder.append("pcs ");
+        }
+        if (bitmapPool != null) {
+            stringBuilder.append(bitmapPool.getReport());
+        }
         return stringBuilder.toString();
     }
 
@@ -176,12 +208,22 @@ public class ImageResourceCacheModule extends CompatLruCache<String, ImageResour
             entryRemoved(true, key, value, null);
 
             //recycle
-            imageResourceHandler.recycle(value);
+            recycle(key, value);
         }
         //打印内存使用情况
         logger.d(getMemoryReport());
     }
 
+    /**
+     * skip if ImageResource is active (displaying), put bitmap into pool if possible (not displaying), otherwise recycle it
+     */
+    private void recycle(String key, ImageResource imageResource){
+        if (activeResources != null && activeResources.onEvicted(key, imageResource, bitmapPool)){
+            return;
+        }
+        imageResourceHandler.recycle(imageResource);
+    }
+
     @SuppressLint("NewApi")
     @Override
     protected int sizeOf(String key, ImageResource value) {
@@ -19,6 +19,9 @@
 
 package sviolet.turquoise.x.imageloader.server.mem;
 
+import android.graphics.Bitmap;
+
+import sviolet.turquoise.util.bitmap.BitmapUtils;
 import sviolet.turquoise.util.droid.DeviceUtils;
 import sviolet.turquoise.x.imageloader.ComponentManager;
 import sviolet.turquoise.x.imageloader.entity.ImageResource;
@@ -37,6 +40,8 @@ public class MemoryCacheServer implements ComponentManager.Component, Server {
     private ComponentManager manager;
 
     private ImageResourceCacheModule imageResourceCacheModule;
+    private BitmapPool bitmapPool;
+    private final ActiveResources activeResources = new ActiveResources();
 
     private boolean initialized = false;
 
@@ -64,7 +69,13 @@ public class MemoryCacheServer implements ComponentManager.Component, Server {
                         manager.getLogger().i("[MemoryCacheServer]initialize, setting memoryCacheSize:" + (memoryCacheSize / 1024) + "K < minimumSize, reset to minimumSize:" + (MIN_MEMORY_CACHE_SIZE / 1024) + "K");
                         memoryCacheSize = MIN_MEMORY_CACHE_SIZE;
                     }
-                    imageResourceCacheModule = new ImageResourceCacheModule(memoryCacheSize, manager.getServerSettings().getImageResourceHandler(), manager.getLogger());
+                    //bitmap pool
+                    int bitmapPoolSize = manager.getServerSettings().getBitmapPoolSize();
+                    if (bitmapPoolSize > 0 && BitmapPool.isSupported()){
+                        bitmapPool = new BitmapPool(bitmapPoolSize);
+                        manager.getLogger().i("[MemoryCacheServer]initialize, bitmapPoolSize:" + (bitmapPoolSize / 1024) + "K");
+                    }
+                    imageResourceCacheModule = new ImageResourceCacheModule(memoryCacheSize, manager.getServerSettings().getImageResourceHandler(), bitmapPool, activeResources, manager.getLogger());
                     manager.getLogger().i("[MemoryCacheServer]initialized, memoryCacheSize:" + (memoryCacheSize / 1024) + "K");
                     initialized = true;
                 }
@@ -87,7 +98,16 @@ public class MemoryCacheServer implements ComponentManager.Component, Server {
             manager.getLogger().e("MemoryCacheServer can't get with null key");
             return null;
         }
-        return imageResourceCacheModule.get(key);
+        ImageResource resource = imageResourceCacheModule.get(key);
+        if (resource != null){
+            return resource;
+        }
+        //evicted from cache, but still displaying
+        resource = activeResources.get(key);
+        if (manager.getServerSettings().getImageResourceHandler().isValid(resource)){
+            return resource;
+        }
+        return null;
     }
 
     public ImageResource extract(String key){
@@ -108,6 +128,103 @@ public class MemoryCacheServer implements ComponentManager.Component, Server {
         imageResourceCacheModule.remove(key);
     }
 
+    /**
+     * add reference of ImageResource, when it's displayed by view.
+     * the active ImageResource will not be recycled (or put into bitmap pool) while evicting.
+     * must be invoked before the ImageResource is drawn.
+     * @param key task key
+     * @param resource displaying ImageResource
+     * @return false if the bitmap has been reused by decoding, the ImageResource can't be displayed
+     */
+    public boolean acquire(String key, ImageResource resource){
+        initialize();
+        if (key == null){
+            manager.getLogger().e("MemoryCacheServer can't acquire with null key");
+            return false;
+        }
+        return activeResources.acquire(key, resource, bitmapPool);
+    }
+
+    /**
+     * remove reference of ImageResource, when it's no longer displayed by view.
+     * the evicted ImageResource will be returned to memory cache if no view displaying it.
+     * @param key task key
+     * @param resource ImageResource
+     */
+    public void release(String key, ImageResource resource){
+        initialize();
+        if (key == null){
+            manager.getLogger().e("MemoryCacheServer can't release with null key");
+            return;
+        }
+        ImageResource evicted = activeResources.release(key, resource);
+        if (evicted != null && manager.getServerSettings().getImageResourceHandler().isValid(evicted) &&
+                imageResourceCacheModule.get(key) == null){
+            imageResourceCacheModule.put(key, evicted);
+        }
+    }
+
+    /**
+     * register a preview of progressive display before delivering it to views, see {@link #supersedePreview}
+     * @param preview preview decoded from partial data
+     */
+    public void registerPreview(ImageResource preview){
+        initialize();
+        activeResources.registerPreview(preview);
+    }
+
+    /**
+     * add reference of preview, when it's displayed by view. must be invoked before the preview is drawn.
+     * @param preview preview
+     * @return false if the preview has been disposed, it can't be displayed
+     */
+    public boolean acquirePreview(ImageResource preview){
+        initialize();
+        return activeResources.acquirePreview(preview);
+    }
+
+    /**
+     * remove reference of preview, when it's no longer displayed by view.
+     * the superseded preview will be disposed if no view displaying it.
+     * @param preview preview
+     */
+    public void releasePreview(ImageResource preview){
+        initialize();
+        if (activeResources.releasePreview(preview)){
+            disposePreview(preview);
+        }
+    }
+
+    /**
+     * the preview is superseded by a newer preview or the loading finished, it will be disposed
+     * after all the views stop displaying it
+     * @param preview preview
+     */
+    public void supersedePreview(ImageResource preview){
+        initialize();
+        if (activeResources.supersedePreview(preview)){
+            disposePreview(preview);
+        }
+    }
+
+    /**
+     * put the bitmap of preview into pool for reusing (e.g. decoding next preview), or recycle it,
+     * the preview must not be displayed by any view
+     * @param preview preview
+     */
+    public void disposePreview(ImageResource preview){
+        initialize();
+        if (preview == null){
+            return;
+        }
+        BitmapPool bitmapPool = this.bitmapPool;
+        if (bitmapPool != null && preview.getType() == ImageResource.Type.BITMAP &&
+                preview.getResource() instanceof Bitmap && bitmapPool.put((Bitmap) preview.getResource())){
+            return;
+        }
+        manager.getServerSettings().getImageResourceHandler().recycle(preview);
+    }
+
     public void removeAll(){
         initialize();
         imageResourceCacheModule.removeAll();
@@ -118,6 +235,25 @@ public class MemoryCacheServer implements ComponentManager.Component, Server {
         return imageResourceCacheModule.getMemoryReport();
     }
 
+    /**
+     * @return provide bitmaps of pool for decoding, always return null if pool is disabled
+     */
+    public BitmapUtils.InBitmapProvider getInBitmapProvider(){
+        return inBitmapProvider;
+    }
+
+    private final BitmapUtils.InBitmapProvider inBitmapProvider = new BitmapUtils.InBitmapProvider() {
+        @Override
+        public Bitmap get(int width, int height, Bitmap.Config config) {
+            initialize();
+            BitmapPool bitmapPool = MemoryCacheServer.this.bitmapPool;
+            if (bitmapPool == null){
+                return null;
+            }
+            return bitmapPool.get(width, height, config);
+        }
+    };
+
     @Override
     public Type getServerType() {
         return Type.MEMORY_CACHE;
@@ -20,6 +20,7 @@
 package sviolet.turquoise.x.imageloader.server.mem;
 
 import sviolet.turquoise.x.imageloader.entity.ImageResource;
+import sviolet.turquoise.x.imageloader.handler.MetricsListener;
 import sviolet.turquoise.x.imageloader.node.Task;
 import sviolet.turquoise.x.imageloader.server.Engine;
 
@@ -50,6 +51,7 @@ public class MemoryEngine extends Engine {
             response(task);
             return;
         }
+        getComponentManager().notifyMetrics(resource != null ? MetricsListener.Event.MEMORY_HIT : MetricsListener.Event.MEMORY_MISS, task.getTaskInfo(), MetricsListener.UNKNOWN);
         if (resource != null) {
             task.setState(Task.State.SUCCEED);
             response(task);
@@ -24,6 +24,7 @@ import sviolet.turquoise.x.imageloader.ComponentManager;
 import sviolet.turquoise.x.imageloader.entity.IndispensableState;
 import sviolet.turquoise.x.imageloader.entity.LowNetworkSpeedStrategy;
 import sviolet.turquoise.x.imageloader.handler.DecodeHandler;
+import sviolet.turquoise.x.imageloader.handler.MetricsListener;
 import sviolet.turquoise.x.imageloader.handler.NetworkLoadHandler;
 import sviolet.turquoise.x.imageloader.node.Task;
 import sviolet.turquoise.x.imageloader.server.Server;
@@ -76,10 +77,26 @@ public class HttpGetServer implements ComponentManager.Component, Server {
                 getNetworkEngine().getNetworkReadTimeout(task) << 1 :
                 getNetworkEngine().getNetworkReadTimeout(task);
 
+        //stream-through decoding: keep small data in memory while writing disk cache, no need to decode from disk
+        int memoryBufferLimit = getComponentManager().getServerSettings().getStreamThroughDecodeLimit();
+        //progressive display: decode downloaded data periodically as preview
+        final long progressiveDisplayInterval = getComponentManager().getServerSettings().getProgressiveDisplayInterval();
+        final int progressiveDisplayBufferLimit = getComponentManager().getServerSettings().getProgressiveDisplayBufferLimit();
+
+        getComponentManager().notifyMetrics(MetricsListener.Event.NETWORK_CONNECT, task.getTaskInfo(), MetricsListener.UNKNOWN);
+
         //network loading and disk write
-        DiskCacheServer.WriteResult result = getComponentManager().getDiskCacheServer().startWrite(task, new DiskCacheServer.WriteProcess() {
+        DiskCacheServer.WriteResult result = getComponentManager().getDiskCacheServer().startWrite(task, memoryBufferLimit, new DiskCacheServer.WriteProcess() {
             @Override
-            public DiskCacheServer.WriteResult onWrite(Task task, DiskCacheServer.WriterProvider writerProvider) {
+            public DiskCacheServer.WriteResult onWrite(final Task task, DiskCacheServer.WriterProvider writerProvider) {
+                if (progressiveDisplayInterval > 0) {
+                    writerProvider.setPreviewListener(progressiveDisplayInterval, progressiveDisplayBufferLimit, new DiskCacheServer.PreviewListener() {
+                        @Override
+                        public void onPreview(byte[] data, int length) {
+                            getNetworkEngine().handlePreviewData(task, data, length);
+                        }
+                    });
+                }
                 NetworkLoadHandler.HandleResult networkResult = getNetworkEngine().getNetworkLoadHandler(task).onHandle(
                         getComponentManager().getApplicationContextImage(),
                         getComponentManager().getContextImage(),
@@ -105,7 +122,12 @@ public class HttpGetServer implements ComponentManager.Component, Server {
         });
         switch (result.getType()) {
             case SUCCEED:
-                getNetworkEngine().handleImageData(task, DecodeHandler.DecodeType.IMAGE_FILE, result.getTargetFile());
+                getComponentManager().notifyMetrics(MetricsListener.Event.NETWORK_DONE, task.getTaskInfo(), task.getLoadProgress().loaded());
+                if (result.getBytes() != null) {
+                    getNetworkEngine().handleImageData(task, DecodeHandler.DecodeType.IMAGE_BYTES, result.getBytes());
+                } else {
+                    getNetworkEngine().handleImageData(task, DecodeHandler.DecodeType.IMAGE_FILE, result.getTargetFile());
+                }
                 break;
             case FAILED:
                 getNetworkEngine().handleFailed(task);
@@ -19,12 +19,20 @@
 
 package sviolet.turquoise.x.imageloader.server.net;
 
+import android.graphics.Bitmap;
+
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
+import sviolet.thistle.util.concurrent.ThreadPoolExecutorUtils;
+import sviolet.turquoise.util.bitmap.BitmapUtils;
+import sviolet.turquoise.x.common.tlogger.TLogger;
 import sviolet.turquoise.x.imageloader.entity.ImageResource;
 import sviolet.turquoise.x.imageloader.entity.IndispensableState;
 import sviolet.turquoise.x.imageloader.entity.Params;
@@ -32,6 +40,7 @@ import sviolet.turquoise.x.imageloader.handler.DecodeHandler;
 import sviolet.turquoise.x.imageloader.node.Task;
 import sviolet.turquoise.x.imageloader.server.Engine;
 import sviolet.turquoise.x.imageloader.server.Server;
+import sviolet.turquoise.x.imageloader.stub.Stub;
 
 /**
  * <p>Net Load Engine</p>
@@ -42,9 +51,16 @@ public class NetworkEngine extends Engine {
 
     private static final int HISTORY_CAPACITY = 30;
 
+    //preview of progressive display is decoded at 1/PREVIEW_SAMPLE_RATIO of required size
+    private static final int PREVIEW_SAMPLE_RATIO = 4;
+    //required size of preview, if the task has no required size
+    private static final int PREVIEW_DEFAULT_SIZE = 256;
+
     private Map<String, TaskGroup> taskGroups = new ConcurrentHashMap<>();
     private NetworkLoadingHistory history = new NetworkLoadingHistory(HISTORY_CAPACITY);
     private ReentrantLock lock = new ReentrantLock();
+    //decode previews of progressive display, out of network loading threads
+    private ExecutorService previewThreadPool = ThreadPoolExecutorUtils.createLazy(60L, "sva-til-ne-preview-%d");
 
     @Override
     protected boolean preCheck(Task task) {
@@ -138,7 +154,13 @@ public class NetworkEngine extends Engine {
         if (group == null){
             return;
         }
+        finishPreview(group);
         for (Task t : group.getSet()) {
+            //preload into disk cache only, no decoding
+            if (t.getType() == Stub.Type.PRELOAD_DISK){
+                responseSucceed(t);
+                continue;
+            }
             //decode
             ImageResource imageResource = decode(t, decodeType, data);
             if (imageResource == null) {
@@ -152,11 +174,117 @@ public class NetworkEngine extends Engine {
         group.getSet().clear();
     }
 
+    /**
+     * progressive display, decode the downloaded data (prefix) at a reduced sample size in preview thread,
+     * and deliver it to the views as a preview. Invoked by network loading thread, it returns immediately.
+     * One decoding per group at a time, the data arrived while decoding is skipped except the latest one.
+     * @param data the valid part [0, length) will not be modified by network loading thread
+     */
+    void handlePreviewData(Task task, byte[] data, int length){
+        //get group, do not remove
+        final TaskGroup group = taskGroups.get(task.getResourceKey());
+        if (group == null){
+            return;
+        }
+        group.latestPreviewData.set(new PreviewData(data, length));
+        if (!group.previewDecoding.compareAndSet(false, true)){
+            //decoding, the latest data will be decoded after that
+            return;
+        }
+        previewThreadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                decodePreviews(group);
+            }
+        });
+    }
+
+    /**
+     * decode the latest data of group until no more data, invoked in preview thread
+     */
+    private void decodePreviews(TaskGroup group){
+        while (true) {
+            PreviewData previewData = group.latestPreviewData.getAndSet(null);
+            if (previewData != null && !group.previewFinished) {
+                try {
+                    deliverPreview(group, previewData);
+                } catch (Throwable t) {
+                    getComponentManager().getLogger().e("[NetworkEngine]preview failed", t);
+                }
+            }
+            group.previewDecoding.set(false);
+            //data arrived after getAndSet, and no other thread take over
+            if (group.latestPreviewData.get() == null || !group.previewDecoding.compareAndSet(false, true)){
+                return;
+            }
+        }
+    }
+
+    private void deliverPreview(TaskGroup group, PreviewData previewData){
+        //decode once, shared by tasks
+        Task target = null;
+        for (Task t : group.getSet()) {
+            //only for displaying by view
+            if (t.getType() == Stub.Type.LOAD){
+                target = t;
+                break;
+            }
+        }
+        if (target == null){
+            return;
+        }
+        ImageResource preview = decodePreview(target, previewData.data, previewData.length);
+        if (preview == null){
+            return;
+        }
+        ImageResource previous = null;
+        boolean finished;
+        synchronized (group) {
+            finished = group.previewFinished;
+            if (!finished){
+                previous = group.preview;
+                group.preview = preview;
+                getComponentManager().getMemoryCacheServer().registerPreview(preview);
+            }
+        }
+        if (finished){
+            //loading finished while decoding, never delivered
+            getComponentManager().getMemoryCacheServer().disposePreview(preview);
+            return;
+        }
+        //disposed after the views display the new one
+        if (previous != null){
+            getComponentManager().getMemoryCacheServer().supersedePreview(previous);
+        }
+        for (Task t : group.getSet()) {
+            if (t.getType() == Stub.Type.LOAD){
+                responsePreview(t, preview);
+            }
+        }
+    }
+
+    /**
+     * stop previewing when loading finished, the last preview will be disposed after the views display the image
+     */
+    private void finishPreview(TaskGroup group){
+        ImageResource preview;
+        synchronized (group) {
+            group.previewFinished = true;
+            preview = group.preview;
+            group.preview = null;
+        }
+        group.latestPreviewData.set(null);
+        if (preview != null){
+            getComponentManager().getMemoryCacheServer().supersedePreview(preview);
+        }
+    }
+
     void handleFailed(Task task){
         TaskGroup group = taskGroups.remove(task.getResourceKey());
         if (group == null){
             return;
         }
+        finishPreview(group);
         for (Task t : group.getSet()) {
             responseFailed(t);
         }
@@ -168,6 +296,7 @@ public class NetworkEngine extends Engine {
         if (group == null){
             return;
         }
+        finishPreview(group);
         for (Task t : group.getSet()) {
             responseCanceled(t);
         }
@@ -178,8 +307,7 @@ public class NetworkEngine extends Engine {
         ImageResource imageResource = null;
         try {
             //decode
-            imageResource = getDecodeHandler(task).decode(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(),
-                    task, decodeType, data, getComponentManager().getLogger());
+            imageResource = getComponentManager().decode(getDecodeHandler(task), task, decodeType, data);
         }catch(Exception e){
             getComponentManager().getServerSettings().getExceptionHandler().onDecodeException(getComponentManager().getApplicationContextImage(), getComponentManager().getContextImage(), task.getTaskInfo(), e, getComponentManager().getLogger());
             return null;
@@ -193,6 +321,33 @@ public class NetworkEngine extends Engine {
         return imageResource;
     }
 
+    private ImageResource decodePreview(Task task, byte[] data, int length){
+        Params params = task.getParams();
+        int reqWidth = params.getReqWidth() > 0 ? Math.max(params.getReqWidth() / PREVIEW_SAMPLE_RATIO, 1) : PREVIEW_DEFAULT_SIZE;
+        int reqHeight = params.getReqHeight() > 0 ? Math.max(params.getReqHeight() / PREVIEW_SAMPLE_RATIO, 1) : PREVIEW_DEFAULT_SIZE;
+        Bitmap bitmap;
+        try {
+            //reuse the bitmaps of disposed previews (or evicted images) in pool
+            bitmap = BitmapUtils.decodeFromByteArray(data, 0, length, reqWidth, reqHeight, params.getBitmapConfig(), params.getDecodeInSampleQuality(),
+                    getComponentManager().getMemoryCacheServer().getInBitmapProvider());
+        } catch (Exception e) {
+            //incomplete data, skip this preview
+            if (getComponentManager().getLogger().checkEnable(TLogger.DEBUG)) {
+                getComponentManager().getLogger().d("[NetworkEngine]preview decoding failed, length:" + length + ", task:" + task + ", e:" + e);
+            }
+            return null;
+        }
+        if (bitmap == null){
+            return null;
+        }
+        ImageResource imageResource = new ImageResource(ImageResource.Type.BITMAP, bitmap);
+        if (!getComponentManager().getServerSettings().getImageResourceHandler().isValid(imageResource)){
+            getComponentManager().getServerSettings().getImageResourceHandler().recycle(imageResource);
+            return null;
+        }
+        return imageResource;
+    }
+
     /*********************************************************************
      * response
      */
@@ -221,6 +376,19 @@ public class NetworkEngine extends Engine {
         return getComponentManager().getServerSettings().getNetworkLoadMaxThread();
     }
 
+    @Override
+    protected int getMinThread() {
+        return getComponentManager().getServerSettings().getNetworkLoadMinThread();
+    }
+
+    /**
+     * throughput measured by bytes loaded, tasks merged into group or returned to DiskEngine are skipped
+     */
+    @Override
+    protected long getTaskAmount(Task task) {
+        return task.getLoadProgress().loaded();
+    }
+
     @Override
     public Type getServerType() {
         return Type.NETWORK_ENGINE;
@@ -235,6 +403,13 @@ public class NetworkEngine extends Engine {
         private Set<Task> stubSet = Collections.newSetFromMap(new ConcurrentHashMap<Task, Boolean>());
         private IndispensableState indispensableState = new IndispensableState();
 
+        //progressive display
+        private final AtomicReference<PreviewData> latestPreviewData = new AtomicReference<>(null);
+        private final AtomicBoolean previewDecoding = new AtomicBoolean(false);
+        private volatile boolean previewFinished = false;
+        //the latest preview delivered, guarded by group
+        private ImageResource preview;
+
         /**
          * @param task add the task into group, non-repetitive(Set)
          */
@@ -259,4 +434,19 @@ public class NetworkEngine extends Engine {
 
     }
 
+    /**
+     * snapshot of downloaded data (prefix), the valid part [0, length) is immutable
+     */
+    private static class PreviewData {
+
+        private final byte[] data;
+        private final int length;
+
+        private PreviewData(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+    }
+
 }
@@ -19,11 +19,11 @@
 
 package sviolet.turquoise.x.imageloader.stub;
 
+import android.os.SystemClock;
+
 import java.lang.ref.WeakReference;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import sviolet.thistle.util.conversion.ByteUtils;
-import sviolet.thistle.util.crypto.DigestCipher;
 import sviolet.turquoise.x.common.tlogger.TLogger;
 import sviolet.turquoise.x.imageloader.TILoaderUtils;
 import sviolet.turquoise.x.imageloader.entity.ImageResource;
@@ -48,12 +48,14 @@ public abstract class AbsStub implements Stub {
     private String url;//loading url
     private Params params;//loading params
     private String resourceKey;//resource key
+    private MemoizedKey memoizedKey;//key of loading task (memoized)
 
     //stat///////////////////////////////
 
     private AtomicInteger state = new AtomicInteger(State.INITIAL);
     private LoadProgress loadProgress = new LoadProgress();
     private int reloadTimes = 0;
+    private volatile long lastDrawTime = 0;
 
     private WeakReference<NodeController> nodeController;
 
@@ -141,6 +143,11 @@ public abstract class AbsStub implements Stub {
         return LaunchResult.FAILED;
     }
 
+    @Override
+    public void onDraw() {
+        lastDrawTime = SystemClock.uptimeMillis();
+    }
+
     /******************************************************************
      * control inner
      */
@@ -287,7 +294,7 @@ public abstract class AbsStub implements Stub {
      */
 
     /**
-     * 1.check resource valid<br/>
+     * 1.check resource valid (PRELOAD_DISK has no resource)<br/>
      * 2.update state<br/>
      * 3.invoke inner method<br/>
      *
@@ -296,7 +303,7 @@ public abstract class AbsStub implements Stub {
     @Override
     public final void onLoadSucceed(ImageResource resource) {
         //check resource
-        if (!TILoaderUtils.isImageResourceValid(resource)){
+        if (getType() != Type.PRELOAD_DISK && !TILoaderUtils.isImageResourceValid(resource)){
             onLoadFailed();
             return;
         }
@@ -307,6 +314,21 @@ public abstract class AbsStub implements Stub {
 
     }
 
+    /**
+     * 1.check state (LOADING) and resource<br/>
+     * 2.invoke inner method<br/>
+     *
+     * @param preview preview of loading image
+     */
+    @Override
+    public final void onLoadPreview(ImageResource preview) {
+
+        if (state.get() == State.LOADING && TILoaderUtils.isImageResourceValid(preview)){
+            onLoadPreviewInner(preview);
+        }
+
+    }
+
     /**
      * 1.update state<br/>
      * 2.invoke inner method<br/>
@@ -356,6 +378,10 @@ public abstract class AbsStub implements Stub {
 
     }
 
+    protected void onLoadPreviewInner(ImageResource preview){
+
+    }
+
     protected void onLoadFailedInner(){
         if (!canReload(null)){
             shiftFailedToCanceled();
@@ -389,12 +415,29 @@ public abstract class AbsStub implements Stub {
         return this.params;
     }
 
+    /**
+     * the key is memoized, and will be rebuilt only when the key suffix of params changed (e.g. adjust by view),
+     * the same String instance is used for map lookups, its hash code is computed only once
+     */
     @Override
     public String getKey(){
+        String suffix = params.getKeySuffix();
+        MemoizedKey memoizedKey = this.memoizedKey;
+        if (memoizedKey == null || memoizedKey.suffix != suffix){
+            memoizedKey = new MemoizedKey(suffix, buildKey(suffix));
+            this.memoizedKey = memoizedKey;
+        }
+        return memoizedKey.key;
+    }
+
+    private String buildKey(String suffix){
         if (getType() == Type.EXTRACT){
-            return getResourceKey() + "@EXT" + params.getKeySuffix();
+            return getResourceKey() + "@EXT" + suffix;
+        }else if (getType() == Type.PRELOAD_DISK){
+            //no decoding, regardless of params
+            return getResourceKey() + "@PRD";
         }
-        return getResourceKey() + params.getKeySuffix();
+        return getResourceKey() + suffix;
     }
 
     @Override
@@ -404,7 +447,7 @@ public abstract class AbsStub implements Stub {
             if (url == null) {
                 url = NULL;
             }
-            resourceKey = params.getSourceType().getMark() + ByteUtils.bytesToHex(DigestCipher.digestStr(url, DigestCipher.TYPE_SHA1));
+            resourceKey = ResourceKeyCache.get(params.getSourceType(), url);
         }
         return resourceKey;
     }
@@ -419,6 +462,14 @@ public abstract class AbsStub implements Stub {
         return loadProgress;
     }
 
+    /**
+     * Stub without view (e.g. extract) is regarded as visible
+     */
+    @Override
+    public int getPriority() {
+        return Priority.VISIBLE;
+    }
+
     @Override
     public StubRemoter getStubRemoter(){
         return new StubRemoter(this);
@@ -433,6 +484,13 @@ public abstract class AbsStub implements Stub {
         return TLogger.get(null);
     }
 
+    /**
+     * @return uptime millis of last drawing, 0 if never drawn
+     */
+    protected long getLastDrawTime(){
+        return lastDrawTime;
+    }
+
     protected NodeController getNodeController(){
         if (this.nodeController!= null){
             return nodeController.get();
@@ -440,4 +498,19 @@ public abstract class AbsStub implements Stub {
         return null;
     }
 
+    /**
+     * immutable, key and the suffix it built with
+     */
+    private static final class MemoizedKey {
+
+        private final String suffix;
+        private final String key;
+
+        private MemoizedKey(String suffix, String key) {
+            this.suffix = suffix;
+            this.key = key;
+        }
+
+    }
+
 }
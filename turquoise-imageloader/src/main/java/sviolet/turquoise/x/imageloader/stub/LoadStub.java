@@ -20,6 +20,8 @@
 package sviolet.turquoise.x.imageloader.stub;
 
 import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
 import android.view.View;
 
 import java.lang.ref.WeakReference;
@@ -39,7 +41,30 @@ import sviolet.turquoise.x.imageloader.node.NodeController;
  */
 public abstract class LoadStub<V extends View> extends AbsStub {
 
+    /**
+     * the view drawn within this period is regarded as visible
+     */
+    private static final long VISIBLE_EXPIRE_MILLIS = 1000L;
+
     private WeakReference<V> view;
+    //ImageResource displaying by view, referenced in memory cache to avoid recycling while evicting
+    private ImageResource displayedResource;
+    //preview displaying by view (progressive display), it will not be disposed until released
+    private ImageResource displayedPreview;
+    //updated in UI thread, read by Engine dispatch thread (getPriority)
+    private volatile boolean attached = false;
+
+    private final View.OnAttachStateChangeListener attachStateListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            attached = true;
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            attached = false;
+        }
+    };
 
     public LoadStub(String url, Params params, V view){
         super(url, params);
@@ -49,7 +74,11 @@ public abstract class LoadStub<V extends View> extends AbsStub {
     @Override
     public void initialize(NodeController controller) {
         super.initialize(controller);
-        if (bindView(getView())) {
+        final V view = getView();
+        if (bindView(view)) {
+            //initialize in UI thread
+            attached = ViewCompat.isAttachedToWindow(view);
+            view.addOnAttachStateChangeListener(attachStateListener);
             showLoading();
         } else {
             onDestroy();
@@ -150,6 +179,8 @@ public abstract class LoadStub<V extends View> extends AbsStub {
             return false;
         }
         setDrawableToView(new ContainerDrawable(drawable).launchEnable().bindStub(this), view);
+        setDisplayedResource(null);
+        setDisplayedPreview(null);
         return true;
     }
 
@@ -172,22 +203,70 @@ public abstract class LoadStub<V extends View> extends AbsStub {
         if (drawable == null){
             throw new RuntimeException("[LoadStub]BackgroundDrawableFactory create a null drawable");
         }
+        //take the display reference before drawing, bitmap in pool will not be displayed
+        if (!setDisplayedResource(resource)){
+            shiftSucceedToFailed();
+            return false;
+        }
         Drawable imageDrawable = controller.getServerSettings().getImageResourceHandler().toDrawable(controller.getApplicationContextImage(), resource, false);
         if (imageDrawable == null){
+            setDisplayedResource(null);
             shiftSucceedToFailed();
             return false;
         }
         if (getState() == State.DESTROYED){
+            setDisplayedResource(null);
             return false;
         }
         ContainerDrawable containerDrawable = new ContainerDrawable(drawable, imageDrawable).relaunchEnable().bindStub(this);
         setDrawableToView(containerDrawable, view);
+        setDisplayedPreview(null);
         //start animation
         int customImageAppearDuration = getParams().getImageAppearDuration();
         containerDrawable.startTransition(customImageAppearDuration < 0 ? controller.getNodeSettings().getImageAppearDuration() : customImageAppearDuration);
         return true;
     }
 
+    /**
+     * show preview of loading image (progressive display), the preview is not cached and will be replaced
+     * when loading finished
+     */
+    protected boolean showPreview(ImageResource preview){
+        //get & check view
+        final V view = getView();
+        if (view == null){
+            onDestroy();
+            return false;
+        }
+        //get & check controller
+        final NodeController controller = getNodeController();
+        if (controller == null){
+            onDestroy();
+            return false;
+        }
+        //create and set drawable
+        Drawable drawable = controller.getBackgroundDrawableFactory(getParams().getExtensionBackgroundDrawableFactoryIndex())
+                .create(controller.getApplicationContextImage(), controller.getContextImage(), getParams(), getLogger());
+        if (drawable == null){
+            throw new RuntimeException("[LoadStub]BackgroundDrawableFactory create a null drawable");
+        }
+        if (preview == displayedPreview){
+            return true;
+        }
+        //take the reference before drawing, disposed preview will not be displayed
+        if (!controller.acquirePreview(preview)){
+            return false;
+        }
+        Drawable imageDrawable = controller.getServerSettings().getImageResourceHandler().toDrawable(controller.getApplicationContextImage(), preview, false);
+        if (imageDrawable == null || getState() != State.LOADING){
+            controller.releasePreview(preview);
+            return false;
+        }
+        setDrawableToView(new ContainerDrawable(drawable, imageDrawable).bindStub(this), view);
+        setDisplayedPreview(preview);
+        return true;
+    }
+
     protected boolean showFailed(){
         //get & check view
         final V view = getView();
@@ -211,6 +290,8 @@ public abstract class LoadStub<V extends View> extends AbsStub {
             return false;
         }
         setDrawableToView(new ContainerDrawable(drawable).bindStub(this), view);
+        setDisplayedResource(null);
+        setDisplayedPreview(null);
         return true;
     }
 
@@ -230,6 +311,12 @@ public abstract class LoadStub<V extends View> extends AbsStub {
         showImage(resource);
     }
 
+    @Override
+    protected void onLoadPreviewInner(ImageResource preview) {
+        super.onLoadPreviewInner(preview);
+        showPreview(preview);
+    }
+
     @Override
     protected void onLoadFailedInner() {
         super.onLoadFailedInner();
@@ -243,8 +330,15 @@ public abstract class LoadStub<V extends View> extends AbsStub {
     @Override
     protected void onDestroyInner() {
         super.onDestroyInner();
+        setDisplayedResource(null);
+        setDisplayedPreview(null);
+        attached = false;
+        final V view = getView();
         if (view != null){
-            view.clear();
+            view.removeOnAttachStateChangeListener(attachStateListener);
+        }
+        if (this.view != null){
+            this.view.clear();
         }
     }
 
@@ -252,6 +346,50 @@ public abstract class LoadStub<V extends View> extends AbsStub {
      * protected
      */
 
+    /**
+     * release the previous displayed ImageResource, and acquire the new one
+     * @param resource new displayed ImageResource, null if view no longer display image
+     * @return false if the new ImageResource can't be displayed (bitmap reused)
+     */
+    private boolean setDisplayedResource(ImageResource resource){
+        ImageResource previous = displayedResource;
+        if (previous == resource){
+            return true;
+        }
+        displayedResource = null;
+        final NodeController controller = getNodeController();
+        if (controller == null){
+            //the entries of active resources are weak references, no leak
+            return resource == null;
+        }
+        if (previous != null){
+            controller.releaseImageResource(getKey(), previous);
+        }
+        if (resource != null){
+            if (!controller.acquireImageResource(getKey(), resource)){
+                return false;
+            }
+            displayedResource = resource;
+        }
+        return true;
+    }
+
+    /**
+     * release the previous displayed preview, invoke after the view stops drawing it
+     * @param preview new displayed preview (acquired), null if view no longer display preview
+     */
+    private void setDisplayedPreview(ImageResource preview){
+        ImageResource previous = displayedPreview;
+        displayedPreview = preview;
+        if (previous == null || previous == preview){
+            return;
+        }
+        final NodeController controller = getNodeController();
+        if (controller != null){
+            controller.releasePreview(previous);
+        }
+    }
+
     protected boolean bindView(V view){
         if (view == null){
             return false;
@@ -280,6 +418,24 @@ public abstract class LoadStub<V extends View> extends AbsStub {
      * Getter
      */
 
+    /**
+     * <p>VISIBLE: the view has been drawn recently (drawing implies on screen).</p>
+     * <p>PREFETCH: the view is attached to window, but not drawn recently (near viewport, or static screen).</p>
+     * <p>OFFSCREEN: the view is detached from window (e.g. recycled by ListView/RecyclerView) or missing.</p>
+     * <p>Invoked by Engine dispatch thread, the attach state is tracked in UI thread, view is not touched here.</p>
+     */
+    @Override
+    public int getPriority() {
+        if (!attached || getView() == null){
+            return Priority.OFFSCREEN;
+        }
+        long lastDrawTime = getLastDrawTime();
+        if (lastDrawTime > 0 && SystemClock.uptimeMillis() - lastDrawTime < VISIBLE_EXPIRE_MILLIS){
+            return Priority.VISIBLE;
+        }
+        return Priority.PREFETCH;
+    }
+
     protected V getView(){
         if (view != null){
             return view.get();
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.stub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import sviolet.thistle.util.conversion.ByteUtils;
+import sviolet.thistle.util.crypto.DigestCipher;
+import sviolet.turquoise.x.imageloader.entity.Params;
+
+/**
+ * <p>Bounded cache of url to resource key (source type mark + SHA1 of url).</p>
+ *
+ * <p>Views in list are rebound with the same urls frequently, the SHA1 digest and hex encoding will be
+ * skipped if the url hits the cache. Thread safe.</p>
+ *
+ * @author S.Violet
+ */
+class ResourceKeyCache {
+
+    private static final int MAX_SIZE = 256;
+
+    private static final Map<String, String> CACHE = new LinkedHashMap<String, String>(0, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * @param sourceType source type of image
+     * @param url url, not null
+     * @return resource key
+     */
+    static String get(Params.SourceType sourceType, String url){
+        String mark = sourceType.getMark();
+        String cacheKey = mark + url;
+        String resourceKey;
+        synchronized (CACHE) {
+            resourceKey = CACHE.get(cacheKey);
+        }
+        if (resourceKey == null){
+            resourceKey = mark + ByteUtils.bytesToHex(DigestCipher.digestStr(url, DigestCipher.TYPE_SHA1));
+            synchronized (CACHE) {
+                CACHE.put(cacheKey, resourceKey);
+            }
+        }
+        return resourceKey;
+    }
+
+}
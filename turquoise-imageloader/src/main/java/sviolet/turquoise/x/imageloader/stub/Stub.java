@@ -54,6 +54,14 @@ public interface Stub extends Destroyable {
      */
     void onLoadSucceed(ImageResource resource);
 
+    /**
+     * callback when a preview of loading image is available (progressive display),
+     * may be invoked several times before loading finished
+     *
+     * @param preview preview decoded from partial data, low resolution
+     */
+    void onLoadPreview(ImageResource preview);
+
     /**
      * callback when loading failed
      */
@@ -81,6 +89,12 @@ public interface Stub extends Destroyable {
      */
     LaunchResult relaunch(boolean force);
 
+    /**
+     * invoked by {@link sviolet.turquoise.x.imageloader.drawable.ContainerDrawable} while drawing (UI thread),
+     * means the target is on screen, used to evaluate priority
+     */
+    void onDraw();
+
     /***********************************************************
      * params
      */
@@ -105,6 +119,11 @@ public interface Stub extends Destroyable {
 
     LoadProgress getLoadProgress();
 
+    /**
+     * @return priority of loading, higher priority task will be executed first in priority schedule mode, see {@link Priority}
+     */
+    int getPriority();
+
     /***********************************************************
      * getter
      */
@@ -119,7 +138,15 @@ public interface Stub extends Destroyable {
 
     enum Type{
         LOAD,
-        EXTRACT
+        EXTRACT,
+        //preload image into memory cache, the key is the same as LOAD
+        PRELOAD_MEMORY,
+        //preload image into disk cache, without decoding
+        PRELOAD_DISK;
+
+        public boolean isPreload(){
+            return this == PRELOAD_MEMORY || this == PRELOAD_DISK;
+        }
     }
 
     enum LaunchResult{
@@ -150,4 +177,15 @@ public interface Stub extends Destroyable {
         public static final int DESTROYED = 6;
     }
 
+    /**
+     *  OFFSCREEN = 0;<br/>
+     *  PREFETCH = 1;<br/>
+     *  VISIBLE = 2;<br/>
+     */
+    class Priority{
+        public static final int OFFSCREEN = 0;
+        public static final int PREFETCH = 1;
+        public static final int VISIBLE = 2;
+    }
+
 }
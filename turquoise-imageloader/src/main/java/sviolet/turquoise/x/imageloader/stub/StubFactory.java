@@ -70,4 +70,18 @@ public abstract class StubFactory {
         return null;
     }
 
+    /**
+     * <p>Usually no need to override (just return null).</p>
+     * <p>create stub without view, for TILoader.node(context).preload(...).
+     * the stub will load image into memory cache (or disk cache) with low priority.</p>
+     *
+     * @param url url
+     * @param params params
+     * @param toDisk true: preload into disk cache only (no decoding), false: preload into memory cache
+     * @return Stub
+     */
+    public Stub newPreloadStub(String url, Params params, boolean toDisk){
+        return null;
+    }
+
 }
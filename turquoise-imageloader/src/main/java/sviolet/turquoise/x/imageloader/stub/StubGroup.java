@@ -69,6 +69,16 @@ public class StubGroup {
         stubSet.clear();
     }
 
+    /**
+     * callback all stubs to onLoadPreview, this method can invoke several times before loading finished
+     * @param preview preview of loading image (progressive display)
+     */
+    public void onLoadPreview(ImageResource preview) {
+        for (Stub stub : stubSet) {
+            stub.onLoadPreview(preview);
+        }
+    }
+
     /**
      * callback all stubs to onLoadFailed, this method can only invoke once, all stubs will be removed from this Group after callback
      */
@@ -99,6 +109,54 @@ public class StubGroup {
         stubSet.clear();
     }
 
+    /**
+     * @return the highest priority of stubs in group, see {@link Stub.Priority}
+     */
+    public int getPriority(){
+        int priority = Stub.Priority.OFFSCREEN;
+        for (Stub stub : stubSet) {
+            int p = stub.getPriority();
+            if (p > priority){
+                priority = p;
+                if (priority >= Stub.Priority.VISIBLE){
+                    break;
+                }
+            }
+        }
+        return priority;
+    }
+
+    /**
+     * @return true if all stubs in group are preload stubs, see {@link Stub.Type#isPreload()}
+     */
+    public boolean isPreload(){
+        if (!hasStub()){
+            return false;
+        }
+        for (Stub stub : stubSet) {
+            if (!stub.getType().isPreload()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if all stubs in group are preload stubs and have been canceled (destroyed),
+     * the task of this group is no longer needed
+     */
+    public boolean isCanceled(){
+        if (!hasStub()){
+            return false;
+        }
+        for (Stub stub : stubSet) {
+            if (!stub.getType().isPreload() || stub.getState() != Stub.State.DESTROYED){
+                return false;
+            }
+        }
+        return true;
+    }
+
     public IndispensableState getIndispensableState(){
         return indispensableState;
     }
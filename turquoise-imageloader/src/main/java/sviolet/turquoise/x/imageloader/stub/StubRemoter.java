@@ -33,6 +33,7 @@ import sviolet.turquoise.x.imageloader.entity.LoadProgress;
  * 1.get state of loading<br/>
  * 2.get progress of loading<br/>
  * 3.relaunch canceled task<br/>
+ * 4.cancel preload task<br/>
  *
  * Created by S.Violet on 2016/5/9.
  */
@@ -112,4 +113,15 @@ public class StubRemoter {
         return false;
     }
 
+    /**
+     * cancel loading, the stub will be destroyed. for preload ({@link sviolet.turquoise.x.imageloader.node.Node#preload}),
+     * the waiting task will be dropped if no view needs it.
+     */
+    public void cancel(){
+        Stub stub = this.stub.get();
+        if (stub != null){
+            stub.onDestroy();
+        }
+    }
+
 }
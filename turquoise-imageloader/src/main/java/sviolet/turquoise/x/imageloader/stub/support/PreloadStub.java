@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.imageloader.stub.support;
+
+import sviolet.turquoise.x.imageloader.entity.ImageResource;
+import sviolet.turquoise.x.imageloader.entity.Params;
+import sviolet.turquoise.x.imageloader.node.NodeController;
+import sviolet.turquoise.x.imageloader.stub.AbsStub;
+
+/**
+ * <p>Preload Stub</p>
+ *
+ * <p>loading image into memory cache (or disk cache) without view, low priority,
+ * canceled by {@link sviolet.turquoise.x.imageloader.stub.StubRemoter#cancel()}</p>
+ *
+ * @author S.Violet
+ */
+class PreloadStub extends AbsStub {
+
+    private boolean toDisk;
+
+    PreloadStub(String url, Params params, boolean toDisk){
+        super(url, params);
+        this.toDisk = toDisk;
+    }
+
+    @Override
+    public void initialize(NodeController controller) {
+        super.initialize(controller);
+        launch();
+    }
+
+    /*******************************************************8
+     * callbacks inner
+     */
+
+    @Override
+    protected void onLoadSucceedInner(ImageResource resource) {
+        super.onLoadSucceedInner(resource);
+        //image has been cached, nothing to do
+    }
+
+    @Override
+    protected void onLoadFailedInner() {
+        //preload never reload, the view will load it again if needed
+        shiftFailedToCanceled();
+    }
+
+    /***********************************************************
+     * Getter
+     */
+
+    @Override
+    public Type getType() {
+        return toDisk ? Type.PRELOAD_DISK : Type.PRELOAD_MEMORY;
+    }
+
+    /**
+     * lower than visible, OFFSCREEN if canceled
+     */
+    @Override
+    public int getPriority() {
+        return getState() == State.DESTROYED ? Priority.OFFSCREEN : Priority.PREFETCH;
+    }
+}
@@ -121,6 +121,40 @@ public final class StubFactoryImpl extends StubFactory {
         return stub;
     }
 
+    @Override
+    public final Stub newPreloadStub(String url, Params params, boolean toDisk) {
+        //check input
+        checkInput(url);
+        //copy params
+        if (params == null){
+            params = new Params.Builder().build();
+        }else{
+            params = params.copy();
+        }
+        //invoke custom factory
+        Stub stub = null;
+        if (customStubFactory != null){
+            stub = customStubFactory.newPreloadStub(url, params, toDisk);
+        }
+        if (stub == null){
+            stub = newPreloadStubInner(url, params, toDisk);
+        }
+        return stub;
+    }
+
+    protected final Stub newPreloadStubInner(String url, Params params, boolean toDisk){
+        return new PreloadStub(url, params, toDisk);
+    }
+
+    private void checkInput(String url) {
+        if (url == null){
+            throw new RuntimeException("[TILoader]can't load image without url!");
+        }
+        if (url.length() > urlLengthLimit){
+            throw new RuntimeException("[TILoader]Url is too long! limit:" + urlLengthLimit);
+        }
+    }
+
     private void checkInput(String url, View view) {
         if (url == null){
             throw new RuntimeException("[TILoader]can't load image without url!");
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+
+package sviolet.turquoise.util.bitmap;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * BlurUtils测试<br/>
+ * <br/>
+ * testMatchesReference: 与按定义直接计算的Stack Blur结果逐像素比对(单线程/分段并行, 先大图后小图以覆盖数组复用)<br/>
+ * testUniformColor: 纯色图片模糊后颜色不变<br/>
+ * test1080p: 1080p图片, 原单线程blurByJava与分段并行blurByJava结果一致, 耗时对比输出到logcat<br/>
+ *
+ * @author S.Violet
+ */
+public class BlurUtilsBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "BlurUtilsBenchmark";
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int RADIUS = 20;
+    private static final int WARM_UP = 2;
+    private static final int ROUNDS = 10;
+
+    private Bitmap source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Random random = new Random(0);
+        for (int i = 0 ; i < pixels.length ; i++){
+            pixels[i] = 0xff000000 | random.nextInt(0x01000000);
+        }
+        source = Bitmap.createBitmap(pixels, WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        source.recycle();
+        source = null;
+        super.tearDown();
+    }
+
+    public void testMatchesReference() {
+        //边长320/256, 可分为多段并行处理
+        assertMatchesReference(320, 256, 10);
+        //复用上次较大的数组
+        assertMatchesReference(97, 131, 3);
+        assertMatchesReference(320, 256, 1);
+    }
+
+    public void testUniformColor() {
+        final int color = 0xff336699;
+        int[] pixels = new int[256 * 256];
+        for (int i = 0 ; i < pixels.length ; i++){
+            pixels[i] = color;
+        }
+        Bitmap uniform = Bitmap.createBitmap(pixels, 256, 256, Bitmap.Config.ARGB_8888);
+        Bitmap blurred = BlurUtils.blurByJava(uniform, RADIUS, false, Runtime.getRuntime().availableProcessors());
+        try {
+            int[] result = new int[pixels.length];
+            blurred.getPixels(result, 0, 256, 0, 0, 256, 256);
+            for (int i = 0 ; i < result.length ; i++){
+                assertEquals("pixel " + i, color, result[i]);
+            }
+        } finally {
+            uniform.recycle();
+            blurred.recycle();
+        }
+    }
+
+    public void test1080p() {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        long original = measure(0);
+        long parallel = measure(threads);
+
+        //两种实现结果必须一致
+        Bitmap expected = BlurUtils.blurByJava(source, RADIUS, false);
+        Bitmap actual = BlurUtils.blurByJava(source, RADIUS, false, threads);
+        assertTrue(expected.sameAs(actual));
+        expected.recycle();
+        actual.recycle();
+
+        Log.i(TAG, "1080p radius " + RADIUS + ", " + ROUNDS + " rounds, original: " + original / ROUNDS + " ms/frame, parallel(" + threads + " threads): " + parallel / ROUNDS + " ms/frame");
+    }
+
+    private void assertMatchesReference(int width, int height, int radius) {
+        int[] pixels = new int[width * height];
+        Random random = new Random(width * 31 + height);
+        for (int i = 0 ; i < pixels.length ; i++){
+            pixels[i] = 0xff000000 | random.nextInt(0x01000000);
+        }
+        int[] expected = referenceBlur(pixels, width, height, radius);
+        Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        try {
+            assertPixels(expected, BlurUtils.blurByJava(bitmap, radius, false), width, height);
+            assertPixels(expected, BlurUtils.blurByJava(bitmap, radius, false, 1), width, height);
+            assertPixels(expected, BlurUtils.blurByJava(bitmap, radius, false, Runtime.getRuntime().availableProcessors()), width, height);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private void assertPixels(int[] expected, Bitmap actual, int width, int height) {
+        try {
+            int[] pixels = new int[width * height];
+            actual.getPixels(pixels, 0, width, 0, 0, width, height);
+            for (int i = 0 ; i < pixels.length ; i++){
+                if (expected[i] != pixels[i]){
+                    fail("pixel (" + (i % width) + ", " + (i / width) + ") expected:" + Integer.toHexString(expected[i]) + " actual:" + Integer.toHexString(pixels[i]));
+                }
+            }
+        } finally {
+            actual.recycle();
+        }
+    }
+
+    /**
+     * 按定义计算Stack Blur: 先横向后纵向, 权重为radius + 1 - |i|, 超出边界取边缘像素, 每次结果向下取整, 保留alpha
+     */
+    private static int[] referenceBlur(int[] src, int w, int h, int radius) {
+        int divSum = (radius + 1) * (radius + 1);
+        int[] mid = new int[w * h * 3];
+        for (int y = 0 ; y < h ; y++){
+            for (int x = 0 ; x < w ; x++){
+                int r = 0, g = 0, b = 0;
+                for (int i = -radius ; i <= radius ; i++){
+                    int p = src[y * w + Math.min(w - 1, Math.max(0, x + i))];
+                    int weight = radius + 1 - Math.abs(i);
+                    r += ((p >> 16) & 0xff) * weight;
+                    g += ((p >> 8) & 0xff) * weight;
+                    b += (p & 0xff) * weight;
+                }
+                int index = (y * w + x) * 3;
+                mid[index] = r / divSum;
+                mid[index + 1] = g / divSum;
+                mid[index + 2] = b / divSum;
+            }
+        }
+        int[] result = new int[w * h];
+        for (int y = 0 ; y < h ; y++){
+            for (int x = 0 ; x < w ; x++){
+                int r = 0, g = 0, b = 0;
+                for (int i = -radius ; i <= radius ; i++){
+                    int index = (Math.min(h - 1, Math.max(0, y + i)) * w + x) * 3;
+                    int weight = radius + 1 - Math.abs(i);
+                    r += mid[index] * weight;
+                    g += mid[index + 1] * weight;
+                    b += mid[index + 2] * weight;
+                }
+                result[y * w + x] = (src[y * w + x] & 0xff000000) | ((r / divSum) << 16) | ((g / divSum) << 8) | (b / divSum);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param threads 0:原blurByJava, 大于0:分段并行blurByJava
+     * @return ROUNDS次总耗时(ms)
+     */
+    private long measure(int threads) {
+        for (int i = 0 ; i < WARM_UP ; i++){
+            blur(threads).recycle();
+        }
+        long start = System.nanoTime();
+        for (int i = 0 ; i < ROUNDS ; i++){
+            blur(threads).recycle();
+        }
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    private Bitmap blur(int threads) {
+        return threads <= 0 ? BlurUtils.blurByJava(source, RADIUS, false) : BlurUtils.blurByJava(source, RADIUS, false, threads);
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+
+package sviolet.turquoise.x.async.taskqueue;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TQueue超时调度测试(10000个设置了超时的任务), 耗时输出到logcat<br/>
+ * <br/>
+ * testTimeoutFiresAtDeadline: 超时在到期时触发, 不提前, 延迟不超过TOLERANCE<br/>
+ * testCanceledTimeoutNeverFires: 已取消的超时(超过清理阈值)在到期后也不触发<br/>
+ * testTaskTimeout: 执行超时的TTask被取消<br/>
+ * testScheduleAndCancel: 超时计时器的创建+取消, 原实现(每个任务一个Timer, 即一个线程)与TQueue共享调度器对比<br/>
+ * testTimedTasks: 10000个设置了超时的TTask经TQueue执行完毕的总耗时, 且没有任务因超时被取消<br/>
+ *
+ * @author S.Violet
+ */
+public class TQueueTimeoutBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "TQueueTimeoutBenchmark";
+
+    private static final int TASKS = 10000;
+    private static final long TIMEOUT = 10000L;
+    private static final int CONCURRENCY = 8;
+    //超时触发允许的延迟
+    private static final long TOLERANCE = 200L;
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    public void testTimeoutFiresAtDeadline() throws InterruptedException {
+        final int count = 50;
+        final long[] deadlines = new long[count];
+        final long[] fired = new long[count];
+        final CountDownLatch latch = new CountDownLatch(count);
+        TQueue queue = new TQueue(false, CONCURRENCY);
+        try {
+            for (int i = 0 ; i < count ; i++){
+                final int index = i;
+                long timeout = 100L + i * 10L;
+                deadlines[i] = SystemClock.uptimeMillis() + timeout;
+                assertNotNull(queue.ttask_scheduleTimeout(new Runnable() {
+                    @Override
+                    public void run() {
+                        fired[index] = SystemClock.uptimeMillis();
+                        latch.countDown();
+                    }
+                }, timeout));
+            }
+            assertTrue("timeouts not fired in 10s, remain:" + latch.getCount(), latch.await(10, TimeUnit.SECONDS));
+            for (int i = 0 ; i < count ; i++){
+                assertTrue("timeout " + i + " fired " + (deadlines[i] - fired[i]) + " ms early", fired[i] >= deadlines[i]);
+                assertTrue("timeout " + i + " fired " + (fired[i] - deadlines[i]) + " ms late", fired[i] - deadlines[i] <= TOLERANCE);
+            }
+        } finally {
+            queue.destroy();
+        }
+    }
+
+    public void testCanceledTimeoutNeverFires() throws InterruptedException {
+        final AtomicInteger fired = new AtomicInteger(0);
+        Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        TQueue queue = new TQueue(false, CONCURRENCY);
+        try {
+            //数量超过清理阈值, 覆盖purge
+            for (int i = 0 ; i < TASKS ; i++){
+                ScheduledFuture<?> future = queue.ttask_scheduleTimeout(timeout, 200L);
+                assertNotNull(future);
+                queue.ttask_cancelTimeout(future);
+                assertTrue(future.isCancelled());
+            }
+            //晚于所有已取消超时到期, 它触发时已取消的超时都已过期
+            final CountDownLatch sentinel = new CountDownLatch(1);
+            queue.ttask_scheduleTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    sentinel.countDown();
+                }
+            }, 200L + TOLERANCE);
+            assertTrue("sentinel not fired in 10s", sentinel.await(10, TimeUnit.SECONDS));
+            assertEquals("canceled timeouts fired", 0, fired.get());
+        } finally {
+            queue.destroy();
+        }
+    }
+
+    public void testTaskTimeout() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] canceled = new boolean[1];
+        TQueue queue = new TQueue(false, CONCURRENCY);
+        try {
+            TTask task = new TTask() {
+                @Override
+                public void onPreExecute(Object params) {
+                }
+
+                @Override
+                public Object doInBackground(Object params) {
+                    //执行时间远超超时设置
+                    SystemClock.sleep(1000L);
+                    return params;
+                }
+
+                @Override
+                public void onPostExecute(Object result, boolean isCancel) {
+                    canceled[0] = isCancel;
+                    latch.countDown();
+                }
+            };
+            task.setTimeOut(200L);
+            queue.put("timeout", task);
+            assertTrue("task not finished in 10s", latch.await(10, TimeUnit.SECONDS));
+            assertTrue("task not canceled by timeout", canceled[0]);
+        } finally {
+            queue.destroy();
+        }
+    }
+
+    public void testScheduleAndCancel() {
+        //原实现: TTask.resetTimeOutTimer/cancelTimeOutTimer
+        long start = System.nanoTime();
+        for (int i = 0 ; i < TASKS ; i++){
+            Timer timer = new Timer();
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                }
+            }, TIMEOUT);
+            timer.cancel();
+        }
+        long original = System.nanoTime() - start;
+
+        //共享调度器
+        TQueue queue = new TQueue(false, CONCURRENCY);
+        start = System.nanoTime();
+        for (int i = 0 ; i < TASKS ; i++){
+            ScheduledFuture<?> future = queue.ttask_scheduleTimeout(NOTHING, TIMEOUT);
+            queue.ttask_cancelTimeout(future);
+        }
+        long shared = System.nanoTime() - start;
+        queue.destroy();
+
+        Log.i(TAG, TASKS + " timeouts scheduled and canceled, original(Timer per task): " + original / 1000000L +
+                " ms, shared scheduler: " + shared / 1000000L + " ms");
+    }
+
+    public void testTimedTasks() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(TASKS);
+        final AtomicInteger canceled = new AtomicInteger(0);
+        TQueue queue = new TQueue(false, CONCURRENCY);
+
+        long start = System.nanoTime();
+        for (int i = 0 ; i < TASKS ; i++){
+            TTask task = new TTask() {
+                @Override
+                public void onPreExecute(Object params) {
+                }
+
+                @Override
+                public Object doInBackground(Object params) {
+                    return params;
+                }
+
+                @Override
+                public void onPostExecute(Object result, boolean isCancel) {
+                    if (isCancel){
+                        canceled.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            };
+            task.setTimeOut(TIMEOUT);
+            queue.put(String.valueOf(i), task);
+        }
+        boolean finished = latch.await(60, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        queue.destroy();
+
+        assertTrue("timed tasks not finished in 60s, remain:" + latch.getCount(), finished);
+        //执行远快于超时, 超时计时都已取消
+        assertEquals(0, canceled.get());
+        Log.i(TAG, TASKS + " timed tasks finished in " + elapsed / 1000000L + " ms, " +
+                TASKS * 1000000000L / elapsed + " tasks/s");
+    }
+
+}
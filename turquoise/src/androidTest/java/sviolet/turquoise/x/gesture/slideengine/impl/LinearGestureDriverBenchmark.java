@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+
+package sviolet.turquoise.x.gesture.slideengine.impl;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.MotionEvent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import sviolet.turquoise.x.gesture.slideengine.abs.GestureDriver;
+import sviolet.turquoise.x.gesture.slideengine.abs.SlideEngine;
+
+/**
+ * LinearGestureDriver测试: 绑定一个记录输出的SlideEngine, 设置触摸区域和永久触摸区域, 在主线程中模拟ViewGroup分发手势<br/>
+ * <br/>
+ * testVelocity: 匀速手势, 校验输出给引擎的速度<br/>
+ * testStaticTouchAreaLongPress: 在永久触摸区域按住, 校验长按(主线程Handler计时)触发, 且抬起时不再触发点击<br/>
+ * testEventsPerSecond: 经过永久触摸区域/速度计算/驱动引擎的完整路径, 统计每秒处理的事件数, 结果输出到logcat<br/>
+ *
+ * @author S.Violet
+ */
+public class LinearGestureDriverBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "LinearGestureDriverBenchmark";
+
+    private static final int MOVES_PER_GESTURE = 100;
+    private static final float STEP = 5f;
+    private static final long INTERVAL = 16L;
+    //匀速手势的速度(px/s)
+    private static final float EXPECTED_VELOCITY = STEP * 1000f / INTERVAL;
+    private static final float START = 10f;
+
+    private static final int WARM_UP_GESTURES = 200;
+    private static final int GESTURES = 5000;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private LinearGestureDriver driver;
+    private RecordEngine engine;
+    private MotionEvent[] events;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                driver = new LinearGestureDriver(getContext());
+                driver.setOrientation(LinearGestureDriver.ORIENTATION_HORIZONTAL);
+                driver.setTouchArea(LinearGestureDriver.TOUCH_AREA_MODE_VALID, 0, 100000, 0, 100000);
+                //按下点在永久触摸区域内
+                driver.setStaticTouchArea(true, 0, 100, 0, 100);
+                engine = new RecordEngine();
+                driver.bind(engine);
+            }
+        });
+        //一次手势: DOWN + MOVE * n + UP, 事件预先生成, 不计入耗时
+        long downTime = SystemClock.uptimeMillis();
+        events = new MotionEvent[MOVES_PER_GESTURE + 2];
+        events[0] = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, START, START, 0);
+        for (int i = 1 ; i <= MOVES_PER_GESTURE ; i++){
+            events[i] = MotionEvent.obtain(downTime, downTime + i * INTERVAL, MotionEvent.ACTION_MOVE, START + i * STEP, START, 0);
+        }
+        events[events.length - 1] = MotionEvent.obtain(downTime, downTime + MOVES_PER_GESTURE * INTERVAL, MotionEvent.ACTION_UP, START + MOVES_PER_GESTURE * STEP, START, 0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                driver.destroy();
+            }
+        });
+        for (MotionEvent event : events) {
+            event.recycle();
+        }
+        events = null;
+        super.tearDown();
+    }
+
+    public void testVelocity() {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(events);
+            }
+        });
+        assertTrue("engine not driven", engine.driveCount > 0);
+        assertEquals(1, engine.holdCount);
+        assertEquals(1, engine.escapedTouchCount);
+        assertEquals(EXPECTED_VELOCITY, engine.lastDriveVelocity, EXPECTED_VELOCITY * 0.1f);
+        assertEquals(EXPECTED_VELOCITY, engine.releaseVelocity, EXPECTED_VELOCITY * 0.1f);
+        //滑动后不是点击
+        assertEquals(0, engine.clickCount);
+        assertEquals(0, engine.longPressCount);
+        assertEquals(LinearGestureDriver.STATE_RELEASE, driver.getState());
+    }
+
+    public void testStaticTouchAreaLongPress() throws InterruptedException {
+        final long downTime = SystemClock.uptimeMillis();
+        final MotionEvent down = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, START, START, 0);
+        final MotionEvent up = MotionEvent.obtain(downTime, downTime + 3000L, MotionEvent.ACTION_UP, START, START, 0);
+        try {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch(new MotionEvent[]{down});
+                }
+            });
+            assertEquals(1, engine.escapedTouchCount);
+            //长按由主线程Handler计时(2000ms)
+            assertTrue("long press not triggered", engine.longPressLatch.await(5, TimeUnit.SECONDS));
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    driver.onTouchEvent(up);
+                }
+            });
+            assertEquals(1, engine.longPressCount);
+            //长按后抬起不触发点击
+            assertEquals(0, engine.clickCount);
+        } finally {
+            down.recycle();
+            up.recycle();
+        }
+    }
+
+    public void testEventsPerSecond() {
+        final long[] elapsed = new long[1];
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0 ; i < WARM_UP_GESTURES ; i++){
+                    dispatch(events);
+                }
+                engine.reset();
+                long start = System.nanoTime();
+                for (int i = 0 ; i < GESTURES ; i++){
+                    dispatch(events);
+                }
+                elapsed[0] = System.nanoTime() - start;
+            }
+        });
+
+        //每次手势都完整地经过了永久触摸区域/驱动/释放
+        assertEquals(GESTURES, engine.escapedTouchCount);
+        assertEquals(GESTURES, engine.holdCount);
+        assertEquals(GESTURES, engine.releaseCount);
+        assertTrue(engine.driveCount >= GESTURES);
+        assertEquals(EXPECTED_VELOCITY, engine.releaseVelocity, EXPECTED_VELOCITY * 0.1f);
+
+        long total = (long) GESTURES * events.length;
+        Log.i(TAG, total + " events in " + elapsed[0] / 1000000L + " ms, " + total * 1000000000L / elapsed[0] + " events/s");
+    }
+
+    /**
+     * 同没有子View处理事件的ViewGroup: DOWN先onInterceptTouchEvent再onTouchEvent, onTouchEvent消费DOWN后, 后续事件直接交给onTouchEvent
+     */
+    private void dispatch(MotionEvent[] events) {
+        boolean consumed = false;
+        for (MotionEvent event : events) {
+            if (event.getAction() == MotionEvent.ACTION_DOWN){
+                driver.onInterceptTouchEvent(event);
+                consumed = driver.onTouchEvent(event);
+            } else if (consumed){
+                driver.onTouchEvent(event);
+            }
+        }
+    }
+
+    private void runOnMainSync(final Runnable runnable) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Throwable[] error = new Throwable[1];
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    error[0] = t;
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        try {
+            assertTrue("main thread timeout", latch.await(60, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (error[0] != null){
+            throw new RuntimeException(error[0]);
+        }
+    }
+
+    /**
+     * 记录手势驱动输出的引擎(只在主线程访问)
+     */
+    private static class RecordEngine implements SlideEngine {
+
+        private int driveCount;
+        private int holdCount;
+        private int releaseCount;
+        private int escapedTouchCount;
+        private int clickCount;
+        private int longPressCount;
+        private int lastDriveVelocity;
+        private int releaseVelocity;
+        private final CountDownLatch longPressLatch = new CountDownLatch(1);
+
+        private void reset() {
+            driveCount = 0;
+            holdCount = 0;
+            releaseCount = 0;
+            escapedTouchCount = 0;
+            clickCount = 0;
+            longPressCount = 0;
+        }
+
+        @Override
+        public void bind(GestureDriver gestureDriver) {
+            gestureDriver.onBind(this);
+        }
+
+        @Override
+        public void onBind(GestureDriver gestureDriver) {
+        }
+
+        @Override
+        public int inputMode() {
+            return INPUT_MODE_1D;
+        }
+
+        @Override
+        public void onGestureDrive(int x, int y, int offsetX, int offsetY, int velocityX, int velocityY) {
+            driveCount++;
+            lastDriveVelocity = velocityX;
+        }
+
+        @Override
+        public void onGestureDrive(int curr, int offset, int velocity) {
+            driveCount++;
+            lastDriveVelocity = velocity;
+        }
+
+        @Override
+        public void onGestureHold() {
+            holdCount++;
+        }
+
+        @Override
+        public void onGestureRelease(int velocity) {
+            releaseCount++;
+            releaseVelocity = velocity;
+        }
+
+        @Override
+        public void onStaticTouchAreaCaptureEscapedTouch() {
+            escapedTouchCount++;
+        }
+
+        @Override
+        public void onStaticTouchAreaClick() {
+            clickCount++;
+        }
+
+        @Override
+        public void onStaticTouchAreaLongPress() {
+            longPressCount++;
+            longPressLatch.countDown();
+        }
+
+        @Override
+        public boolean isSliding() {
+            return false;
+        }
+
+        @Override
+        public void addInnerEngine(SlideEngine slideEngine) {
+        }
+
+        @Override
+        public void setParentEngine(SlideEngine slideEngine) {
+        }
+
+        @Override
+        public SlideEngine getParentEngine() {
+            return null;
+        }
+
+        @Override
+        public GestureDriver getGestureDriver() {
+            return null;
+        }
+
+        @Override
+        public void skipIntercepted() {
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.ui.view.text;
+
+/**
+ * 刮开区域覆盖网格(ScrapeTextView用)<br/>
+ * <br/>
+ * 将控件划分为粗粒度的网格, 根据笔画线段(带宽度)增量地标记被刮开的格子, 刮开比例 = 刮开的格子数 / 格子总数.
+ * 每次更新的开销只与笔画长度有关, 无需读取像素. 以格子中心点是否在笔画范围内判断格子是否被刮开, 结果为近似值.<br/>
+ * <br/>
+ * 非线程安全, 在UI线程中使用<br/>
+ *
+ * @author S.Violet
+ */
+class ScrapeCoverageGrid {
+
+    private static final int MIN_CELL_SIZE = 2;
+    private static final int MAX_CELL_SIZE = 32;
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final boolean[] cells;
+    private int scrapedCount = 0;
+
+    /**
+     * @param width 控件宽度
+     * @param height 控件高度
+     * @param strokeWidth 笔画宽度, 用于决定格子尺寸(笔画宽度的1/4)
+     */
+    ScrapeCoverageGrid(int width, int height, int strokeWidth) {
+        this.cellSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, strokeWidth / 4));
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.cells = new boolean[columns * rows];
+    }
+
+    /**
+     * 标记被一段笔画刮开的格子
+     * @param startX 起点x
+     * @param startY 起点y
+     * @param endX 终点x
+     * @param endY 终点y
+     * @param radius 笔画半径(笔画宽度的一半)
+     */
+    void scrape(float startX, float startY, float endX, float endY, float radius) {
+        //笔画的包围盒范围内的格子
+        int left = Math.max(0, (int) ((Math.min(startX, endX) - radius) / cellSize));
+        int right = Math.min(columns - 1, (int) ((Math.max(startX, endX) + radius) / cellSize));
+        int top = Math.max(0, (int) ((Math.min(startY, endY) - radius) / cellSize));
+        int bottom = Math.min(rows - 1, (int) ((Math.max(startY, endY) + radius) / cellSize));
+        if (left > right || top > bottom) {
+            return;
+        }
+        float dx = endX - startX;
+        float dy = endY - startY;
+        float lengthSquare = dx * dx + dy * dy;
+        float radiusSquare = radius * radius;
+        float halfCell = cellSize / 2f;
+        for (int row = top ; row <= bottom ; row++) {
+            float centerY = row * cellSize + halfCell;
+            int index = row * columns + left;
+            for (int column = left ; column <= right ; column++, index++) {
+                if (cells[index]) {
+                    continue;
+                }
+                float centerX = column * cellSize + halfCell;
+                //格子中心到线段的最近点
+                float t = lengthSquare > 0 ? ((centerX - startX) * dx + (centerY - startY) * dy) / lengthSquare : 0;
+                t = t < 0 ? 0 : (t > 1 ? 1 : t);
+                float distanceX = centerX - (startX + t * dx);
+                float distanceY = centerY - (startY + t * dy);
+                if (distanceX * distanceX + distanceY * distanceY <= radiusSquare) {
+                    cells[index] = true;
+                    scrapedCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 刮开比例 0~1
+     */
+    double getPercent() {
+        return scrapedCount / (double) cells.length;
+    }
+
+    /**
+     * 重置
+     */
+    void clear() {
+        for (int i = 0 ; i < cells.length ; i++) {
+            cells[i] = false;
+        }
+        scrapedCount = 0;
+    }
+
+}
@@ -84,6 +84,7 @@ import sviolet.turquoise.R;
  *  方法:<br/>
  * 	reset(String):重置覆盖面/内容<br/>
  *	getPercent():获得刮开部分的比例<br/>
+ *	setExactPercentEnabled(boolean):精确计算刮开比例(读取全部像素, 开销大)<br/>
  *	destroy():销毁控件<br/>
  *
  * @author S.Violet ()
@@ -116,6 +117,8 @@ public class ScrapeTextView extends TextView {
 	private MyThread mThread;
 	private int messageCount;
 	private int[] pixels;
+	private ScrapeCoverageGrid coverageGrid;//刮开区域覆盖网格(增量计算刮开比例)
+	private boolean exactPercentEnabled = false;//精确计算刮开比例(读取全部像素)
 	
 	private int color;//覆盖面颜色
 	private int strokeWidth;//画笔宽度
@@ -160,6 +163,17 @@ public class ScrapeTextView extends TextView {
 		return scrapePercent;
 	}
 
+	/**
+	 * 设置是否精确计算刮开比例<br/>
+	 * false(默认):根据笔画增量地更新覆盖网格计算刮开比例, 开销只与笔画长度有关, 结果为近似值, 覆盖面图片本身的透明区域不计入<br/>
+	 * true:每次笔画后在子线程读取覆盖面全部像素, 统计透明像素的比例, 开销与控件面积有关<br/>
+	 *
+	 * @param exactPercentEnabled 默认false
+	 */
+	public void setExactPercentEnabled(boolean exactPercentEnabled){
+		this.exactPercentEnabled = exactPercentEnabled;
+	}
+
 	public ScrapeTextView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 		mContext = context;
@@ -179,6 +193,9 @@ public class ScrapeTextView extends TextView {
 		hasCallback = false;
 		scrapePercent = 0;
 		messageCount = 0;
+		if(coverageGrid != null){
+			coverageGrid.clear();
+		}
 		
 		if(oBitmap == null){
 			tempCanvas.drawColor(color);
@@ -281,6 +298,9 @@ public class ScrapeTextView extends TextView {
 			mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_4444);
 			tempCanvas = new Canvas();
 			tempCanvas.setBitmap(mBitmap);
+			if(coverageGrid == null) {
+				coverageGrid = new ScrapeCoverageGrid(width, height, strokeWidth);
+			}
 		}
 	}
 
@@ -326,6 +346,10 @@ public class ScrapeTextView extends TextView {
 		y = event.getY();
 		mPath.quadTo((x + ox) / 2, (y + oy) / 2, x, y);//二次贝塞尔，实现平滑曲线；oX,oY为操作点 x,y为终点 
 		tempCanvas.drawPath(mPath, mPaint);
+		//控制点为中点, 本段笔画为(ox, oy)至(x, y)的线段
+		if(coverageGrid != null) {
+			coverageGrid.scrape(ox, oy, x, y, strokeWidth / 2f);
+		}
 		ox = x;
 		oy = y;
 		invalidate();//刷新
@@ -347,6 +371,15 @@ public class ScrapeTextView extends TextView {
 	 * 计算揭开的百分比
 	 */
 	private void calculateScale() {
+		if(!exactPercentEnabled && coverageGrid != null){
+			//根据覆盖网格计算
+			scrapePercent = coverageGrid.getPercent();
+			checkPercentCallback();
+			return;
+		}
+		if(calculateHandler == null){
+			return;
+		}
 		Message msg = calculateHandler.obtainMessage(0);
 		msg.obj = ++messageCount;
 		calculateHandler.sendMessage(msg);
@@ -393,11 +426,7 @@ public class ScrapeTextView extends TextView {
 					}
 					scrapePercent = num / (double) sum;
 
-					if(!hasCallback && onPercentListener != null) {
-                        if (scrapePercent >= callbackPercent) {
-                            mHandler.sendEmptyMessage(MyHandler.HANDLER_PERCENT_CALLBACK);
-                        }
-                    }
+					checkPercentCallback();
 					return true;
 				}
 			});
@@ -407,6 +436,18 @@ public class ScrapeTextView extends TextView {
 		}
 	}
 
+	/**
+	 * 刮开比例达到指定值时回调
+	 */
+	private void checkPercentCallback(){
+		if(!hasCallback && onPercentListener != null) {
+			if (scrapePercent >= callbackPercent) {
+				hasCallback = true;
+				mHandler.sendEmptyMessage(MyHandler.HANDLER_PERCENT_CALLBACK);
+			}
+		}
+	}
+
 	private final MyHandler mHandler = new MyHandler(Looper.getMainLooper(), this);
 
 	private static class MyHandler extends WeakHandler<ScrapeTextView>{
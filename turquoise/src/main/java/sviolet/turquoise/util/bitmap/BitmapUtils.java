@@ -19,6 +19,7 @@
 
 package sviolet.turquoise.util.bitmap;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.AssetManager;
@@ -36,6 +37,7 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
+import android.os.Build;
 import android.text.TextPaint;
 import android.util.Base64;
 import android.view.View;
@@ -48,6 +50,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidParameterException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import sviolet.thistle.util.concurrent.ThreadPoolExecutorUtils;
+
+import sviolet.turquoise.util.droid.DeviceUtils;
 
 /**
  * <p>Bitmap工具</p>
@@ -155,6 +163,21 @@ public class BitmapUtils {
      * @param quality       图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
      */
     public static Bitmap decodeFromAssets(AssetManager assetManager, String assetsPath, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality) {
+        return decodeFromAssets(assetManager, assetsPath, reqWidth, reqHeight, bitmapConfig, quality, null);
+    }
+
+    /**
+     * 从assets中解码图片, 并尝试复用Bitmap内存(API19+)
+     *
+     * @param assetManager  assetManager
+     * @param assetsPath    assets中的路径
+     * @param reqWidth      需求宽度 px
+     * @param reqHeight     需求高度 px
+     * @param bitmapConfig  颜色深度
+     * @param quality       图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
+     * @param inBitmapProvider 提供可复用的Bitmap(inBitmap), 可为空
+     */
+    public static Bitmap decodeFromAssets(AssetManager assetManager, String assetsPath, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality, InBitmapProvider inBitmapProvider) {
         if (assetManager == null) {
             throw new IllegalArgumentException("assetManager is null");
         }
@@ -180,6 +203,19 @@ public class BitmapUtils {
         options.inJustDecodeBounds = false;//解码模式
         options.inPreferredConfig = bitmapConfig;//颜色深度
 
+        if (prepareInBitmap(options, inBitmapProvider)) {
+            Bitmap bitmap = decodeFromAssets(assetManager, assetsPath, options);
+            if (bitmap != null) {
+                return bitmap;
+            }
+            //复用失败, 重新解码
+            options.inBitmap = null;
+        }
+        return decodeFromAssets(assetManager, assetsPath, options);
+    }
+
+    private static Bitmap decodeFromAssets(AssetManager assetManager, String assetsPath, BitmapFactory.Options options) {
+        InputStream inputStream = null;
         try {
             inputStream = assetManager.open(assetsPath);
             return BitmapFactory.decodeStream(inputStream, null, options);
@@ -231,12 +267,42 @@ public class BitmapUtils {
      * @param quality 图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
      */
     public static Bitmap decodeFromFile(String path, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality) {
+        return decodeFromFile(path, reqWidth, reqHeight, bitmapConfig, quality, null);
+    }
+
+    /**
+     * 从文件中解码图片(节省内存), 并尝试复用Bitmap内存(API19+)<br/>
+     * <Br/>
+     * 需求尺寸(reqWidth/reqHeight)参数用于节省内存消耗,请根据界面展示所需尺寸设置(像素px).图片解码时会
+     * 根据需求尺寸整数倍缩小,且长宽保持原图比例,解码后的Bitmap尺寸通常不等于需求尺寸.设置为0不缩小图片.<Br/>
+     *
+     * @param path      文件路径
+     * @param reqWidth  需求宽度 px
+     * @param reqHeight 需求高度 px
+     * @param bitmapConfig 颜色深度
+     * @param quality 图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
+     * @param inBitmapProvider 提供可复用的Bitmap(inBitmap), 可为空
+     */
+    public static Bitmap decodeFromFile(String path, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality, InBitmapProvider inBitmapProvider) {
         final BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;//仅计算参数, 不解码
         BitmapFactory.decodeFile(path, options);
         options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight, quality);//缩放因子(整数倍)
         options.inJustDecodeBounds = false;//解码模式
         options.inPreferredConfig = bitmapConfig;//颜色深度
+        if (prepareInBitmap(options, inBitmapProvider)) {
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeFile(path, options);
+            } catch (IllegalArgumentException e) {
+                bitmap = null;
+            }
+            if (bitmap != null) {
+                return bitmap;
+            }
+            //复用失败, 重新解码
+            options.inBitmap = null;
+        }
         return BitmapFactory.decodeFile(path, options);
     }
 
@@ -276,15 +342,103 @@ public class BitmapUtils {
      * @param quality 图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
      */
     public static Bitmap decodeFromByteArray(byte[] data, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality) {
+        return decodeFromByteArray(data, reqWidth, reqHeight, bitmapConfig, quality, null);
+    }
+
+    /**
+     * 将二进制数据解码为图片(节省内存), 并尝试复用Bitmap内存(API19+)<br/>
+     * <Br/>
+     * 需求尺寸(reqWidth/reqHeight)参数用于节省内存消耗,请根据界面展示所需尺寸设置(像素px).图片解码时会
+     * 根据需求尺寸整数倍缩小,且长宽保持原图比例,解码后的Bitmap尺寸通常不等于需求尺寸.设置为0不缩小图片.<Br/>
+     *
+     * @param data      二进制数据
+     * @param reqWidth  需求宽度 px
+     * @param reqHeight 需求高度 px
+     * @param bitmapConfig 颜色深度
+     * @param quality 图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
+     * @param inBitmapProvider 提供可复用的Bitmap(inBitmap), 可为空
+     */
+    public static Bitmap decodeFromByteArray(byte[] data, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality, InBitmapProvider inBitmapProvider) {
         final BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
         BitmapFactory.decodeByteArray(data, 0, data.length, options);
         options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight, quality);
         options.inJustDecodeBounds = false;
         options.inPreferredConfig = bitmapConfig;//颜色深度
+        if (prepareInBitmap(options, inBitmapProvider)) {
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            } catch (IllegalArgumentException e) {
+                bitmap = null;
+            }
+            if (bitmap != null) {
+                return bitmap;
+            }
+            //复用失败, 重新解码
+            options.inBitmap = null;
+        }
         return BitmapFactory.decodeByteArray(data, 0, data.length, options);
     }
 
+    /**
+     * 将二进制数据的一部分解码为图片(节省内存), 无需拷贝数据<br/>
+     * <Br/>
+     * 可用于解码未下载完整的数据(渐进式JPEG/部分图像), 数据不完整时可能返回null<Br/>
+     *
+     * @param data      二进制数据
+     * @param offset    数据起始位置
+     * @param length    数据长度
+     * @param reqWidth  需求宽度 px
+     * @param reqHeight 需求高度 px
+     * @param bitmapConfig 颜色深度
+     * @param quality 图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
+     */
+    public static Bitmap decodeFromByteArray(byte[] data, int offset, int length, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality) {
+        return decodeFromByteArray(data, offset, length, reqWidth, reqHeight, bitmapConfig, quality, null);
+    }
+
+    /**
+     * 将二进制数据的一部分解码为图片(节省内存), 无需拷贝数据, 可复用Bitmap<br/>
+     * <Br/>
+     * 可用于解码未下载完整的数据(渐进式JPEG/部分图像), 数据不完整时可能返回null<Br/>
+     *
+     * @param data      二进制数据
+     * @param offset    数据起始位置
+     * @param length    数据长度
+     * @param reqWidth  需求宽度 px
+     * @param reqHeight 需求高度 px
+     * @param bitmapConfig 颜色深度
+     * @param quality 图片质量, 默认InSampleQuality.MEDIUM, 若不需要缩小, 设置ORIGINAL
+     * @param inBitmapProvider 提供可复用的Bitmap(inBitmap), 可为空
+     */
+    public static Bitmap decodeFromByteArray(byte[] data, int offset, int length, int reqWidth, int reqHeight, Bitmap.Config bitmapConfig, InSampleQuality quality, InBitmapProvider inBitmapProvider) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, offset, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            //无法解析图片头
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight, quality);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = bitmapConfig;//颜色深度
+        if (prepareInBitmap(options, inBitmapProvider)) {
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeByteArray(data, offset, length, options);
+            } catch (IllegalArgumentException e) {
+                bitmap = null;
+            }
+            if (bitmap != null) {
+                return bitmap;
+            }
+            //复用失败, 重新解码
+            options.inBitmap = null;
+        }
+        return BitmapFactory.decodeByteArray(data, offset, length, options);
+    }
+
     /**
      * 将Base64数据解码为图片
      *
@@ -897,6 +1051,18 @@ public class BitmapUtils {
      * @param filter 变色过滤器
      */
     public static Bitmap discolor(Bitmap bitmap, boolean recycle, DiscolorFilter filter){
+        return discolor(bitmap, recycle, filter, 1);
+    }
+
+    /**
+     * 图片变色, 请谨慎处理大图, 可能会OOM, 请放在子线程处理<br/>
+     * 按行批量读取像素(getPixels)至数组, 过滤后批量写回(setPixels), 可按行分段多线程处理<br/>
+     * @param bitmap bitmap
+     * @param recycle true:回收原Bitmap
+     * @param filter 变色过滤器, 多线程处理时必须线程安全, 实现{@link BatchDiscolorFilter}可批量处理像素
+     * @param threads 线程数, 1:在当前线程处理, 大于1:按行分段, 在当前线程和线程池中并行处理
+     */
+    public static Bitmap discolor(Bitmap bitmap, boolean recycle, final DiscolorFilter filter, int threads){
         if (bitmap == null){
             return null;
         }
@@ -906,19 +1072,91 @@ public class BitmapUtils {
         if (filter == null){
             throw new InvalidParameterException("filter can not be null");
         }
-        Bitmap result = copy(bitmap, recycle);
-        for (int x = 0 ; x < result.getWidth() ; x++ ){
-            for (int y = 0 ; y < result.getHeight() ; y++){
-                int color = result.getPixel(x, y);
-                int resultColor = filter.filter(color);
-                if (color != resultColor){
-                    result.setPixel(x, y, resultColor);
+        final Bitmap result = copy(bitmap, recycle);
+        final int height = result.getHeight();
+        //每个线程至少处理DISCOLOR_MIN_ROWS_PER_THREAD行
+        threads = Math.max(1, Math.min(threads, height / DISCOLOR_MIN_ROWS_PER_THREAD));
+        if (threads <= 1){
+            discolorRows(result, filter, 0, height);
+            return result;
+        }
+        //按行分段, 第一段在当前线程处理, 其余在线程池处理
+        int band = (height + threads - 1) / threads;
+        final CountDownLatch latch = new CountDownLatch(threads - 1);
+        final Throwable[] error = new Throwable[1];
+        for (int i = 1 ; i < threads ; i++){
+            final int startY = i * band;
+            final int endY = Math.min(height, startY + band);
+            DiscolorPool.INSTANCE.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        discolorRows(result, filter, startY, endY);
+                    } catch (Throwable t) {
+                        error[0] = t;
+                    } finally {
+                        latch.countDown();
+                    }
                 }
-            }
+            });
+        }
+        discolorRows(result, filter, 0, Math.min(height, band));
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("[BitmapUtils]discolor interrupted", e);
+        }
+        if (error[0] != null){
+            throw new RuntimeException("[BitmapUtils]discolor failed", error[0]);
         }
         return result;
     }
 
+    /**
+     * 每次批量处理的像素数(约), 决定行缓冲大小
+     */
+    private static final int DISCOLOR_BATCH_PIXELS = 64 * 1024;
+
+    /**
+     * 多线程变色时, 每个线程处理的最少行数
+     */
+    private static final int DISCOLOR_MIN_ROWS_PER_THREAD = 64;
+
+    /**
+     * 按行批量变色, 行缓冲在该范围内复用
+     * @param startY 起始行(包含)
+     * @param endY 结束行(不包含)
+     */
+    private static void discolorRows(Bitmap bitmap, DiscolorFilter filter, int startY, int endY){
+        final int width = bitmap.getWidth();
+        if (width <= 0 || startY >= endY){
+            return;
+        }
+        final int rows = Math.max(1, Math.min(endY - startY, DISCOLOR_BATCH_PIXELS / width));
+        final int[] pixels = new int[width * rows];
+        final BatchDiscolorFilter batchFilter = filter instanceof BatchDiscolorFilter ? (BatchDiscolorFilter) filter : null;
+        for (int y = startY ; y < endY ; y += rows){
+            int count = Math.min(rows, endY - y);
+            int length = width * count;
+            bitmap.getPixels(pixels, 0, width, 0, y, width, count);
+            if (batchFilter != null){
+                batchFilter.filter(pixels, 0, length);
+            } else {
+                for (int i = 0 ; i < length ; i++){
+                    pixels[i] = filter.filter(pixels[i]);
+                }
+            }
+            bitmap.setPixels(pixels, 0, width, 0, y, width, count);
+        }
+    }
+
+    /**
+     * 多线程变色用的线程池
+     */
+    private static class DiscolorPool {
+        private static final ExecutorService INSTANCE = ThreadPoolExecutorUtils.createCached(0, Integer.MAX_VALUE, 60L, "sva-bu-discolor-%d");
+    }
+
     /**********************************************
      * interface
      */
@@ -932,6 +1170,24 @@ public class BitmapUtils {
         void onSaveFailed(Throwable e);
     }
 
+    /**
+     * 可复用Bitmap的提供者(BitmapFactory.Options.inBitmap), 例如Bitmap复用池
+     */
+    public interface InBitmapProvider {
+
+        /**
+         * 获取可复用的Bitmap, 其内存(getAllocationByteCount)须不小于width * height * 每像素字节数.
+         * 若解码进该Bitmap失败, 该Bitmap会被丢弃(不会被回收).
+         *
+         * @param width 解码宽度(估算)
+         * @param height 解码高度(估算)
+         * @param config 颜色深度
+         * @return 可复用的mutable Bitmap, 没有则返回null
+         */
+        Bitmap get(int width, int height, Bitmap.Config config);
+
+    }
+
     /**
      * 变色过滤器
      */
@@ -944,6 +1200,50 @@ public class BitmapUtils {
 
     }
 
+    /**
+     * 批量变色过滤器, 一次处理一段像素数组, 结果须与逐个调用{@link DiscolorFilter#filter(int)}一致
+     */
+    public interface BatchDiscolorFilter extends DiscolorFilter {
+
+        /**
+         * @param pixels 像素数组, 将结果写回该数组
+         * @param offset 起始位置
+         * @param length 像素数
+         */
+        void filter(int[] pixels, int offset, int length);
+
+    }
+
+    /***********************************************
+     * in bitmap
+     */
+
+    /**
+     * 根据解码尺寸从复用提供者获取inBitmap, 须在计算inSampleSize之后调用. 仅API19+有效(允许复用更大的Bitmap).
+     * @return true:已设置inBitmap
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean prepareInBitmap(BitmapFactory.Options options, InBitmapProvider inBitmapProvider){
+        if (inBitmapProvider == null || DeviceUtils.getVersionSDK() < Build.VERSION_CODES.KITKAT) {
+            return false;
+        }
+        //复用的Bitmap必须是mutable的, 解码结果也设置为mutable, 以便日后复用
+        options.inMutable = true;
+        //解码器实际按2的幂缩小, 按此估算解码尺寸
+        int sampleSize = Integer.highestOneBit(options.inSampleSize > 1 ? options.inSampleSize : 1);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        Bitmap inBitmap = inBitmapProvider.get(width, height, options.inPreferredConfig);
+        if (inBitmap == null || inBitmap.isRecycled() || !inBitmap.isMutable()) {
+            return false;
+        }
+        options.inBitmap = inBitmap;
+        return true;
+    }
+
     /***********************************************
      * in sample size
      */
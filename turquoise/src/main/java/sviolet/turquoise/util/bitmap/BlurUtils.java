@@ -28,6 +28,17 @@ import android.renderscript.RenderScript;
 import android.renderscript.ScriptIntrinsicBlur;
 import android.support.annotation.RequiresApi;
 
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import sviolet.thistle.util.concurrent.ThreadPoolExecutorUtils;
+
 /**
  * 高斯模糊工具(JAVA方式, 若需要提升性能请使用JNI方式的库)
  *
@@ -36,6 +47,8 @@ import android.support.annotation.RequiresApi;
 public class BlurUtils {
 
     /**
+     * 每次调用都会创建/销毁RenderScript上下文, 频繁模糊请使用{@link RenderScriptBlurEngine}
+     *
      * @param context context
      * @param bitmap bitmap
      * @param radius radius [0, 25]
@@ -103,6 +116,8 @@ public class BlurUtils {
      *
      * Stack Blur Algorithm by Mario Klingemann <mario@quasimondo.com>
      *
+     * 需要多线程处理, 或频繁模糊时, 请使用{@link #blurByJava(Bitmap, int, boolean, int)}
+     *
      * @param bitmap bitmap
      * @param radius radius >= 1
      * @param recycle true: recycle origin bitmap
@@ -315,4 +330,422 @@ public class BlurUtils {
         return result;
     }
 
+    /**
+     * 多线程模糊时, 每个线程处理的最少行数/列数
+     */
+    private static final int BLUR_MIN_LINES_PER_THREAD = 64;
+
+    /**
+     * 缓存的dv表数量(按半径)
+     */
+    private static final int DV_TABLE_CACHE_SIZE = 4;
+
+    /**
+     * Stack Blur, 算法与{@link #blurByJava(Bitmap, int, boolean)}相同, 结果一致, 区别在于:<br/>
+     * 1.横向模糊按行分段, 纵向模糊按列分段, 在当前线程和线程池中并行处理<br/>
+     * 2.像素数组/中间结果数组在全局共享的固定大小池中复用(SoftReference), RGB三个通道打包在一个数组中, 内存占用约为原来的一半<br/>
+     * 3.dv表按半径缓存<br/>
+     * 请放在子线程处理<br/>
+     *
+     * @param bitmap bitmap
+     * @param radius radius >= 1
+     * @param recycle true: recycle origin bitmap
+     * @param threads 线程数, 1:在当前线程处理, 大于1:分段并行处理, 不超过CPU核数
+     */
+    public static Bitmap blurByJava(Bitmap bitmap, final int radius, boolean recycle, int threads) {
+        if (bitmap == null){
+            return null;
+        }
+        if (radius < 1) {
+            throw new RuntimeException("radius must >= 1");
+        }
+
+        Bitmap result = bitmap.copy(Bitmap.Config.ARGB_8888, true);
+
+        if (recycle){
+            bitmap.recycle();
+        }
+
+        final int w = result.getWidth();
+        final int h = result.getHeight();
+
+        BlurArena arena = BlurArena.obtain(w * h);
+        try {
+            final int[] pix = arena.pixels;
+            final int[] buffer = arena.buffer;
+            final int[] dv = getDvTable(radius);
+
+            result.getPixels(pix, 0, w, 0, 0, w, h);
+
+            //每个线程至少处理BLUR_MIN_LINES_PER_THREAD行(列)
+            threads = Math.min(threads, Runtime.getRuntime().availableProcessors());
+            threads = Math.max(1, Math.min(threads, Math.min(w, h) / BLUR_MIN_LINES_PER_THREAD));
+
+            if (threads <= 1){
+                int[] stack = newStack(radius);
+                blurRows(pix, buffer, w, radius, dv, stack, 0, h);
+                blurColumns(buffer, pix, w, h, radius, dv, stack, 0, w);
+            } else {
+                //横向: pix -> buffer
+                runInBands(h, threads, new BandTask() {
+                    @Override
+                    public void run(int start, int end) {
+                        blurRows(pix, buffer, w, radius, dv, newStack(radius), start, end);
+                    }
+                });
+                //纵向: buffer -> pix
+                runInBands(w, threads, new BandTask() {
+                    @Override
+                    public void run(int start, int end) {
+                        blurColumns(buffer, pix, w, h, radius, dv, newStack(radius), start, end);
+                    }
+                });
+            }
+
+            result.setPixels(pix, 0, w, 0, 0, w, h);
+        } finally {
+            BlurArena.release(arena);
+        }
+
+        return result;
+    }
+
+    /**
+     * 分段并行处理, 第一段在当前线程处理, 其余在线程池处理, 全部完成后返回
+     * @param length 总行数(列数)
+     */
+    private static void runInBands(int length, int threads, final BandTask task){
+        int band = (length + threads - 1) / threads;
+        final CountDownLatch latch = new CountDownLatch(threads - 1);
+        final Throwable[] error = new Throwable[1];
+        for (int i = 1 ; i < threads ; i++){
+            final int start = i * band;
+            final int end = Math.min(length, start + band);
+            BlurPool.INSTANCE.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run(start, end);
+                    } catch (Throwable t) {
+                        error[0] = t;
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        task.run(0, Math.min(length, band));
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("[BlurUtils]blur interrupted", e);
+        }
+        if (error[0] != null){
+            throw new RuntimeException("[BlurUtils]blur failed", error[0]);
+        }
+    }
+
+    /**
+     * 横向模糊, 处理[startY, endY)行, 结果(保留alpha, RGB打包)写入dst
+     */
+    private static void blurRows(int[] src, int[] dst, int w, int radius, int[] dv, int[] stack, int startY, int endY) {
+        int wm = w - 1;
+        int div = radius + radius + 1;
+        int r1 = radius + 1;
+        int rSum, gSum, bSum, rOutSum, gOutSum, bOutSum, rInSum, gInSum, bInSum;
+        int p, sr, sg, sb, si, rbs, stackPointer, yw;
+
+        for (int y = startY; y < endY; y++) {
+            yw = y * w;
+            rInSum = gInSum = bInSum = rOutSum = gOutSum = bOutSum = rSum = gSum = bSum = 0;
+            for (int i = -radius; i <= radius; i++) {
+                p = src[yw + Math.min(wm, Math.max(i, 0))];
+                sr = (p & 0xff0000) >> 16;
+                sg = (p & 0x00ff00) >> 8;
+                sb = (p & 0x0000ff);
+                si = (i + radius) * 3;
+                stack[si] = sr;
+                stack[si + 1] = sg;
+                stack[si + 2] = sb;
+                rbs = r1 - Math.abs(i);
+                rSum += sr * rbs;
+                gSum += sg * rbs;
+                bSum += sb * rbs;
+                if (i > 0) {
+                    rInSum += sr;
+                    gInSum += sg;
+                    bInSum += sb;
+                } else {
+                    rOutSum += sr;
+                    gOutSum += sg;
+                    bOutSum += sb;
+                }
+            }
+            stackPointer = radius;
+
+            for (int x = 0; x < w; x++) {
+
+                dst[yw + x] = (0xff000000 & src[yw + x]) | (dv[rSum] << 16) | (dv[gSum] << 8) | dv[bSum];
+
+                rSum -= rOutSum;
+                gSum -= gOutSum;
+                bSum -= bOutSum;
+
+                si = ((stackPointer - radius + div) % div) * 3;
+
+                rOutSum -= stack[si];
+                gOutSum -= stack[si + 1];
+                bOutSum -= stack[si + 2];
+
+                p = src[yw + Math.min(x + r1, wm)];
+
+                sr = (p & 0xff0000) >> 16;
+                sg = (p & 0x00ff00) >> 8;
+                sb = (p & 0x0000ff);
+                stack[si] = sr;
+                stack[si + 1] = sg;
+                stack[si + 2] = sb;
+
+                rInSum += sr;
+                gInSum += sg;
+                bInSum += sb;
+
+                rSum += rInSum;
+                gSum += gInSum;
+                bSum += bInSum;
+
+                stackPointer = (stackPointer + 1) % div;
+                si = stackPointer * 3;
+
+                rOutSum += stack[si];
+                gOutSum += stack[si + 1];
+                bOutSum += stack[si + 2];
+
+                rInSum -= stack[si];
+                gInSum -= stack[si + 1];
+                bInSum -= stack[si + 2];
+            }
+        }
+    }
+
+    /**
+     * 纵向模糊, 处理[startX, endX)列, 结果写入dst
+     */
+    private static void blurColumns(int[] src, int[] dst, int w, int h, int radius, int[] dv, int[] stack, int startX, int endX) {
+        int hm = h - 1;
+        int div = radius + radius + 1;
+        int r1 = radius + 1;
+        int rSum, gSum, bSum, rOutSum, gOutSum, bOutSum, rInSum, gInSum, bInSum;
+        int p, sr, sg, sb, si, rbs, stackPointer, yp, yi;
+
+        for (int x = startX; x < endX; x++) {
+            rInSum = gInSum = bInSum = rOutSum = gOutSum = bOutSum = rSum = gSum = bSum = 0;
+            yp = -radius * w;
+            for (int i = -radius; i <= radius; i++) {
+                p = src[Math.max(0, yp) + x];
+                sr = (p & 0xff0000) >> 16;
+                sg = (p & 0x00ff00) >> 8;
+                sb = (p & 0x0000ff);
+                si = (i + radius) * 3;
+                stack[si] = sr;
+                stack[si + 1] = sg;
+                stack[si + 2] = sb;
+
+                rbs = r1 - Math.abs(i);
+
+                rSum += sr * rbs;
+                gSum += sg * rbs;
+                bSum += sb * rbs;
+
+                if (i > 0) {
+                    rInSum += sr;
+                    gInSum += sg;
+                    bInSum += sb;
+                } else {
+                    rOutSum += sr;
+                    gOutSum += sg;
+                    bOutSum += sb;
+                }
+
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = x;
+            stackPointer = radius;
+            for (int y = 0; y < h; y++) {
+                // Preserve alpha channel
+                dst[yi] = (0xff000000 & src[yi]) | (dv[rSum] << 16) | (dv[gSum] << 8) | dv[bSum];
+
+                rSum -= rOutSum;
+                gSum -= gOutSum;
+                bSum -= bOutSum;
+
+                si = ((stackPointer - radius + div) % div) * 3;
+
+                rOutSum -= stack[si];
+                gOutSum -= stack[si + 1];
+                bOutSum -= stack[si + 2];
+
+                p = src[x + Math.min(y + r1, hm) * w];
+
+                sr = (p & 0xff0000) >> 16;
+                sg = (p & 0x00ff00) >> 8;
+                sb = (p & 0x0000ff);
+                stack[si] = sr;
+                stack[si + 1] = sg;
+                stack[si + 2] = sb;
+
+                rInSum += sr;
+                gInSum += sg;
+                bInSum += sb;
+
+                rSum += rInSum;
+                gSum += gInSum;
+                bSum += bInSum;
+
+                stackPointer = (stackPointer + 1) % div;
+                si = stackPointer * 3;
+
+                rOutSum += stack[si];
+                gOutSum += stack[si + 1];
+                bOutSum += stack[si + 2];
+
+                rInSum -= stack[si];
+                gInSum -= stack[si + 1];
+                bInSum -= stack[si + 2];
+
+                yi += w;
+            }
+        }
+    }
+
+    /**
+     * 获取dv表(按半径缓存), dv[i] = i / divSum
+     */
+    private static int[] getDvTable(int radius) {
+        synchronized (DV_TABLE_CACHE) {
+            int[] dv = DV_TABLE_CACHE.get(radius);
+            if (dv == null) {
+                int divSum = (radius + radius + 2) >> 1;
+                divSum *= divSum;
+                dv = new int[256 * divSum];
+                for (int i = 0; i < dv.length; i++) {
+                    dv[i] = (i / divSum);
+                }
+                DV_TABLE_CACHE.put(radius, dv);
+            }
+            return dv;
+        }
+    }
+
+    /**
+     * @return 长度为(radius * 2 + 1) * 3的数组, 很小, 每段分配一次
+     */
+    private static int[] newStack(int radius) {
+        return new int[(radius + radius + 1) * 3];
+    }
+
+    private static final Map<Integer, int[]> DV_TABLE_CACHE = new LinkedHashMap<Integer, int[]>(DV_TABLE_CACHE_SIZE + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+            return size() > DV_TABLE_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * 多线程模糊用的线程池
+     */
+    private static class BlurPool {
+        private static final ExecutorService INSTANCE = ThreadPoolExecutorUtils.createFixed(Runtime.getRuntime().availableProcessors(), "sva-bu-blur-%d");
+    }
+
+    private interface BandTask {
+        void run(int start, int end);
+    }
+
+    /**
+     * 模糊用的数组, 用完归还到全局共享的池中, 池中最多保留POOL_SIZE组, 且过大的数组不入池, 内存紧张时可被回收.
+     * 同时模糊的线程多于POOL_SIZE时, 多出的线程临时分配.
+     */
+    private static class BlurArena {
+
+        private static final int POOL_SIZE = 2;
+        //像素数超过该值的数组不入池, 一组(pixels + buffer)最多8M
+        private static final int MAX_POOLED_PIXELS = 1024 * 1024;
+        private static final List<SoftReference<BlurArena>> POOL = new ArrayList<>(POOL_SIZE);
+
+        private final int[] pixels;
+        private final int[] buffer;
+
+        private BlurArena(int size) {
+            pixels = new int[size];
+            buffer = new int[size];
+        }
+
+        /**
+         * 从池中取出长度足够的最小一组, 没有则分配
+         * @param size 像素数
+         */
+        private static BlurArena obtain(int size) {
+            synchronized (POOL) {
+                SoftReference<BlurArena> bestReference = null;
+                BlurArena best = null;
+                Iterator<SoftReference<BlurArena>> iterator = POOL.iterator();
+                while (iterator.hasNext()) {
+                    SoftReference<BlurArena> reference = iterator.next();
+                    BlurArena arena = reference.get();
+                    if (arena == null) {
+                        //已被回收
+                        iterator.remove();
+                        continue;
+                    }
+                    if (arena.pixels.length >= size && (best == null || arena.pixels.length < best.pixels.length)) {
+                        bestReference = reference;
+                        best = arena;
+                    }
+                }
+                if (best != null) {
+                    POOL.remove(bestReference);
+                    return best;
+                }
+            }
+            return new BlurArena(size);
+        }
+
+        /**
+         * 归还到池中, 池满时替换掉最小的一组
+         */
+        private static void release(BlurArena arena) {
+            if (arena.pixels.length > MAX_POOLED_PIXELS) {
+                return;
+            }
+            synchronized (POOL) {
+                SoftReference<BlurArena> smallest = null;
+                int smallestLength = Integer.MAX_VALUE;
+                Iterator<SoftReference<BlurArena>> iterator = POOL.iterator();
+                while (iterator.hasNext()) {
+                    SoftReference<BlurArena> reference = iterator.next();
+                    BlurArena pooled = reference.get();
+                    if (pooled == null) {
+                        iterator.remove();
+                        continue;
+                    }
+                    if (pooled.pixels.length < smallestLength) {
+                        smallest = reference;
+                        smallestLength = pooled.pixels.length;
+                    }
+                }
+                if (POOL.size() >= POOL_SIZE) {
+                    if (smallestLength >= arena.pixels.length) {
+                        return;
+                    }
+                    POOL.remove(smallest);
+                }
+                POOL.add(new SoftReference<>(arena));
+            }
+        }
+
+    }
+
 }
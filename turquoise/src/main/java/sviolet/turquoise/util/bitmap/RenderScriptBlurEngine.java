@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.util.bitmap;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.os.Build;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+import android.renderscript.Type;
+import android.support.annotation.RequiresApi;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sviolet.turquoise.x.common.lifecycle.LifeCycle;
+
+/**
+ * <p>可复用的RenderScript高斯模糊引擎</p>
+ *
+ * <p>{@link BlurUtils#blurByRenderScript}每次调用都会创建/销毁RenderScript上下文, 频繁模糊(例如每次切换页面/弹出对话框时
+ * 模糊背景)时, 上下文的创建占用了大部分耗时. 本引擎长期持有RenderScript上下文和模糊脚本, 并按尺寸缓存Allocation, 适合
+ * 频繁模糊的场景.</p>
+ *
+ * <p>1.半径大于25时(RenderScript上限), 会自动采用"缩小->模糊->放大"的方式, 也可以手动指定缩放比例以提升性能.</p>
+ * <p>2.支持将结果输出到调用者提供的Bitmap中(ARGB_8888, mutable), 尺寸与源图不同时会拉伸.</p>
+ * <p>3.可绑定生命周期: LifeCycleUtils.attach(activity, engine), onStop时释放缓存的Allocation, onDestroy时销毁引擎.
+ * 不绑定时请在不再使用时调用{@link #onDestroy()}.</p>
+ * <p>4.线程安全, 模糊过程串行执行.</p>
+ *
+ * <pre>{@code
+ *      RenderScriptBlurEngine blurEngine = new RenderScriptBlurEngine(context);
+ *      LifeCycleUtils.attach(activity, blurEngine);
+ *      //模糊到新的Bitmap
+ *      Bitmap result = blurEngine.blur(bitmap, 20);
+ *      //缩小到1/4后模糊, 输出到已有的Bitmap
+ *      blurEngine.blur(bitmap, 40, 0.25f, output);
+ * }</pre>
+ *
+ * @author S.Violet
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
+public class RenderScriptBlurEngine implements LifeCycle {
+
+    /**
+     * RenderScript模糊半径上限
+     */
+    public static final float MAX_RADIUS = 25f;
+
+    private static final int DEFAULT_MAX_POOL_SIZE = 4;
+
+    private RenderScript renderScript;
+    private ScriptIntrinsicBlur blurScript;
+
+    //尺寸 -> 工作区(Allocation+临时Bitmap), LRU
+    private final Map<Long, WorkSpace> pool;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect srcRect = new Rect();
+    private final Rect dstRect = new Rect();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean destroyed = false;
+
+    /**
+     * @param context context
+     */
+    public RenderScriptBlurEngine(Context context) {
+        this(context, DEFAULT_MAX_POOL_SIZE);
+    }
+
+    /**
+     * @param context context
+     * @param maxPoolSize 最多缓存几种尺寸的Allocation, 默认{@value DEFAULT_MAX_POOL_SIZE}
+     */
+    public RenderScriptBlurEngine(Context context, final int maxPoolSize) {
+        if (context == null){
+            throw new RuntimeException("[RenderScriptBlurEngine]context is null");
+        }
+        if (maxPoolSize < 1){
+            throw new RuntimeException("[RenderScriptBlurEngine]maxPoolSize must >= 1");
+        }
+        this.renderScript = RenderScript.create(context.getApplicationContext());
+        this.blurScript = ScriptIntrinsicBlur.create(renderScript, Element.U8_4(renderScript));
+        //直接覆盖目标像素, 复用的临时Bitmap或输出Bitmap(可能就是源图)上残留的内容不参与混合
+        this.paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        this.pool = new LinkedHashMap<Long, WorkSpace>(maxPoolSize + 1, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, WorkSpace> eldest) {
+                if (size() > maxPoolSize){
+                    eldest.getValue().destroy();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 模糊图片, 输出到新的Bitmap(ARGB_8888), 不回收源图
+     *
+     * @param bitmap 源图
+     * @param radius 模糊半径 (0, +∞), 大于25时自动缩小后模糊
+     * @return 模糊后的Bitmap, 与源图尺寸相同
+     */
+    public Bitmap blur(Bitmap bitmap, float radius){
+        if (bitmap == null){
+            return null;
+        }
+        return blur(bitmap, radius, 1f, Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888));
+    }
+
+    /**
+     * 模糊图片, 输出到调用者提供的Bitmap, 不回收源图
+     *
+     * @param bitmap 源图
+     * @param radius 模糊半径 (0, +∞), 大于25时自动缩小后模糊
+     * @param output 输出的Bitmap, 必须为ARGB_8888且mutable, 尺寸与源图不同时会拉伸, 可以是源图本身
+     * @return output
+     */
+    public Bitmap blur(Bitmap bitmap, float radius, Bitmap output){
+        return blur(bitmap, radius, 1f, output);
+    }
+
+    /**
+     * 模糊图片(缩小->模糊->放大), 输出到调用者提供的Bitmap, 不回收源图. 缩小后模糊能显著提升大图/大半径的模糊性能,
+     * 模糊半径会随之缩小, 因此模糊效果基本一致.
+     *
+     * @param bitmap 源图
+     * @param radius 模糊半径 (0, +∞), 相对于源图尺寸
+     * @param scale 缩放比例 (0, 1], 例如0.25f表示缩小到1/4后模糊, 若缩小后的半径仍大于25, 会进一步缩小
+     * @param output 输出的Bitmap, 必须为ARGB_8888且mutable, 尺寸与源图不同时会拉伸, 可以是源图本身
+     * @return output
+     */
+    public Bitmap blur(Bitmap bitmap, float radius, float scale, Bitmap output){
+        if (bitmap == null){
+            return null;
+        }
+        if (bitmap.isRecycled()){
+            throw new RuntimeException("[RenderScriptBlurEngine]bitmap is recycled");
+        }
+        if (output == null || output.isRecycled() || !output.isMutable() || output.getConfig() != Bitmap.Config.ARGB_8888){
+            throw new RuntimeException("[RenderScriptBlurEngine]output must be mutable ARGB_8888 bitmap");
+        }
+        if (radius <= 0){
+            throw new RuntimeException("[RenderScriptBlurEngine]radius must > 0");
+        }
+        if (scale <= 0 || scale > 1){
+            throw new RuntimeException("[RenderScriptBlurEngine]scale must in (0, 1]");
+        }
+        //缩小后半径仍然超限
+        if (radius * scale > MAX_RADIUS){
+            scale = MAX_RADIUS / radius;
+        }
+        int width = Math.max(Math.round(bitmap.getWidth() * scale), 1);
+        int height = Math.max(Math.round(bitmap.getHeight() * scale), 1);
+        float scaledRadius = Math.min(radius * width / bitmap.getWidth(), MAX_RADIUS);
+
+        try {
+            lock.lock();
+            if (destroyed){
+                throw new RuntimeException("[RenderScriptBlurEngine]engine has been destroyed");
+            }
+            WorkSpace workSpace = obtainWorkSpace(width, height);
+            //输入
+            if (bitmap.getConfig() == Bitmap.Config.ARGB_8888 && bitmap.getWidth() == width && bitmap.getHeight() == height){
+                workSpace.in.copyFrom(bitmap);
+            } else {
+                drawScaled(bitmap, workSpace.getBuffer());
+                workSpace.in.copyFrom(workSpace.getBuffer());
+            }
+            //模糊
+            blurScript.setRadius(scaledRadius);
+            blurScript.setInput(workSpace.in);
+            blurScript.forEach(workSpace.out);
+            //输出
+            if (output.getWidth() == width && output.getHeight() == height){
+                workSpace.out.copyTo(output);
+            } else {
+                workSpace.out.copyTo(workSpace.getBuffer());
+                drawScaled(workSpace.getBuffer(), output);
+            }
+            return output;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放缓存的Allocation
+     */
+    public void trim(){
+        try {
+            lock.lock();
+            Iterator<WorkSpace> iterator = pool.values().iterator();
+            while (iterator.hasNext()){
+                iterator.next().destroy();
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private WorkSpace obtainWorkSpace(int width, int height){
+        long key = ((long) width << 32) | height;
+        WorkSpace workSpace = pool.get(key);
+        if (workSpace == null){
+            workSpace = new WorkSpace(renderScript, width, height);
+            pool.put(key, workSpace);
+        }
+        return workSpace;
+    }
+
+    private void drawScaled(Bitmap src, Bitmap dst){
+        srcRect.set(0, 0, src.getWidth(), src.getHeight());
+        dstRect.set(0, 0, dst.getWidth(), dst.getHeight());
+        new Canvas(dst).drawBitmap(src, srcRect, dstRect, paint);
+    }
+
+    /***************************************************************
+     * LifeCycle
+     */
+
+    @Override
+    public void onCreate() {
+
+    }
+
+    @Override
+    public void onStart() {
+
+    }
+
+    @Override
+    public void onResume() {
+
+    }
+
+    @Override
+    public void onPause() {
+
+    }
+
+    @Override
+    public void onStop() {
+        trim();
+    }
+
+    @Override
+    public void onDestroy() {
+        try {
+            lock.lock();
+            if (destroyed){
+                return;
+            }
+            destroyed = true;
+            for (WorkSpace workSpace : pool.values()){
+                workSpace.destroy();
+            }
+            pool.clear();
+            blurScript.destroy();
+            renderScript.destroy();
+            blurScript = null;
+            renderScript = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /***************************************************************
+     * inner class
+     */
+
+    private static class WorkSpace {
+
+        private final int width;
+        private final int height;
+        private final Allocation in;
+        private final Allocation out;
+        //临时Bitmap, 用于缩放/格式转换, 按需创建
+        private Bitmap buffer;
+
+        private WorkSpace(RenderScript renderScript, int width, int height) {
+            this.width = width;
+            this.height = height;
+            Type type = Type.createXY(renderScript, Element.U8_4(renderScript), width, height);
+            this.in = Allocation.createTyped(renderScript, type);
+            this.out = Allocation.createTyped(renderScript, type);
+        }
+
+        private Bitmap getBuffer(){
+            if (buffer == null){
+                buffer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            }
+            return buffer;
+        }
+
+        private void destroy(){
+            in.destroy();
+            out.destroy();
+            if (buffer != null){
+                buffer.recycle();
+                buffer = null;
+            }
+        }
+
+    }
+
+}
@@ -24,10 +24,13 @@ import android.graphics.Bitmap;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Zxing工具
@@ -49,6 +52,56 @@ public class ZxingUtils {
      * @throws QrCodeGenerateException 生成异常
      */
     public static Bitmap generateQrCode(String contents, int width, int height, int margin, Bitmap.Config bitmapConfig, String charset, CorrectionLevel correctionLevel) throws QrCodeGenerateException {
+        return generateQrCode(contents, width, height, margin, bitmapConfig, charset, correctionLevel, null);
+    }
+
+    /**
+     * 生成二维码图片, 优先从缓存中获取二维码矩阵(BitMatrix)
+     * @param contents 数据(注意限定, 不要太大, 否则无法绘制)
+     * @param width 二维码宽度(注意限定, 不要太大, 否则会内存溢出)
+     * @param height 二维码高度(注意限定, 不要太大, 否则会内存溢出)
+     * @param margin 边距
+     * @param bitmapConfig 输出的Bitmap格式, 推荐RGB_565, 节省内存
+     * @param charset 字符集
+     * @param correctionLevel 纠错级别
+     * @param cache 二维码矩阵缓存, 可为空
+     * @return Bitmap
+     * @throws QrCodeGenerateException 生成异常
+     */
+    public static Bitmap generateQrCode(String contents, int width, int height, int margin, Bitmap.Config bitmapConfig, String charset, CorrectionLevel correctionLevel, BitMatrixCache cache) throws QrCodeGenerateException {
+        try {
+            String key = null;
+            BitMatrix bitMatrix = null;
+            if (cache != null) {
+                key = BitMatrixCache.key(contents, width, height, margin, charset, correctionLevel);
+                bitMatrix = cache.get(key);
+            }
+            if (bitMatrix == null) {
+                bitMatrix = encodeQrCode(contents, width, height, margin, charset, correctionLevel);
+                if (cache != null) {
+                    cache.put(key, bitMatrix);
+                }
+            }
+            return toBitmap(bitMatrix, bitmapConfig);
+        } catch (QrCodeGenerateException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new QrCodeGenerateException("Error while generating qr-code bitmap", t);
+        }
+    }
+
+    /**
+     * 生成二维码矩阵
+     * @param contents 数据(注意限定, 不要太大, 否则无法绘制)
+     * @param width 二维码宽度
+     * @param height 二维码高度
+     * @param margin 边距
+     * @param charset 字符集
+     * @param correctionLevel 纠错级别
+     * @return BitMatrix
+     * @throws QrCodeGenerateException 生成异常
+     */
+    public static BitMatrix encodeQrCode(String contents, int width, int height, int margin, String charset, CorrectionLevel correctionLevel) throws QrCodeGenerateException {
         ErrorCorrectionLevel errorCorrectionLevel;
         switch (correctionLevel) {
             case L:
@@ -71,26 +124,88 @@ public class ZxingUtils {
         hints.put(EncodeHintType.MARGIN, margin);
 
         try {
-            BitMatrix bitMatrix = new MultiFormatWriter().encode(
+            return new MultiFormatWriter().encode(
                     contents,
                     BarcodeFormat.QR_CODE,
                     width,
                     height,
                     hints);
+        } catch (Throwable t) {
+            throw new QrCodeGenerateException("Error while generating qr-code bitmap", t);
+        }
+    }
+
+    /**
+     * 将二维码矩阵绘制为Bitmap, 逐行展开至复用的像素数组, 并批量写入(setPixels).
+     * 二维码的模块通常占多行, 与上一行相同的行不重复展开.
+     * @param bitMatrix 二维码矩阵
+     * @param bitmapConfig 输出的Bitmap格式, 推荐RGB_565, 节省内存
+     * @return Bitmap
+     */
+    public static Bitmap toBitmap(BitMatrix bitMatrix, Bitmap.Config bitmapConfig) {
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+        Bitmap bitmap = Bitmap.createBitmap(width, height, bitmapConfig);
+        int[] pixels = new int[width];
+        BitArray row = new BitArray(width);
+        BitArray previousRow = new BitArray(width);
+        for (int y = 0; y < height; y++) {
+            row = bitMatrix.getRow(y, row);
+            if (y == 0 || !row.equals(previousRow)) {
+                for (int x = 0; x < width; x++) {
+                    pixels[x] = row.get(x) ? 0xFF000000 : 0x00FFFFFF;
+                }
+                //交换, 保留本行用于比较
+                BitArray temp = previousRow;
+                previousRow = row;
+                row = temp;
+            }
+            bitmap.setPixels(pixels, 0, width, 0, y, width, 1);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 二维码矩阵缓存(LRU), 以数据/尺寸/边距/字符集/纠错级别为key, 线程安全
+     */
+    public static class BitMatrixCache {
 
-            width = bitMatrix.getWidth();
-            height = bitMatrix.getHeight();
+        private final LinkedHashMap<String, BitMatrix> map;
 
-            Bitmap bitmap = Bitmap.createBitmap(width, height, bitmapConfig);
-            for (int x = 0; x < width; x++) {
-                for (int y = 0; y < height; y++) {
-                    bitmap.setPixel(x, y, bitMatrix.get(x, y) ? 0xFF000000 : 0x00FFFFFF);
+        /**
+         * @param maxSize 最大缓存数量
+         */
+        public BitMatrixCache(final int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must > 0");
+            }
+            this.map = new LinkedHashMap<String, BitMatrix>(0, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, BitMatrix> eldest) {
+                    return size() > maxSize;
                 }
+            };
+        }
+
+        public synchronized BitMatrix get(String key) {
+            return map.get(key);
+        }
+
+        public synchronized void put(String key, BitMatrix bitMatrix) {
+            if (key == null || bitMatrix == null) {
+                return;
             }
-            return bitmap;
-        } catch (Throwable t) {
-            throw new QrCodeGenerateException("Error while generating qr-code bitmap", t);
+            map.put(key, bitMatrix);
+        }
+
+        public synchronized void clear() {
+            map.clear();
         }
+
+        private static String key(String contents, int width, int height, int margin, String charset, CorrectionLevel correctionLevel) {
+            return width + "x" + height + "@" + margin + "@" + charset + "@" + correctionLevel + "@" + contents;
+        }
+
     }
 
     public static class QrCodeGenerateException extends Exception {
@@ -26,16 +26,26 @@ import sviolet.turquoise.util.bitmap.BitmapUtils;
  *
  * Created by S.Violet on 2017/4/1.
  */
-public class GrayDiscolorFilter implements BitmapUtils.DiscolorFilter {
+public class GrayDiscolorFilter implements BitmapUtils.BatchDiscolorFilter {
 
     @Override
     public int filter(int color) {
         int alpha = color & 0xff000000;
-        int red = color & 0x00ff0000 >>> 16;
-        int green = color & 0x0000ff00 >>> 8;
+        int red = (color & 0x00ff0000) >>> 16;
+        int green = (color & 0x0000ff00) >>> 8;
         int blue = color & 0x000000ff;
         int gray = (red + green + blue) / 3;
         return alpha | gray << 16 | gray << 8 | gray;
     }
 
+    @Override
+    public void filter(int[] pixels, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset ; i < end ; i++) {
+            int color = pixels[i];
+            int gray = (((color >>> 16) & 0xff) + ((color >>> 8) & 0xff) + (color & 0xff)) / 3;
+            pixels[i] = (color & 0xff000000) | gray << 16 | gray << 8 | gray;
+        }
+    }
+
 }
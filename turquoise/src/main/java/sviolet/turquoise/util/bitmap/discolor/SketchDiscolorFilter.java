@@ -26,7 +26,7 @@ import sviolet.turquoise.util.bitmap.BitmapUtils;
  *
  * Created by S.Violet on 2017/4/1.
  */
-public class SketchDiscolorFilter implements BitmapUtils.DiscolorFilter {
+public class SketchDiscolorFilter implements BitmapUtils.BatchDiscolorFilter {
 
     private int color;
     private boolean transparent;
@@ -53,4 +53,17 @@ public class SketchDiscolorFilter implements BitmapUtils.DiscolorFilter {
         }
     }
 
+    @Override
+    public void filter(int[] pixels, int offset, int length) {
+        int end = offset + length;
+        int rgb = this.color & 0x00ffffff;
+        for (int i = offset ; i < end ; i++) {
+            int alpha = pixels[i] & 0xff000000;
+            if (alpha == 0){
+                continue;
+            }
+            pixels[i] = transparent ? rgb | alpha : this.color;
+        }
+    }
+
 }
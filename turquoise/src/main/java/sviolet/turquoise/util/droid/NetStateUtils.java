@@ -19,12 +19,19 @@
 
 package sviolet.turquoise.util.droid;
 
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.support.annotation.RequiresPermission;
 import android.telephony.TelephonyManager;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * 网络状态工具
  */
@@ -103,6 +110,106 @@ public class NetStateUtils {
 		return NetworkType.UNKNOWN;
 	}
 
+	/**
+	 * 获取网络状态监听器(单例), 首次调用时注册网络变化广播, 之后读取网络类型无需Binder调用
+	 */
+	@RequiresPermission("android.permission.ACCESS_NETWORK_STATE")
+	public static NetworkMonitor getNetworkMonitor(Context context) {
+		if (networkMonitor == null) {
+			synchronized (NetStateUtils.class) {
+				if (networkMonitor == null) {
+					networkMonitor = new NetworkMonitor(context);
+				}
+			}
+		}
+		return networkMonitor;
+	}
+
+	/**
+	 * 判断网络类型(缓存), 由网络变化广播更新, 适用于频繁调用的场景
+	 */
+	@RequiresPermission("android.permission.ACCESS_NETWORK_STATE")
+	public static NetworkType getCachedNetworkType(Context context) {
+		return getNetworkMonitor(context).getNetworkType();
+	}
+
+	private static volatile NetworkMonitor networkMonitor;
+
+	/**
+	 * 网络状态监听器, 注册一次网络变化广播(CONNECTIVITY_ACTION), 将当前网络类型缓存在volatile变量中
+	 */
+	public static class NetworkMonitor {
+
+		private final Context context;
+		private volatile NetworkType networkType;
+		private final List<OnNetworkTypeChangedListener> listeners = new CopyOnWriteArrayList<>();
+
+		@RequiresPermission("android.permission.ACCESS_NETWORK_STATE")
+		private NetworkMonitor(Context context) {
+			if (context == null) {
+				throw new RuntimeException("[NetStateUtils]context is null");
+			}
+			this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+			this.networkType = fetchNetworkType();
+			this.context.registerReceiver(new BroadcastReceiver() {
+				@Override
+				public void onReceive(Context context, Intent intent) {
+					refresh();
+				}
+			}, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+		}
+
+		/**
+		 * @return 当前网络类型(缓存)
+		 */
+		public NetworkType getNetworkType() {
+			return networkType;
+		}
+
+		/**
+		 * 重新获取网络类型, 类型变化时通知监听器
+		 */
+		public void refresh() {
+			NetworkType previous = networkType;
+			NetworkType current = fetchNetworkType();
+			networkType = current;
+			if (previous != current) {
+				for (OnNetworkTypeChangedListener listener : listeners) {
+					listener.onNetworkTypeChanged(previous, current);
+				}
+			}
+		}
+
+		public void addListener(OnNetworkTypeChangedListener listener) {
+			if (listener != null) {
+				listeners.add(listener);
+			}
+		}
+
+		public void removeListener(OnNetworkTypeChangedListener listener) {
+			listeners.remove(listener);
+		}
+
+		@SuppressLint("MissingPermission")
+		private NetworkType fetchNetworkType() {
+			try {
+				return NetStateUtils.getNetworkType(context);
+			} catch (Throwable t) {
+				return NetworkType.UNKNOWN;
+			}
+		}
+
+	}
+
+	/**
+	 * 网络类型变化监听器(主线程回调)
+	 */
+	public interface OnNetworkTypeChangedListener {
+
+		void onNetworkTypeChanged(NetworkType previous, NetworkType current);
+
+	}
+
 	public enum NetworkType{
 		NULL,
 		WIFI,
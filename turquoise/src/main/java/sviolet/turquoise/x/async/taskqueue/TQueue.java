@@ -22,12 +22,16 @@ package sviolet.turquoise.x.async.taskqueue;
 import android.os.Looper;
 import android.os.Message;
 
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import sviolet.thistle.util.concurrent.ThreadPoolExecutorUtils;
 import sviolet.turquoise.enhance.async.WeakHandler;
@@ -84,8 +88,10 @@ public class TQueue {
 
     private volatile ExecutorService dispatchThreadPool;//调度线程池
     private volatile ExecutorService taskThreadPool;//任务线程池
+    private volatile ScheduledThreadPoolExecutor timeoutThreadPool;//任务超时调度器(所有任务共享一个线程)
+    private final AtomicInteger timeoutCanceledCount = new AtomicInteger(0);//已取消的超时计时数(用于定期清理)
 
-	private LinkedHashMap<String, TTask> waittingTasks;//等待队列
+	private WaitingTaskQueue waittingTasks;//等待队列(双向链表+索引, 两端出入队O(1))
     private LinkedHashMap<String, TTask> runningTasks;//执行队列
 
     /**
@@ -97,7 +103,7 @@ public class TQueue {
      */
     public TQueue(boolean reverse, int concurrencyVolumeMax){
         this.reverse = reverse;
-        waittingTasks = new LinkedHashMap<>(0, 0.75f, true);
+        waittingTasks = new WaitingTaskQueue();
         runningTasks = new LinkedHashMap<>(0);
         setConcurrencyVolumeMax(concurrencyVolumeMax);
     }
@@ -165,14 +171,8 @@ public class TQueue {
                     removeTask.cancel();
                     //继续执行,新任务加入等待队列
                 }else if(keyConflictPolicy == KEY_CONFLICT_POLICY_FOLLOW){
-                    //获取老任务
-                    for (Map.Entry<String, TTask> entry : waittingTasks.entrySet()){
-                        if(key.equals(entry.getKey())){
-                            //新的任务跟随老任务
-                            entry.getValue().addFollower(task);
-                            break;
-                        }
-                    }
+                    //新的任务跟随老任务(获取老任务不改变队列顺序)
+                    waittingTasks.get(key).addFollower(task);
                     return;
                 }else{//KEY_CONFLICT_POLICY_CANCEL
                     //新任务取消
@@ -194,22 +194,9 @@ public class TQueue {
     private void trimWattingTasks() {
         //等待队列超出限制时, 清除优先级最低的任务
         if (waittingTasks.size() >= volumeMax) {
-            if (reverse) {
-                //取队列顶部(最早任务)
-                Map.Entry<String, TTask> firstEntry = null;
-                for (Map.Entry<String, TTask> entry : waittingTasks.entrySet()) {
-                    firstEntry = entry;
-                    break;
-                }
-                TTask cancelTask = waittingTasks.remove(firstEntry.getKey());
-                cancelTask.cancel();
-            } else {
-                //取队列底部(最新任务)
-                Map.Entry<String, TTask> lastEntry = null;
-                for (Map.Entry<String, TTask> entry : waittingTasks.entrySet()) {
-                    lastEntry = entry;
-                }
-                TTask cancelTask = waittingTasks.remove(lastEntry.getKey());
+            //逆序队列取队列顶部(最早任务), 顺序队列取队列底部(最新任务)
+            TTask cancelTask = reverse ? waittingTasks.pollFirst() : waittingTasks.pollLast();
+            if (cancelTask != null) {
                 cancelTask.cancel();
             }
         }
@@ -362,14 +349,8 @@ public class TQueue {
                     task.cancel();
                 }
             }
-            for (Map.Entry<String, TTask> entry : waittingTasks.entrySet()) {
-                TTask task = entry.getValue();
-                if (task != null) {
-                    task.cancel();
-                }
-            }
             runningTasks.clear();
-            waittingTasks.clear();
+            waittingTasks.cancelAndClear();
         }
 	}
 
@@ -395,13 +376,11 @@ public class TQueue {
     public void preferred(String key) {
         synchronized (TQueue.this){
             if (reverse) {
-                waittingTasks.get(key);
+                //逆序队列从底部开始执行
+                waittingTasks.moveToLast(key);
             }else{
-                for (Object taskKey : waittingTasks.keySet().toArray()) {
-                    if (!taskKey.equals(key)) {
-                        waittingTasks.get(taskKey);
-                    }
-                }
+                //顺序队列从顶部开始执行
+                waittingTasks.moveToFirst(key);
             }
         }
     }
@@ -417,6 +396,9 @@ public class TQueue {
         if (dispatchThreadPool != null) {
             dispatchThreadPool.shutdown();
         }
+        if (timeoutThreadPool != null) {
+            timeoutThreadPool.shutdown();
+        }
     }
 
     /**
@@ -430,6 +412,9 @@ public class TQueue {
         if (dispatchThreadPool != null) {
             dispatchThreadPool.shutdownNow();
         }
+        if (timeoutThreadPool != null) {
+            timeoutThreadPool.shutdownNow();
+        }
     }
 
     /**
@@ -498,22 +483,9 @@ public class TQueue {
 		//double-check
 		while(waittingTasks.size() > 0 && concurrencyVolume < concurrencyVolumeMax){
 			while(waittingTasks.size() > 0 && concurrencyVolume < concurrencyVolumeMax){
-                if (reverse){
-                    //取队列底部(最新任务)
-                    Map.Entry<String, TTask> lastEntry = null;
-                    for (Map.Entry<String, TTask> entry : waittingTasks.entrySet()) {
-                        lastEntry = entry;
-                    }
-                    concurrencyVolume = startTask(concurrencyVolume, lastEntry);
-                }else{
-                    //取队列顶部(最早任务)
-                    Map.Entry<String, TTask> firstEntry = null;
-                    for (Map.Entry<String, TTask> entry : waittingTasks.entrySet()) {
-                        firstEntry = entry;
-                        break;
-                    }
-                    concurrencyVolume = startTask(concurrencyVolume, firstEntry);
-                }
+                //逆序队列取队列底部(最新任务), 顺序队列取队列顶部(最早任务)
+                TTask task = reverse ? waittingTasks.pollLast() : waittingTasks.pollFirst();
+                concurrencyVolume = startTask(concurrencyVolume, task);
 			}
             //检查调度完成后, 理论并发数是否等于实际并发数
             if (concurrencyVolume != getCurrentConcurrencyVolume()){
@@ -528,13 +500,12 @@ public class TQueue {
     /**
      * 启动任务
      * @param concurrencyVolume 并发量
-     * @param entry 任务Entry
+     * @param task 已从等待队列中移除的任务
      * @return 递增后的并发量
      */
-    private int startTask(int concurrencyVolume, Map.Entry<String, TTask> entry) {
-        if (entry != null) {
-            String key = entry.getKey();
-            TTask task = waittingTasks.remove(key);
+    private int startTask(int concurrencyVolume, TTask task) {
+        if (task != null) {
+            String key = task.getKey();
             //是否存在同名任务
             if (runningTasks.containsKey(key)){
                 //是否覆盖同名任务
@@ -570,24 +541,22 @@ public class TQueue {
      * 清除执行队列中 已完成/已取消的任务
      */
     private void cleanRunningTasks() {
-        //遍历执行队列, 清除已完成的任务
-        List<String> removeKeyList = new ArrayList<String>();
-        for (Map.Entry<String, TTask> entry : runningTasks.entrySet()) {
+        //遍历执行队列, 清除已完成的任务(迭代器移除, 不创建临时列表)
+        Iterator<Map.Entry<String, TTask>> iterator = runningTasks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            int state = iterator.next().getValue().getState();
             if (waitCancelingTask){
                 //等待取消中任务模式下, 移除完成/已取消的任务
-                if (entry.getValue().getState() == TTask.STATE_COMPLETE || entry.getValue().getState() == TTask.STATE_CANCELED) {
-                    removeKeyList.add(entry.getKey());
+                if (state == TTask.STATE_COMPLETE || state == TTask.STATE_CANCELED) {
+                    iterator.remove();
                 }
             }else {
                 //移除完成/取消中/已取消的任务
-                if (entry.getValue().getState() >= TTask.STATE_COMPLETE) {
-                    removeKeyList.add(entry.getKey());
+                if (state >= TTask.STATE_COMPLETE) {
+                    iterator.remove();
                 }
             }
         }
-        for (String key : removeKeyList) {
-            runningTasks.remove(key);
-        }
     }
 
     /**
@@ -634,6 +603,61 @@ public class TQueue {
         }
     }
 
+    /**
+     * 已取消的超时计时达到该数量时, 清理调度器的队列
+     */
+    private static final int TIMEOUT_PURGE_THRESHOLD = 100;
+
+    /**
+     * [由TTask调用]<br/>
+     * 用共享的调度器进行任务超时计时<br/>
+     *
+     * @param runnable 超时处理
+     * @param timeout 超时时间ms
+     * @return 超时计时句柄, 可用于取消, 调度器已销毁时返回null
+     */
+    protected ScheduledFuture<?> ttask_scheduleTimeout(Runnable runnable, long timeout){
+        if (timeoutThreadPool == null){
+            synchronized (this) {
+                if (timeoutThreadPool == null) {
+                    timeoutThreadPool = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger(0);
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "sva-tq-timeout-" + count.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        try {
+            return timeoutThreadPool.schedule(runnable, timeout, TimeUnit.MILLISECONDS);
+        }catch(RejectedExecutionException ignored){
+        }
+        return null;
+    }
+
+    /**
+     * [由TTask调用]<br/>
+     * 取消超时计时, 已取消的计时会留在调度器队列中直至到期, 因此定期清理<br/>
+     *
+     * @param future 超时计时句柄
+     */
+    protected void ttask_cancelTimeout(ScheduledFuture<?> future){
+        if (future == null || !future.cancel(false)) {
+            return;
+        }
+        if (timeoutCanceledCount.incrementAndGet() >= TIMEOUT_PURGE_THRESHOLD) {
+            timeoutCanceledCount.set(0);
+            ScheduledThreadPoolExecutor timeoutThreadPool = this.timeoutThreadPool;
+            if (timeoutThreadPool != null) {
+                timeoutThreadPool.purge();
+            }
+        }
+    }
+
     /**
      * [由TTask调用]<br/>
      * 将task推至主线程启动<br/>
@@ -22,8 +22,7 @@ package sviolet.turquoise.x.async.taskqueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * TQueue队列用任务<br>
@@ -60,7 +59,7 @@ public abstract class TTask {
 	//var//////////////////////////////////////////
 
 	private int state = STATE_WAITING;//执行状态
-	private Timer timeOutTimer;//超时计时器
+	private volatile ScheduledFuture<?> timeOutFuture;//超时计时器(TQueue共享的超时调度器中的句柄)
 
 	/*********************************************
 	 * GETSET
@@ -378,14 +377,19 @@ public abstract class TTask {
     }
 
     /**
-	 * 重置超时计时器
+	 * 重置超时计时器<br/>
+	 * 超时计时由TQueue中共享的调度器完成, 不再为每个任务创建Timer(线程)
 	 */
 	private void resetTimeOutTimer() {
 		if(timeOutSet <= 0) {
             return;
         }
-		timeOutTimer = new Timer();
-		timeOutTimer.schedule(new TimerTask() {
+		TQueue queue = getQueue();
+		if (queue == null){
+			return;
+		}
+		cancelTimeOutTimer();
+		timeOutFuture = queue.ttask_scheduleTimeout(new Runnable() {
 			@Override
 			public void run() {
 				if(state ==STATE_PRE_EXECUTE || state == STATE_EXECUTING){
@@ -402,8 +406,15 @@ public abstract class TTask {
 		if(timeOutSet <= 0) {
             return;
         }
-		if(timeOutTimer != null) {
-            timeOutTimer.cancel();
+		ScheduledFuture<?> future = timeOutFuture;
+		if(future != null) {
+			timeOutFuture = null;
+			TQueue queue = getQueue();
+			if (queue != null) {
+				queue.ttask_cancelTimeout(future);
+			} else {
+				future.cancel(false);
+			}
         }
 	}
 
@@ -411,7 +422,7 @@ public abstract class TTask {
 	 * 销毁任务(主线程)
 	 */
 	protected void onDestroy(){
-		timeOutTimer = null;//超时计时器
+		timeOutFuture = null;//超时计时器
 		params = null;
 		result = null;
         if (follower != null) {
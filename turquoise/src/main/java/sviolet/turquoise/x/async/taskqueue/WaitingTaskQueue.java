@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.async.taskqueue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TQueue的等待队列<br/>
+ * <br/>
+ * 双向链表 + key索引, 从两端入队/出队, 按key查找/移除, 将任务移至队首/队尾均为O(1)<br/>
+ * 非线程安全, 由TQueue同步<br/>
+ *
+ * @author S.Violet
+ */
+class WaitingTaskQueue {
+
+    private final Map<String, Node> index = new HashMap<>();
+    private Node head;//队首(最早加入)
+    private Node tail;//队尾(最新加入)
+
+    int size(){
+        return index.size();
+    }
+
+    boolean containsKey(String key){
+        return index.containsKey(key);
+    }
+
+    /**
+     * 获取任务(不改变顺序)
+     */
+    TTask get(String key){
+        Node node = index.get(key);
+        return node != null ? node.task : null;
+    }
+
+    /**
+     * 加入队尾, 若key已存在, 则替换原任务并移至队尾
+     * @return 被替换的任务
+     */
+    TTask put(String key, TTask task){
+        Node node = index.get(key);
+        TTask previous = null;
+        if (node != null){
+            previous = node.task;
+            unlink(node);
+        }
+        node = new Node(key, task);
+        index.put(key, node);
+        linkLast(node);
+        return previous;
+    }
+
+    /**
+     * 移除任务
+     * @return 被移除的任务, 不存在返回null
+     */
+    TTask remove(String key){
+        Node node = index.remove(key);
+        if (node == null){
+            return null;
+        }
+        unlink(node);
+        return node.task;
+    }
+
+    /**
+     * 移除队首任务(最早加入)
+     */
+    TTask pollFirst(){
+        return head != null ? remove(head.key) : null;
+    }
+
+    /**
+     * 移除队尾任务(最新加入)
+     */
+    TTask pollLast(){
+        return tail != null ? remove(tail.key) : null;
+    }
+
+    /**
+     * 将任务移至队首
+     */
+    void moveToFirst(String key){
+        Node node = index.get(key);
+        if (node == null || node == head){
+            return;
+        }
+        unlink(node);
+        linkFirst(node);
+    }
+
+    /**
+     * 将任务移至队尾
+     */
+    void moveToLast(String key){
+        Node node = index.get(key);
+        if (node == null || node == tail){
+            return;
+        }
+        unlink(node);
+        linkLast(node);
+    }
+
+    /**
+     * 取消所有任务并清空队列
+     */
+    void cancelAndClear(){
+        for (Node node = head ; node != null ; node = node.next){
+            if (node.task != null){
+                node.task.cancel();
+            }
+        }
+        clear();
+    }
+
+    void clear(){
+        index.clear();
+        head = null;
+        tail = null;
+    }
+
+    private void linkFirst(Node node){
+        node.prev = null;
+        node.next = head;
+        if (head != null){
+            head.prev = node;
+        } else {
+            tail = node;
+        }
+        head = node;
+    }
+
+    private void linkLast(Node node){
+        node.next = null;
+        node.prev = tail;
+        if (tail != null){
+            tail.next = node;
+        } else {
+            head = node;
+        }
+        tail = node;
+    }
+
+    private void unlink(Node node){
+        if (node.prev != null){
+            node.prev.next = node.next;
+        } else {
+            head = node.next;
+        }
+        if (node.next != null){
+            node.next.prev = node.prev;
+        } else {
+            tail = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static class Node {
+
+        private final String key;
+        private final TTask task;
+        private Node prev;
+        private Node next;
+
+        private Node(String key, TTask task) {
+            this.key = key;
+            this.task = task;
+        }
+
+    }
+
+}
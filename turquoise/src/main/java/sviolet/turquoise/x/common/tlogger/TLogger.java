@@ -109,7 +109,7 @@ public abstract class TLogger {
     }
 
     /**
-     * [特殊]设置日志磁盘输出器, 默认不输出到磁盘, 一般使用SimpleLoggerPrinter, 自行实现需要注意性能问题和异常问题
+     * [特殊]设置日志磁盘输出器, 默认不输出到磁盘, 一般使用SimpleLoggerPrinter, 日志量大时可使用RingBufferLoggerPrinter, 自行实现需要注意性能问题和异常问题
      */
     public static void setLoggerPrinter(LoggerPrinter printer){
         TLoggerCenter.INSTANCE.setPrinter(printer);
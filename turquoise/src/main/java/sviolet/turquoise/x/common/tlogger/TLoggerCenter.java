@@ -21,11 +21,9 @@ package sviolet.turquoise.x.common.tlogger;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
-import sviolet.thistle.compat.cache.CompatLruCache;
-import sviolet.thistle.util.concurrent.ConcurrentUtils;
 import sviolet.turquoise.x.common.tlogger.printer.LoggerPrinter;
 import sviolet.turquoise.x.common.tlogger.printer.NullLoggerPrinter;
 
@@ -43,10 +41,10 @@ class TLoggerCenter {
     //规则
     private Map<String, Integer> customRules = new HashMap<>();
     //日志打印器缓存
-    private CompatLruCache<Class<?>, TLogger> loggerCache = new CompatLruCache<>(100, false);
+    private ConcurrentHashMap<Class<?>, TLogger> loggerCache = new ConcurrentHashMap<>();
 
-    //规则更新时间
-    private AtomicInteger ruleUpdateTimes = new AtomicInteger(0);
+    //当前生效的规则(不可变), 规则变化时整体替换
+    private volatile TLoggerRules rules = new TLoggerRules(0, TLogger.ALL, null);
 
     //空打印器
     private TLogger nullLogger = new TLoggerProxy(null);
@@ -70,10 +68,10 @@ class TLoggerCenter {
         try {
             ruleLock.lock();
             customRules.putAll(rules);
+            updateRules();
         } finally {
             ruleLock.unlock();
         }
-        ruleUpdateTimes.incrementAndGet();
     }
 
     /**
@@ -83,55 +81,47 @@ class TLoggerCenter {
         try {
             ruleLock.lock();
             customRules = new HashMap<>(rules != null ? rules.size() : 0);
-            if (rules == null) {
-                return;
+            if (rules != null) {
+                customRules.putAll(rules);
             }
-            customRules.putAll(rules);
+            updateRules();
         } finally {
             ruleLock.unlock();
         }
-        ruleUpdateTimes.incrementAndGet();
     }
 
     /**
      * 设置全局日志级别
      */
     void setGlobalLevel(int level) {
-        globalLevel = level;
-        ruleUpdateTimes.incrementAndGet();
+        try {
+            ruleLock.lock();
+            globalLevel = level;
+            updateRules();
+        } finally {
+            ruleLock.unlock();
+        }
     }
 
-    int getRuleUpdateTimes() {
-        return ruleUpdateTimes.get();
+    /**
+     * 根据当前规则生成新的规则对象, 并替换(必须在ruleLock中调用)
+     */
+    private void updateRules() {
+        rules = new TLoggerRules(rules.getVersion() + 1, globalLevel, customRules);
+    }
+
+    /**
+     * @return 当前生效的规则(不可变), 打印器比较引用判断规则是否变化
+     */
+    TLoggerRules getRules() {
+        return rules;
     }
 
     /**
      * 根据规则生成打印器的日志级别
      */
     int check(Class<?> host) {
-        if (host == null) {
-            return TLogger.NULL;
-        }
-        String className = host.getName();
-        int ruleKeyLength = 0;
-        int ruleLevel = globalLevel;
-        Map<String, Integer> snapshot = null;
-        try {
-            ruleLock.lock();
-            snapshot = ConcurrentUtils.getSnapShot(customRules);
-        } finally {
-            ruleLock.unlock();
-        }
-        for (Map.Entry<String, Integer> entry : snapshot.entrySet()) {
-            if (!className.startsWith(entry.getKey())) {
-                continue;
-            }
-            if (entry.getKey().length() > ruleKeyLength) {
-                ruleKeyLength = entry.getKey().length();
-                ruleLevel = entry.getValue();
-            }
-        }
-        return ruleLevel;
+        return rules.check(host);
     }
 
     /**
@@ -144,7 +134,7 @@ class TLoggerCenter {
         if (customLogger != null){
             return new TLoggerProxy(customLogger);
         }
-        return new TLoggerImpl(host, check(host), ruleUpdateTimes.get());
+        return new TLoggerImpl(host);
     }
 
     /**
@@ -163,9 +153,12 @@ class TLoggerCenter {
 
         TLogger logger = loggerCache.get(host);
         if (logger == null) {
-            //并发的时候多创建几个实例也没关系
+            //并发的时候多创建几个实例也没关系, 以先放入的为准
             logger = newLogger(host);
-            loggerCache.put(host, logger);
+            TLogger previous = loggerCache.putIfAbsent(host, logger);
+            if (previous != null) {
+                logger = previous;
+            }
         }
         return logger;
     }
@@ -22,8 +22,6 @@ package sviolet.turquoise.x.common.tlogger;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
-import java.util.concurrent.locks.ReentrantLock;
-
 import sviolet.thistle.util.judge.CheckUtils;
 import sviolet.turquoise.entity.statics.StringConstants;
 
@@ -35,16 +33,15 @@ import sviolet.turquoise.entity.statics.StringConstants;
 class TLoggerImpl extends TLogger {
 
     private Class<?> host;
-    private int level;
-    private int ruleUpdateTimes;
     private String className;
 
-    private ReentrantLock lock = new ReentrantLock();
+    //日志级别缓存(不可变), 规则对象变化时重新计算
+    private LevelCache levelCache;
 
-    TLoggerImpl(@NonNull Class<?> host, int level, int ruleUpdateTimes) {
+    TLoggerImpl(@NonNull Class<?> host) {
         this.host = host;
-        this.level = level;
-        this.ruleUpdateTimes = ruleUpdateTimes;
+        TLoggerRules rules = TLoggerCenter.INSTANCE.getRules();
+        this.levelCache = new LevelCache(rules, rules.check(host));
 
         className = host.getSimpleName();
         if (CheckUtils.isEmpty(className)) {
@@ -57,14 +54,12 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public boolean checkEnable(int level) {
-        updateLevel();
-        return CheckUtils.isFlagMatch(this.level, level);
+        return CheckUtils.isFlagMatch(getLevel(), level);
     }
 
     @Override
     public void e(Object msg) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, ERROR)) {
+        if (CheckUtils.isFlagMatch(getLevel(), ERROR)) {
             String message = "[" + className + "]" + msg;
             Log.e(StringConstants.LIBRARY_TAG, message);
             TLoggerCenter.INSTANCE.getPrinter().e(message, null);
@@ -73,8 +68,7 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public void e(Object msg, Throwable throwable) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, ERROR)) {
+        if (CheckUtils.isFlagMatch(getLevel(), ERROR)) {
             String message = "[" + className + "]" + msg;
             Log.e(StringConstants.LIBRARY_TAG, message, throwable);
             TLoggerCenter.INSTANCE.getPrinter().e(message, throwable);
@@ -83,8 +77,7 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public void e(Throwable throwable) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, ERROR)) {
+        if (CheckUtils.isFlagMatch(getLevel(), ERROR)) {
             String message = "[" + className + "]ERROR";
             Log.e(StringConstants.LIBRARY_TAG, message, throwable);
             TLoggerCenter.INSTANCE.getPrinter().e(message, throwable);
@@ -93,8 +86,7 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public void w(Object msg) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, WARNING)) {
+        if (CheckUtils.isFlagMatch(getLevel(), WARNING)) {
             String message = "[" + className + "]" + msg;
             Log.w(StringConstants.LIBRARY_TAG, message);
             TLoggerCenter.INSTANCE.getPrinter().w(message, null);
@@ -103,8 +95,7 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public void w(Object msg, Throwable throwable) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, WARNING)) {
+        if (CheckUtils.isFlagMatch(getLevel(), WARNING)) {
             String message = "[" + className + "]" + msg;
             Log.w(StringConstants.LIBRARY_TAG, message, throwable);
             TLoggerCenter.INSTANCE.getPrinter().w(message, throwable);
@@ -113,8 +104,7 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public void w(Throwable throwable) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, WARNING)) {
+        if (CheckUtils.isFlagMatch(getLevel(), WARNING)) {
             String message = "[" + className + "]WARNING";
             Log.w(StringConstants.LIBRARY_TAG, message, throwable);
             TLoggerCenter.INSTANCE.getPrinter().w(message, throwable);
@@ -123,8 +113,7 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public void i(Object msg) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, INFO)) {
+        if (CheckUtils.isFlagMatch(getLevel(), INFO)) {
             String message = "[" + className + "]" + msg;
             Log.i(StringConstants.LIBRARY_TAG, message);
             TLoggerCenter.INSTANCE.getPrinter().i(message);
@@ -133,26 +122,37 @@ class TLoggerImpl extends TLogger {
 
     @Override
     public void d(Object msg) {
-        updateLevel();
-        if (CheckUtils.isFlagMatch(level, DEBUG)) {
+        if (CheckUtils.isFlagMatch(getLevel(), DEBUG)) {
             String message = "[" + className + "]" + msg;
             Log.d(StringConstants.LIBRARY_TAG, message);
             TLoggerCenter.INSTANCE.getPrinter().d(message);
         }
     }
 
-    private void updateLevel() {
-        if (ruleUpdateTimes != TLoggerCenter.INSTANCE.getRuleUpdateTimes()) {
-            try {
-                lock.lock();
-                if (ruleUpdateTimes != TLoggerCenter.INSTANCE.getRuleUpdateTimes()) {
-                    this.level = TLoggerCenter.INSTANCE.check(host);
-                    this.ruleUpdateTimes = TLoggerCenter.INSTANCE.getRuleUpdateTimes();
-                }
-            } finally {
-                lock.unlock();
-            }
+    /**
+     * 热路径上只有一次volatile读(当前规则), 规则未变化时直接返回缓存的日志级别
+     */
+    private int getLevel() {
+        TLoggerRules rules = TLoggerCenter.INSTANCE.getRules();
+        LevelCache levelCache = this.levelCache;
+        if (levelCache.rules != rules) {
+            //规则变化, 重新计算, 并发时重复计算也没关系
+            levelCache = new LevelCache(rules, rules.check(host));
+            this.levelCache = levelCache;
+        }
+        return levelCache.level;
+    }
+
+    private static final class LevelCache {
+
+        private final TLoggerRules rules;
+        private final int level;
+
+        private LevelCache(TLoggerRules rules, int level) {
+            this.rules = rules;
+            this.level = level;
         }
+
     }
 
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.common.tlogger;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 日志规则(不可变)
+ * <p>
+ * 由全局日志级别和规则前缀树组成, 规则变化时由TLoggerCenter整体替换, 打印器通过比较规则对象(引用)判断是否需要更新日志级别.
+ * 前缀树按字符匹配, 与String.startsWith语义一致, 取最长匹配的规则.
+ *
+ * @author S.Violet
+ */
+final class TLoggerRules {
+
+    private final int version;
+    private final int globalLevel;
+    private final Node root;
+
+    /**
+     * @param version 版本号
+     * @param globalLevel 全局日志级别
+     * @param rules 规则, 空前缀和null级别的规则无效
+     */
+    TLoggerRules(int version, int globalLevel, Map<String, Integer> rules) {
+        this.version = version;
+        this.globalLevel = globalLevel;
+        this.root = build(rules);
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * 根据规则生成打印器的日志级别
+     */
+    int check(Class<?> host) {
+        if (host == null) {
+            return TLogger.NULL;
+        }
+        String className = host.getName();
+        int ruleLevel = globalLevel;
+        Node node = root;
+        for (int i = 0 ; i < className.length() && node != null ; i++) {
+            node = node.child(className.charAt(i));
+            if (node != null && node.hasLevel) {
+                ruleLevel = node.level;
+            }
+        }
+        return ruleLevel;
+    }
+
+    private static Node build(Map<String, Integer> rules) {
+        MutableNode root = new MutableNode();
+        if (rules != null) {
+            for (Map.Entry<String, Integer> entry : rules.entrySet()) {
+                String key = entry.getKey();
+                if (key == null || key.length() <= 0 || entry.getValue() == null) {
+                    continue;
+                }
+                MutableNode node = root;
+                for (int i = 0 ; i < key.length() ; i++) {
+                    node = node.child(key.charAt(i));
+                }
+                node.hasLevel = true;
+                node.level = entry.getValue();
+            }
+        }
+        return root.toNode();
+    }
+
+    /**
+     * 前缀树节点(不可变), 子节点按字符有序存放, 二分查找
+     */
+    private static final class Node {
+
+        private final char[] keys;
+        private final Node[] children;
+        private final boolean hasLevel;
+        private final int level;
+
+        private Node(char[] keys, Node[] children, boolean hasLevel, int level) {
+            this.keys = keys;
+            this.children = children;
+            this.hasLevel = hasLevel;
+            this.level = level;
+        }
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+    }
+
+    /**
+     * 构建用的前缀树节点
+     */
+    private static final class MutableNode {
+
+        private final TreeMap<Character, MutableNode> children = new TreeMap<>();
+        private boolean hasLevel = false;
+        private int level;
+
+        private MutableNode child(char c) {
+            MutableNode node = children.get(c);
+            if (node == null) {
+                node = new MutableNode();
+                children.put(c, node);
+            }
+            return node;
+        }
+
+        private Node toNode() {
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().toNode();
+                i++;
+            }
+            return new Node(keys, nodes, hasLevel, level);
+        }
+
+    }
+
+}
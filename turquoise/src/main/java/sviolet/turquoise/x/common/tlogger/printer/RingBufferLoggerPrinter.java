@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.common.tlogger.printer;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import sviolet.thistle.util.conversion.StringUtils;
+import sviolet.turquoise.util.common.DateTimeUtilsForAndroid;
+
+/**
+ * 日志磁盘输出高吞吐量实现
+ *
+ * TLogger.setLoggerPrinter(new RingBufferLoggerPrinter(...));
+ *
+ * <p>与SimpleLoggerPrinter不同, 调用线程只将原始字段(时间戳/级别/消息引用)写入预分配的环形缓冲区,
+ * 不做日期格式化和字符串拼接, 日志的格式化/编码/写入磁盘均在工作线程中批量进行(FileChannel).
+ * 缓冲区满时日志会被丢弃, 丢弃的数量会写入日志文件, 也可以通过{@link #getDroppedCount()}获取.</p>
+ *
+ * <p>注意: 消息对象在工作线程中才会调用toString, 请勿传入会被修改的对象.</p>
+ *
+ * 注意:如果使用外部存储器, 需要申请权限
+ *
+ * <p>WARNING:: Need permission "android.permission.WRITE_EXTERNAL_STORAGE",
+ * you should request runtime permission before TLogger.setLoggerPrinter(new RingBufferLoggerPrinter(...))</p>
+ *
+ * @author S.Violet
+ */
+public class RingBufferLoggerPrinter implements LoggerPrinter {
+
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final long FLUSH_WAIT_TIMEOUT = 1000L;
+
+    private static final int LEVEL_ERROR = 0;
+    private static final int LEVEL_WARNING = 1;
+    private static final int LEVEL_INFO = 2;
+    private static final int LEVEL_DEBUG = 3;
+    private static final String[] LEVEL_NAMES = {" ERROR ", " WARNING ", " INFO ", " DEBUG "};
+
+    //环形缓冲区(预分配)
+    private final int mask;
+    private final long[] times;
+    private final int[] levels;
+    private final Object[] messages;
+    private final Throwable[] throwables;
+    //每个槽位已发布的序号(序号+1), 工作线程据此判断槽位数据是否写入完毕
+    private final AtomicLongArray published;
+
+    //下一个被申请的序号(生产者)
+    private final AtomicLong claimSequence = new AtomicLong(0);
+    //下一个被消费的序号(工作线程), 小于该序号的槽位可被生产者重新使用
+    private volatile long consumeSequence = 0;
+    //已写入磁盘的序号(工作线程)
+    private volatile long writtenSequence = 0;
+    //被丢弃的日志数
+    private final AtomicLong droppedCount = new AtomicLong(0);
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean disabled = new AtomicBoolean(false);
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    private final PrintWorker worker;
+    private volatile Thread workerThread;
+    private volatile boolean workerWaiting = false;
+
+    /**
+     * @param logDirectory 日志输出路径(如果使用外部储存必须申请权限)
+     * @param maxLogSizeMB 日志最大容量
+     */
+    public RingBufferLoggerPrinter(@NonNull File logDirectory, int maxLogSizeMB) {
+        this(logDirectory, maxLogSizeMB, false);
+    }
+
+    /**
+     * @param logDirectory 日志输出路径(如果使用外部储存必须申请权限)
+     * @param maxLogSizeMB 日志最大容量
+     * @param sensitiveLogEnabled 是否输出敏感日志(默认false)
+     */
+    public RingBufferLoggerPrinter(@NonNull File logDirectory, int maxLogSizeMB, boolean sensitiveLogEnabled) {
+        this(logDirectory, maxLogSizeMB, "yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault(), sensitiveLogEnabled, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param logDirectory 日志输出路径(如果使用外部储存必须申请权限)
+     * @param maxLogSizeMB 日志最大容量
+     * @param datePattern 日期格式
+     * @param locale 地区
+     * @param sensitiveLogEnabled 是否输出敏感日志(默认false)
+     * @param bufferSize 环形缓冲区容量(日志条数), 会向上取整为2的幂, 默认{@value DEFAULT_BUFFER_SIZE}
+     */
+    public RingBufferLoggerPrinter(@NonNull File logDirectory, int maxLogSizeMB, @NonNull String datePattern, @NonNull Locale locale, boolean sensitiveLogEnabled, int bufferSize) {
+        if (maxLogSizeMB <= 0){
+            throw new IllegalArgumentException("maxLogSizeMB must > 0");
+        }
+        if (bufferSize <= 0){
+            throw new IllegalArgumentException("bufferSize must > 0");
+        }
+        int capacity = Integer.highestOneBit(bufferSize);
+        if (capacity < bufferSize){
+            capacity = capacity << 1;
+        }
+        this.mask = capacity - 1;
+        this.times = new long[capacity];
+        this.levels = new int[capacity];
+        this.messages = new Object[capacity];
+        this.throwables = new Throwable[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.worker = new PrintWorker(logDirectory, maxLogSizeMB, datePattern, locale, sensitiveLogEnabled);
+    }
+
+    @Override
+    public void e(Object msg, Throwable throwable) {
+        offer(LEVEL_ERROR, msg, throwable);
+    }
+
+    @Override
+    public void w(Object msg, Throwable throwable) {
+        offer(LEVEL_WARNING, msg, throwable);
+    }
+
+    @Override
+    public void i(Object msg) {
+        offer(LEVEL_INFO, msg, null);
+    }
+
+    @Override
+    public void d(Object msg) {
+        offer(LEVEL_DEBUG, msg, null);
+    }
+
+    @Override
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this.worker);
+            workerThread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * 将缓冲区中的日志写入磁盘, 最多等待{@value FLUSH_WAIT_TIMEOUT}ms
+     */
+    @Override
+    public void flush() {
+        if (disabled.get() || !started.get()){
+            return;
+        }
+        long target = claimSequence.get();
+        flushRequested.set(true);
+        wakeupWorker();
+        long deadline = DateTimeUtilsForAndroid.getUptimeMillis() + FLUSH_WAIT_TIMEOUT;
+        while (writtenSequence < target && !disabled.get() && DateTimeUtilsForAndroid.getUptimeMillis() < deadline){
+            try { Thread.sleep(10); } catch (InterruptedException ignored) { break; }
+        }
+        Log.i("Turquoise", "[RingBufferLoggerPrinter]flush by manual");
+    }
+
+    /**
+     * 关闭, 缓冲区中剩余的日志会被写入磁盘
+     */
+    @Override
+    public void close() {
+        disabled.set(true);
+        wakeupWorker();
+        Log.i("Turquoise", "[RingBufferLoggerPrinter]close");
+    }
+
+    /**
+     * @return 因缓冲区满而被丢弃的日志数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 将日志原始字段写入环形缓冲区, 缓冲区满时丢弃
+     */
+    private void offer(int level, Object msg, Throwable throwable){
+        if (disabled.get()){
+            return;
+        }
+        //申请槽位
+        long sequence;
+        do {
+            sequence = claimSequence.get();
+            if (sequence - consumeSequence > mask){
+                droppedCount.incrementAndGet();
+                return;
+            }
+        } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+        //写入字段
+        int index = (int) (sequence & mask);
+        times[index] = System.currentTimeMillis();
+        levels[index] = level;
+        messages[index] = msg;
+        throwables[index] = throwable;
+        //发布, 必须是volatile写(不能用lazySet), 保证对workerWaiting的读不会被重排到发布之前, 否则工作线程可能错过唤醒
+        published.set(index, sequence + 1);
+        //唤醒工作线程
+        if (workerWaiting){
+            wakeupWorker();
+        }
+    }
+
+    private void wakeupWorker(){
+        Thread thread = workerThread;
+        if (thread != null){
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private class PrintWorker implements Runnable{
+
+        private static final int FLUSH_TIMEOUT = 100;
+        private static final int CLOSE_TIMEOUT = 5000;
+        private static final int MAX_TIMEOUT = 300000;
+        //有槽位已申请但尚未发布时的等待时间
+        private static final int PENDING_TIMEOUT = 1;
+
+        private static final int BATCH_SIZE = 256;
+        private static final int WRITE_BUFFER_SIZE = 32 * 1024;
+
+        private final File logDirectory;
+        private final long maxLogSize;
+        private final boolean sensitiveLogEnabled;
+
+        //工作线程中复用的格式化对象
+        private final SimpleDateFormat dateFormat;
+        private final Date date = new Date();
+        private final FieldPosition fieldPosition = new FieldPosition(0);
+        private final StringBuffer lineBuffer = new StringBuffer(256);
+        private CharBuffer charBuffer = CharBuffer.allocate(256);
+        private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        private File currentFile;
+        private File previousFile;
+        private FileOutputStream outputStream;
+        private FileChannel channel;
+        private long currentFileSize;
+
+        private long reportedDroppedCount = 0;
+
+        private PrintWorker(@NonNull File logDirectory, int maxLogSizeMB, @NonNull String datePattern, @NonNull Locale locale, boolean sensitiveLogEnabled) {
+            this.logDirectory = logDirectory;
+            this.maxLogSize = maxLogSizeMB * 1024 * 1024 / 2;
+            this.dateFormat = new SimpleDateFormat(datePattern, locale);
+            this.sensitiveLogEnabled = sensitiveLogEnabled;
+        }
+
+        private void init() {
+            if (sensitiveLogEnabled){
+                Log.i("Turquoise", "[RingBufferLoggerPrinter]init directory:" + logDirectory);
+            }
+
+            //创建路径
+            if (!logDirectory.exists() || logDirectory.isFile()){
+                if (!logDirectory.mkdirs()){
+                    Log.e("Turquoise", "[RingBufferLoggerPrinter]init failed, can not create log directory");
+                    disabled.set(true);
+                    return;
+                }
+            }
+
+            //查找日志
+            File[] logFiles = logDirectory.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.isFile() && file.getName().endsWith(".tlog");
+                }
+            });
+
+            //清理多余日志
+            if (logFiles.length > 2){
+                Arrays.sort(logFiles);
+                for (int i = 0 ; i < logFiles.length - 2 ; i++){
+                    if (!logFiles[i].delete()){
+                        Log.e("Turquoise", "[RingBufferLoggerPrinter]trim log files failed, delete failed" + (sensitiveLogEnabled ? " (" + logFiles[i] + ")" : ""));
+                    }
+                }
+            }
+
+            //加载日志文件
+            if (logFiles.length >= 2){
+                currentFile = logFiles[logFiles.length - 1];
+                previousFile = logFiles[logFiles.length - 2];
+            } else if (logFiles.length == 1){
+                currentFile = logFiles[0];
+            }
+
+            //起始标记
+            appendLine(System.currentTimeMillis(), null, "--------------------------RingBufferLoggerPrinter--------------------------", null);
+        }
+
+        @Override
+        public void run() {
+            //初始化
+            boolean initialized = false;
+            try {
+                init();
+                initialized = !disabled.get();
+            } catch (Throwable t) {
+                disabled.set(true);
+                if (sensitiveLogEnabled){
+                    Log.e("Turquoise", "[RingBufferLoggerPrinter]error while init, RingBufferLoggerPrinter disabled", t);
+                } else {
+                    Log.e("Turquoise", "[RingBufferLoggerPrinter]error while init, RingBufferLoggerPrinter disabled");
+                }
+            }
+            //循环
+            int timeout = FLUSH_TIMEOUT;
+            while(!disabled.get()){
+                if (drain()) {
+                    //有新日志后, 将超时调整为极小的值. 当短暂地无日志后, 会及时将日志写入磁盘
+                    timeout = FLUSH_TIMEOUT;
+                    continue;
+                }
+                //缓冲区取空后, 响应手动flush
+                if (flushRequested.compareAndSet(true, false)){
+                    writeOut();
+                }
+                //等待新日志
+                workerWaiting = true;
+                boolean available = isAvailable() || flushRequested.get() || disabled.get();
+                //缓冲区非空(槽位已申请但尚未发布)时只短暂等待, 不依赖生产者唤醒
+                boolean pending = claimSequence.get() != consumeSequence;
+                if (!available) {
+                    LockSupport.parkNanos(this, (pending ? PENDING_TIMEOUT : timeout) * 1000000L);
+                }
+                workerWaiting = false;
+                if (pending || isAvailable() || flushRequested.get() || disabled.get()){
+                    continue;
+                }
+                if (timeout == FLUSH_TIMEOUT){
+                    //当短暂地无日志后, 会及时将日志写入磁盘
+                    writeOut();
+                    //当写入磁盘后, 将超时调整为较大的值, 若仍然无日志, 会关闭文件
+                    timeout = CLOSE_TIMEOUT;
+                } else if (timeout == CLOSE_TIMEOUT) {
+                    //长时间无日志时, 关闭文件
+                    closeChannel();
+                    //将超时调整为最大的值
+                    timeout = MAX_TIMEOUT;
+                }
+            }
+            //关闭前将剩余的日志写入磁盘
+            if (initialized) {
+                try {
+                    while (drain()) {
+                        //drain all
+                    }
+                    writeOut();
+                } catch (Throwable ignored) {
+                }
+            }
+            closeChannel();
+            if (sensitiveLogEnabled) {
+                Log.i("Turquoise", "[RingBufferLoggerPrinter]disabled");
+            }
+        }
+
+        private boolean isAvailable(){
+            long sequence = consumeSequence;
+            return published.get((int) (sequence & mask)) == sequence + 1;
+        }
+
+        /**
+         * 从环形缓冲区中批量取出日志, 格式化后写入写缓冲
+         * @return true:取到了日志
+         */
+        private boolean drain(){
+            long sequence = consumeSequence;
+            int count = 0;
+            while (count < BATCH_SIZE){
+                int index = (int) (sequence & mask);
+                if (published.get(index) != sequence + 1){
+                    break;
+                }
+                long time = times[index];
+                String level = LEVEL_NAMES[levels[index]];
+                Object message = messages[index];
+                Throwable throwable = throwables[index];
+                messages[index] = null;
+                throwables[index] = null;
+                //释放槽位
+                consumeSequence = ++sequence;
+                count++;
+                appendLine(time, level, message, throwable);
+            }
+            //报告丢弃的日志
+            long dropped = droppedCount.get();
+            if (dropped != reportedDroppedCount){
+                long increment = dropped - reportedDroppedCount;
+                reportedDroppedCount = dropped;
+                Log.e("Turquoise", "[RingBufferLoggerPrinter]ring buffer is full, " + increment + " messages dropped");
+                appendLine(System.currentTimeMillis(), LEVEL_NAMES[LEVEL_ERROR], "[RingBufferLoggerPrinter]ring buffer is full, " + increment + " messages dropped, total " + dropped, null);
+            }
+            return count > 0;
+        }
+
+        /**
+         * 格式化一条日志, 并编码至写缓冲, 写缓冲满时写入磁盘
+         */
+        private void appendLine(long time, String level, Object message, Throwable throwable){
+            //格式化
+            lineBuffer.setLength(0);
+            date.setTime(time);
+            dateFormat.format(date, lineBuffer, fieldPosition);
+            lineBuffer.append(level != null ? level : " ");
+            try {
+                lineBuffer.append(message);
+                if (throwable != null) {
+                    lineBuffer.append('\n');
+                    lineBuffer.append(StringUtils.throwableToString(throwable));
+                }
+            } catch (Throwable t) {
+                lineBuffer.append("[RingBufferLoggerPrinter]error while formatting message");
+            }
+            lineBuffer.append('\n');
+            //复制到字符缓冲
+            int length = lineBuffer.length();
+            if (charBuffer.capacity() < length){
+                charBuffer = CharBuffer.allocate(Math.max(length, charBuffer.capacity() << 1));
+            }
+            charBuffer.clear();
+            lineBuffer.getChars(0, length, charBuffer.array(), 0);
+            charBuffer.limit(length);
+            //编码
+            while (true) {
+                CoderResult result = encoder.encode(charBuffer, writeBuffer, true);
+                if (!result.isOverflow()) {
+                    break;
+                }
+                writeOut();
+                if (disabled.get() && channel == null) {
+                    //写入失败
+                    writeBuffer.clear();
+                    break;
+                }
+            }
+            encoder.reset();
+        }
+
+        /**
+         * 将写缓冲写入磁盘
+         */
+        private void writeOut(){
+            if (writeBuffer.position() <= 0){
+                writtenSequence = consumeSequence;
+                return;
+            }
+            writeBuffer.flip();
+            try {
+                FileChannel channel = getCurrentChannel();
+                while (writeBuffer.hasRemaining()) {
+                    currentFileSize += channel.write(writeBuffer);
+                }
+            } catch (Throwable t) {
+                disabled.set(true);
+                closeChannel();
+                if (sensitiveLogEnabled){
+                    Log.e("Turquoise", "[RingBufferLoggerPrinter]error while writing log file, RingBufferLoggerPrinter disabled", t);
+                } else {
+                    Log.e("Turquoise", "[RingBufferLoggerPrinter]error while writing log file, RingBufferLoggerPrinter disabled");
+                }
+            }
+            writeBuffer.clear();
+            writtenSequence = consumeSequence;
+        }
+
+        private FileChannel getCurrentChannel() throws IOException {
+            //判断的当前文件是否存在
+            if (currentFile == null || !currentFile.exists() || currentFile.isDirectory()){
+                //新建文件
+                closeChannel();
+                currentFile = new File(logDirectory.getAbsolutePath() + "/" + DateTimeUtilsForAndroid.getCurrentTimeMillis() + ".tlog");
+                openChannel();
+                if (sensitiveLogEnabled) {
+                    Log.i("Turquoise", "[RingBufferLoggerPrinter]channel create");
+                }
+            }
+            //判断文件是否过大
+            if ((channel != null ? currentFileSize : currentFile.length()) > maxLogSize){
+                //切换文件
+                closeChannel();
+                if (previousFile != null && previousFile.exists()){
+                    if (!previousFile.delete()){
+                        Log.e("Turquoise", "[RingBufferLoggerPrinter]trim log file failed, delete failed" + (sensitiveLogEnabled ? " (" + previousFile + ")" : ""));
+                    }
+                }
+                previousFile = currentFile;
+                currentFile = new File(logDirectory.getAbsolutePath() + "/" + DateTimeUtilsForAndroid.getCurrentTimeMillis() + ".tlog");
+                openChannel();
+                if (sensitiveLogEnabled) {
+                    Log.i("Turquoise", "[RingBufferLoggerPrinter]channel switch");
+                }
+            }
+            //判断channel是否存在
+            if (channel == null){
+                openChannel();
+                if (sensitiveLogEnabled) {
+                    Log.i("Turquoise", "[RingBufferLoggerPrinter]channel recreate");
+                }
+            }
+            return channel;
+        }
+
+        private void openChannel() throws IOException {
+            outputStream = new FileOutputStream(currentFile, true);
+            channel = outputStream.getChannel();
+            currentFileSize = currentFile.length();
+        }
+
+        private void closeChannel() {
+            if (channel != null){
+                try { channel.close(); } catch (Throwable ignore){}
+                try { outputStream.close(); } catch (Throwable ignore){}
+                channel = null;
+                outputStream = null;
+                if (sensitiveLogEnabled) {
+                    Log.i("Turquoise", "[RingBufferLoggerPrinter]channel closed");
+                }
+            }
+        }
+
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        super.finalize();
+        close();
+        Log.i("Turquoise", "[RingBufferLoggerPrinter]finalize");
+    }
+}
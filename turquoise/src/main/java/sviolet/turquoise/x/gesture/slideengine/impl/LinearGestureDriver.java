@@ -19,9 +19,6 @@
 
 package sviolet.turquoise.x.gesture.slideengine.impl;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 import sviolet.turquoise.enhance.async.WeakHandler;
 import sviolet.turquoise.x.gesture.slideengine.abs.GestureDriver;
 import sviolet.turquoise.x.gesture.slideengine.abs.SlideEngine;
@@ -144,14 +141,15 @@ public class LinearGestureDriver implements GestureDriver {
 	private int staticTouchAreaBottom = 0;//区域下边界
 	//永久触摸区域在ViewGroup.onTouchEvent拦截到未被处理的事件, 需要在onTouch中判断是否有效滑动
 	private boolean captureEscapedTouch = false;
-	//永久触摸区域长按计时器
-	private Timer staticTouchAreaLongPressTimer;
 	private boolean staticTouchAreaLongPressHandled = false;//永久触摸区域长按事件已处理, 不再处理click
 	
 	//变量/////////////////////////////////
 	//按下时的坐标
 	private int downX = 0;
 	private int downY = 0;
+	//当前速度(复用, 避免每次移动事件分配数组)
+	private int velocityX = 0;
+	private int velocityY = 0;
 	
 	//当前坐标
 	private int currX = 0;
@@ -403,17 +401,17 @@ public class LinearGestureDriver implements GestureDriver {
 	private void driveEngine() {
 		if (mSlideEngine != null) {
 			//当前加速度
-            int[] velocity = getVelocity();
+            computeVelocity();
 
             switch(mSlideEngine.inputMode()){
                 case SlideEngine.INPUT_MODE_1D:
                     //一维
                     switch (state) {
                         case STATE_MOVING_X://X轴方向移动
-                            mSlideEngine.onGestureDrive(currX, stepX, velocity[0]);
+                            mSlideEngine.onGestureDrive(currX, stepX, velocityX);
                             break;
                         case STATE_MOVING_Y://Y轴方向移动
-                            mSlideEngine.onGestureDrive(currY, stepY, velocity[1]);
+                            mSlideEngine.onGestureDrive(currY, stepY, velocityY);
                             break;
                     }
                     break;
@@ -421,10 +419,10 @@ public class LinearGestureDriver implements GestureDriver {
                     //二维
                     switch (state) {
                         case STATE_MOVING_X://X轴方向移动
-                            mSlideEngine.onGestureDrive(currX, 0, stepX, 0, velocity[0], 0);
+                            mSlideEngine.onGestureDrive(currX, 0, stepX, 0, velocityX, 0);
                             break;
                         case STATE_MOVING_Y://Y轴方向移动
-                            mSlideEngine.onGestureDrive(0, currY, 0, stepY, 0, velocity[1]);
+                            mSlideEngine.onGestureDrive(0, currY, 0, stepY, 0, velocityY);
                             break;
                     }
                     break;
@@ -448,14 +446,14 @@ public class LinearGestureDriver implements GestureDriver {
 	private void releaseEngine(){
 		if(mSlideEngine != null){
 			//当前加速度
-            int[] velocity = getVelocity();
+            computeVelocity();
 			//释放时给予加速度
 			switch(state){
 			case STATE_MOVING_X:
-				mSlideEngine.onGestureRelease(velocity[0]);
+				mSlideEngine.onGestureRelease(velocityX);
 				break;
 			case STATE_MOVING_Y:
-				mSlideEngine.onGestureRelease(velocity[1]);
+				mSlideEngine.onGestureRelease(velocityY);
 				break;
 			default:
 				mSlideEngine.onGestureRelease(0);
@@ -549,44 +547,42 @@ public class LinearGestureDriver implements GestureDriver {
 	}
 	
 	/**
-	 * 获得速度
-	 * @return [0]X轴速度 [1]Y轴速度
+	 * 计算速度, 结果存于velocityX/velocityY
 	 */
-	private int[] getVelocity(){
-		int[] velocity = new int[2];
-		getVelocityTracker().computeCurrentVelocity(1000);
-		velocity[0] = (int)getVelocityTracker().getXVelocity();
-		velocity[1] = (int)getVelocityTracker().getYVelocity();
-		return velocity;
+	private void computeVelocity(){
+		VelocityTracker velocityTracker = getVelocityTracker();
+		velocityTracker.computeCurrentVelocity(1000);
+		velocityX = (int)velocityTracker.getXVelocity();
+		velocityY = (int)velocityTracker.getYVelocity();
 	}
 	
 	//永久触摸区域长按计时//////////////////////////////////////////////
 	
+	/**
+	 * 开始长按计时, 由主线程Handler计时, 不再每次按下创建Timer线程
+	 */
 	private void staticTouchAreaLongPressTimerStart(){
 		staticTouchAreaLongPressTimerReset();
-		staticTouchAreaLongPressTimer = new Timer();
-		staticTouchAreaLongPressTimer.schedule(new TimerTask(){
-			@Override
-			public void run() {
-				staticTouchAreaLongPressHandled = true;
-				staticTouchAreaLongPressTimer = null;
-				if(mSlideEngine != null) {
-                    mSlideEngine.onStaticTouchAreaLongPress();
-                }
-			}
-		}, STATIC_TOUCH_AREA_LONG_PRESS_DELAY); 
+		handler.sendEmptyMessageDelayed(MyHandler.HANDLER_STATIC_TOUCH_AREA_LONG_PRESS, STATIC_TOUCH_AREA_LONG_PRESS_DELAY);
 	}
 	
 	private void staticTouchAreaLongPressTimerReset(){
 		//重置计时器
-		if(staticTouchAreaLongPressTimer != null){
-			staticTouchAreaLongPressTimer.cancel();
-			staticTouchAreaLongPressTimer = null;
-		}
+		handler.removeMessages(MyHandler.HANDLER_STATIC_TOUCH_AREA_LONG_PRESS);
 		//重置标志位
 		staticTouchAreaLongPressHandled = false;
 	}
 	
+	/**
+	 * 长按计时到达
+	 */
+	private void onStaticTouchAreaLongPress(){
+		staticTouchAreaLongPressHandled = true;
+		if(mSlideEngine != null) {
+			mSlideEngine.onStaticTouchAreaLongPress();
+		}
+	}
+	
 	/**
 	 * 重置永久触摸区域状态
 	 */
@@ -856,6 +852,7 @@ public class LinearGestureDriver implements GestureDriver {
 	@Override
 	public void destroy() {
 		resetVelocityTracker();
+		handler.removeMessages(MyHandler.HANDLER_STATIC_TOUCH_AREA_LONG_PRESS);
 		mSlideEngine = null;
 		mContext = null;
 		isDestroyed = true;
@@ -870,6 +867,7 @@ public class LinearGestureDriver implements GestureDriver {
 	private static class MyHandler extends WeakHandler<LinearGestureDriver>{
 
 		private static final int HANDLER_RELEASE_CHECK = 1;
+		private static final int HANDLER_STATIC_TOUCH_AREA_LONG_PRESS = 2;
 
 		public MyHandler(Looper looper, LinearGestureDriver host) {
 			super(looper, host);
@@ -881,6 +879,9 @@ public class LinearGestureDriver implements GestureDriver {
 				case HANDLER_RELEASE_CHECK:
 					host.releaseCheck();
 					break;
+				case HANDLER_STATIC_TOUCH_AREA_LONG_PRESS:
+					host.onStaticTouchAreaLongPress();
+					break;
 				default:
 					break;
 			}
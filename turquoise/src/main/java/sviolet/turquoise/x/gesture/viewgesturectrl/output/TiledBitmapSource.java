@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2015-2018 S.Violet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Project GitHub: https://github.com/shepherdviolet/turquoise
+ * Email: shepherdviolet@163.com
+ */
+
+package sviolet.turquoise.x.gesture.viewgesturectrl.output;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Looper;
+import android.os.Message;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sviolet.thistle.util.concurrent.ThreadPoolExecutorUtils;
+import sviolet.turquoise.enhance.async.WeakHandler;
+
+/**
+ * <p>分块解码的图片源, 配合{@link SimpleRectangleOutput}显示超大图片</p>
+ *
+ * <p>使用BitmapRegionDecoder, 只解码当前显示区域内的图块(Tile), 并根据当前放大率选择合适的采样率(inSampleSize),
+ * 因此可以显示数千万像素的图片而不会OOM. 图块在后台线程解码, 移出显示区域的图块会被取消, 解码完成的图块按
+ * (采样等级, x, y)缓存在LRU中. 另外会解码一张低分辨率的全图作为底图, 图块解码完成前显示底图.</p>
+ *
+ * <pre>{@code
+ *      //初始化(必须在view layout完毕后进行)
+ *      tiledSource = new TiledBitmapSource(filePath);
+ *      output = new SimpleRectangleOutput(getContext(), tiledSource.getWidth(), tiledSource.getHeight(), getWidth(), getHeight(), 5, SimpleRectangleOutput.InitScaleType.FIT_CENTER);
+ *      //图块解码完成后刷新
+ *      tiledSource.setRefreshListener(new SimpleRectangleOutput.RefreshListener() {
+ *          public void onRefresh() {
+ *              MotionImageView.this.postInvalidate();
+ *          }
+ *      });
+ *
+ *      //绘制
+ *      protected void onDraw(Canvas canvas) {
+ *          tiledSource.draw(canvas, output);
+ *          if (output.isActive())
+ *              postInvalidate();
+ *      }
+ *
+ *      //销毁
+ *      protected void onDetachedFromWindow() {
+ *          tiledSource.destroy();
+ *      }
+ * }</pre>
+ *
+ * @author S.Violet
+ */
+public class TiledBitmapSource {
+
+    /**
+     * 图块尺寸(解码后的像素)
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    /**
+     * 底图最长边的上限
+     */
+    public static final int DEFAULT_BASE_SIZE = 1024;
+
+    private static final int MAX_DECODE_THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+    private static final long BASE_KEY = Long.MIN_VALUE;
+
+    private final BitmapRegionDecoder decoder;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int baseSampleSize;
+    private Bitmap.Config bitmapConfig = Bitmap.Config.ARGB_8888;
+
+    //底图
+    private Bitmap baseBitmap;
+    //解码完成的图块, 只在UI线程访问
+    private final LruCache<Long, Bitmap> tileCache;
+    //等待解码的图块
+    private final Map<Long, Tile> pendingTiles = new ConcurrentHashMap<>();
+    private final LinkedBlockingDeque<Tile> decodeQueue = new LinkedBlockingDeque<>();
+    private final AtomicInteger decodeThreads = new AtomicInteger(0);
+    private final ExecutorService decodeThreadPool = ThreadPoolExecutorUtils.createFixed(MAX_DECODE_THREADS, "sva-tiled-decode-%d");
+
+    private SimpleRectangleOutput.RefreshListener refreshListener;
+    private volatile boolean destroyed = false;
+
+    //绘制用, 只在UI线程访问
+    private final Set<Long> visibleKeys = new HashSet<>();
+    private final RectF srcRect = new RectF();
+    private final RectF dstRect = new RectF();
+    private final Rect baseSrcRect = new Rect();
+    private final RectF tileDstRect = new RectF();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * @param filePath 图片文件路径
+     */
+    public TiledBitmapSource(String filePath) throws IOException {
+        this(BitmapRegionDecoder.newInstance(filePath, false), DEFAULT_TILE_SIZE, DEFAULT_BASE_SIZE, (int) (Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    /**
+     * @param inputStream 图片输入流, 使用后需自行关闭
+     */
+    public TiledBitmapSource(InputStream inputStream) throws IOException {
+        this(BitmapRegionDecoder.newInstance(inputStream, false), DEFAULT_TILE_SIZE, DEFAULT_BASE_SIZE, (int) (Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    /**
+     * @param decoder 区域解码器, 销毁时会被回收
+     * @param tileSize 图块尺寸(解码后的像素), 默认{@value DEFAULT_TILE_SIZE}
+     * @param baseSize 底图最长边的上限, 默认{@value DEFAULT_BASE_SIZE}
+     * @param cacheSize 图块缓存大小(bytes), 默认最大内存的1/8
+     */
+    public TiledBitmapSource(BitmapRegionDecoder decoder, int tileSize, int baseSize, int cacheSize) {
+        if (decoder == null){
+            throw new RuntimeException("[TiledBitmapSource]decoder is null");
+        }
+        if (tileSize <= 0 || baseSize <= 0 || cacheSize <= 0){
+            throw new RuntimeException("[TiledBitmapSource]tileSize/baseSize/cacheSize must > 0");
+        }
+        this.decoder = decoder;
+        this.width = decoder.getWidth();
+        this.height = decoder.getHeight();
+        this.tileSize = tileSize;
+        int sampleSize = 1;
+        while (Math.max(width, height) / sampleSize > baseSize){
+            sampleSize <<= 1;
+        }
+        this.baseSampleSize = sampleSize;
+        this.tileCache = new LruCache<Long, Bitmap>(cacheSize){
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+                //在UI线程中移除, 不会与绘制冲突
+                oldValue.recycle();
+            }
+        };
+    }
+
+    /**
+     * [必须在UI线程调用]绘制当前显示区域
+     * @param canvas canvas
+     * @param output 矩形输出
+     */
+    public void draw(Canvas canvas, SimpleRectangleOutput output){
+        if (destroyed || canvas == null || output == null){
+            return;
+        }
+        output.getSrcDstRectF(srcRect, dstRect);
+        if (srcRect.width() <= 0 || srcRect.height() <= 0 || dstRect.width() <= 0 || dstRect.height() <= 0){
+            return;
+        }
+
+        //底图
+        if (baseBitmap != null) {
+            float baseScale = (float) baseBitmap.getWidth() / width;
+            baseSrcRect.set((int) (srcRect.left * baseScale), (int) (srcRect.top * baseScale),
+                    (int) Math.ceil(srcRect.right * baseScale), (int) Math.ceil(srcRect.bottom * baseScale));
+            canvas.drawBitmap(baseBitmap, baseSrcRect, dstRect, paint);
+        } else {
+            requestTile(BASE_KEY, baseSampleSize, 0, 0, width, height);
+        }
+
+        //显示像素/实际像素
+        float scaleX = dstRect.width() / srcRect.width();
+        float scaleY = dstRect.height() / srcRect.height();
+        //解码像素不少于显示像素
+        int sampleSize = 1;
+        while (sampleSize * 2 * scaleX <= 1){
+            sampleSize <<= 1;
+        }
+
+        visibleKeys.clear();
+        visibleKeys.add(BASE_KEY);
+        //底图清晰度足够时, 不需要图块
+        if (sampleSize < baseSampleSize) {
+            int level = Integer.numberOfTrailingZeros(sampleSize);
+            int tileActualSize = tileSize * sampleSize;
+            int startX = (int) (srcRect.left / tileActualSize);
+            int endX = (int) ((srcRect.right - 1) / tileActualSize);
+            int startY = (int) (srcRect.top / tileActualSize);
+            int endY = (int) ((srcRect.bottom - 1) / tileActualSize);
+
+            canvas.save();
+            canvas.clipRect(dstRect);
+            for (int y = startY; y <= endY; y++) {
+                for (int x = startX; x <= endX; x++) {
+                    long key = tileKey(level, x, y);
+                    visibleKeys.add(key);
+                    int left = x * tileActualSize;
+                    int top = y * tileActualSize;
+                    int right = Math.min(left + tileActualSize, width);
+                    int bottom = Math.min(top + tileActualSize, height);
+                    Bitmap tile = tileCache.get(key);
+                    if (tile == null) {
+                        requestTile(key, sampleSize, left, top, right, bottom);
+                        continue;
+                    }
+                    tileDstRect.set(dstRect.left + (left - srcRect.left) * scaleX,
+                            dstRect.top + (top - srcRect.top) * scaleY,
+                            dstRect.left + (right - srcRect.left) * scaleX,
+                            dstRect.top + (bottom - srcRect.top) * scaleY);
+                    canvas.drawBitmap(tile, null, tileDstRect, paint);
+                }
+            }
+            canvas.restore();
+        }
+
+        //取消不可见的图块
+        Iterator<Map.Entry<Long, Tile>> iterator = pendingTiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Tile tile = iterator.next().getValue();
+            if (!visibleKeys.contains(tile.key)) {
+                tile.canceled = true;
+                iterator.remove();
+                decodeQueue.remove(tile);
+            }
+        }
+    }
+
+    /**
+     * @return true: 有图块正在解码
+     */
+    public boolean isLoading(){
+        return !pendingTiles.isEmpty();
+    }
+
+    /**
+     * [必须在UI线程调用]销毁, 回收图块和解码器
+     */
+    public void destroy(){
+        if (destroyed){
+            return;
+        }
+        destroyed = true;
+        for (Tile tile : pendingTiles.values()) {
+            tile.canceled = true;
+        }
+        pendingTiles.clear();
+        decodeQueue.clear();
+        decodeThreadPool.shutdownNow();
+        tileCache.evictAll();
+        if (baseBitmap != null){
+            baseBitmap.recycle();
+            baseBitmap = null;
+        }
+        decoder.recycle();
+    }
+
+    /**
+     * @return 图片宽度, 作为{@link SimpleRectangleOutput}的实际宽度
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return 图片高度, 作为{@link SimpleRectangleOutput}的实际高度
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 图块解码完成后回调, 通常实现为postInvalidate()
+     */
+    public TiledBitmapSource setRefreshListener(SimpleRectangleOutput.RefreshListener refreshListener) {
+        this.refreshListener = refreshListener;
+        return this;
+    }
+
+    /**
+     * @param bitmapConfig 图块颜色深度, 默认ARGB_8888, 使用RGB_565可减少一半内存
+     */
+    public TiledBitmapSource setBitmapConfig(Bitmap.Config bitmapConfig) {
+        if (bitmapConfig != null) {
+            this.bitmapConfig = bitmapConfig;
+        }
+        return this;
+    }
+
+    /*****************************************************************************
+     * decode
+     */
+
+    private static long tileKey(int level, int x, int y){
+        return ((long) level << 48) | ((long) x << 24) | y;
+    }
+
+    private void requestTile(long key, int sampleSize, int left, int top, int right, int bottom){
+        if (pendingTiles.containsKey(key)){
+            return;
+        }
+        Tile tile = new Tile(key, sampleSize, new Rect(left, top, right, bottom));
+        pendingTiles.put(key, tile);
+        //后请求的先解码
+        decodeQueue.offerFirst(tile);
+        if (decodeThreads.incrementAndGet() <= MAX_DECODE_THREADS){
+            decodeThreadPool.execute(decodeRunnable);
+        } else {
+            decodeThreads.decrementAndGet();
+        }
+    }
+
+    private final Runnable decodeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Tile tile;
+                while ((tile = decodeQueue.pollFirst()) != null) {
+                    if (tile.canceled || destroyed) {
+                        continue;
+                    }
+                    BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inSampleSize = tile.sampleSize;
+                    options.inPreferredConfig = bitmapConfig;
+                    try {
+                        tile.bitmap = decoder.decodeRegion(tile.region, options);
+                    } catch (Throwable ignored) {
+                        //解码失败或解码器已回收
+                    }
+                    Message msg = handler.obtainMessage(MyHandler.HANDLER_TILE_DECODED);
+                    msg.obj = tile;
+                    msg.sendToTarget();
+                }
+                decodeThreads.decrementAndGet();
+                if (decodeQueue.isEmpty()) {
+                    return;
+                }
+                //退出前有新的图块加入, 且没有其他线程处理
+                if (decodeThreads.incrementAndGet() > MAX_DECODE_THREADS) {
+                    decodeThreads.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    };
+
+    private void onTileDecoded(Tile tile){
+        if (pendingTiles.get(tile.key) == tile){
+            pendingTiles.remove(tile.key);
+        }
+        if (tile.bitmap == null){
+            return;
+        }
+        if (tile.canceled || destroyed){
+            tile.bitmap.recycle();
+            return;
+        }
+        if (tile.key == BASE_KEY){
+            baseBitmap = tile.bitmap;
+        } else {
+            tileCache.put(tile.key, tile.bitmap);
+        }
+        if (refreshListener != null){
+            refreshListener.onRefresh();
+        }
+    }
+
+    /*****************************************************************************
+     * inner
+     */
+
+    private static class Tile {
+
+        private final long key;
+        private final int sampleSize;
+        private final Rect region;
+        private volatile boolean canceled = false;
+        private volatile Bitmap bitmap;
+
+        private Tile(long key, int sampleSize, Rect region) {
+            this.key = key;
+            this.sampleSize = sampleSize;
+            this.region = region;
+        }
+
+    }
+
+    private final MyHandler handler = new MyHandler(Looper.getMainLooper(), this);
+
+    private static class MyHandler extends WeakHandler<TiledBitmapSource> {
+
+        private static final int HANDLER_TILE_DECODED = 1;
+
+        public MyHandler(Looper looper, TiledBitmapSource host) {
+            super(looper, host);
+        }
+
+        @Override
+        protected void handleMessageWithHost(Message msg, TiledBitmapSource host) {
+            switch (msg.what) {
+                case HANDLER_TILE_DECODED:
+                    host.onTileDecoded((Tile) msg.obj);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+}